@@ -0,0 +1,147 @@
+package io.h5z.stencil.flow;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.RenderCursor;
+
+/**
+ * Publishes the UTF-8 rendering of elements as {@link ByteBuffer} chunks. Each subscription
+ * renders through its own {@link RenderCursor} on the given executor, and only as many
+ * chunks as were requested: without demand, rendering stops and nothing is buffered.
+ * Needs Java 9, so it ships in its own jar (the {@code flow} classifier).
+ *
+ * <p>Chunks are taken from a bounded pool. A subscriber that is done with a chunk may
+ * hand it back with {@link #release}; chunks that are never released are simply garbage
+ * collected.
+ */
+public final class RenderPublisher implements Flow.Publisher<ByteBuffer> {
+
+    private final List<? extends Element> elements;
+    private final Executor executor;
+    private final int chunkSize;
+    private final BlockingQueue<ByteBuffer> pool;
+
+    public RenderPublisher(Element element, Executor executor) {
+        this(Collections.singletonList(element), executor, 8 * 1024, 16);
+    }
+
+    public RenderPublisher(List<? extends Element> elements, Executor executor, int chunkSize, int pooled) {
+        if (chunkSize < 4) {
+            throw new IllegalArgumentException("chunks must hold at least one character: " + chunkSize);
+        }
+        this.elements = elements;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.pool = new ArrayBlockingQueue<>(Math.max(1, pooled));
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        Objects.requireNonNull(subscriber);
+        RenderSubscription subscription = new RenderSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    public void release(ByteBuffer chunk) {
+        if (chunk.capacity() == this.chunkSize && !chunk.isReadOnly()) {
+            chunk.clear();
+            this.pool.offer(chunk);
+        }
+    }
+
+    private ByteBuffer chunk() {
+        ByteBuffer chunk = this.pool.poll();
+        return null == chunk ? ByteBuffer.allocate(this.chunkSize) : chunk;
+    }
+
+    private final class RenderSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        // drain loop guard: only one thread renders at a time
+        private final AtomicInteger wip = new AtomicInteger();
+        private RenderCursor cursor;
+        private volatile boolean done;
+        private volatile Throwable invalid;
+
+        RenderSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                this.invalid = new IllegalArgumentException("non-positive request: " + n);
+            } else {
+                this.demand.getAndUpdate(current -> Long.MAX_VALUE - current < n ? Long.MAX_VALUE : current + n);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            this.done = true;
+        }
+
+        private void schedule() {
+            if (0 == this.wip.getAndIncrement()) {
+                RenderPublisher.this.executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = this.wip.addAndGet(-missed);
+            } while (0 != missed);
+        }
+
+        private void drain() {
+            try {
+                if (null == this.cursor) {
+                    this.cursor = new RenderCursor(RenderPublisher.this.elements);
+                }
+                while (!this.done) {
+                    Throwable invalid = this.invalid;
+                    if (null != invalid) {
+                        this.done = true;
+                        this.subscriber.onError(invalid);
+                        return;
+                    }
+                    if (0 == this.demand.get()) {
+                        return;
+                    }
+                    ByteBuffer chunk = chunk();
+                    int n = this.cursor.read(chunk);
+                    if (n < 0) {
+                        release(chunk);
+                        this.done = true;
+                        this.subscriber.onComplete();
+                        return;
+                    }
+                    chunk.flip();
+                    this.demand.decrementAndGet();
+                    this.subscriber.onNext(chunk);
+                }
+            } catch (RuntimeException e) {
+                if (!this.done) {
+                    this.done = true;
+                    this.subscriber.onError(e);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package io.h5z.stencil.flow;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.h5z.stencil.DSL;
+
+public class RenderPublisherTest {
+
+    static class Collector implements Flow.Subscriber<ByteBuffer> {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final CountDownLatch done = new CountDownLatch(1);
+        final RenderPublisher publisher;
+        final long batch;
+        Flow.Subscription subscription;
+        int chunks;
+        boolean completed;
+        Throwable error;
+
+        Collector(RenderPublisher publisher, long batch) {
+            this.publisher = publisher;
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(this.batch);
+        }
+
+        @Override
+        public void onNext(ByteBuffer chunk) {
+            this.bytes.write(chunk.array(), chunk.position(), chunk.remaining());
+            this.publisher.release(chunk);
+            if (0 == ++this.chunks % this.batch) {
+                this.subscription.request(this.batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            this.done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            this.completed = true;
+            this.done.countDown();
+        }
+
+        String text() {
+            return new String(this.bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final Element PAGE = html(body(
+        div(attrs(classes("a")), p("café 日本 😀")),
+        ul(each(Arrays.asList(1, 2, 3), i -> li(__(i)))),
+        dataTable(Arrays.asList("x", "y")).text("Name", s -> s)));
+
+    @Test(timeout = 10_000)
+    public void publishesTheRenderedBytes() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (long batch : new long[] { 1, 3, Long.MAX_VALUE }) {
+                RenderPublisher publisher = new RenderPublisher(Collections.singletonList(PAGE), executor, 7, 2);
+                Collector collector = new Collector(publisher, batch);
+                publisher.subscribe(collector);
+                assertTrue(collector.done.await(5, TimeUnit.SECONDS));
+                assertTrue(collector.completed);
+                assertNull(collector.error);
+                assertEquals(DSL.render(PAGE), collector.text());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void completesALoneHighSurrogateInTheSmallestChunks() {
+        RenderPublisher publisher = new RenderPublisher(
+            Collections.singletonList(div(__u("\uD83C"), __u("cd"))), Runnable::run, 4, 1);
+        Collector collector = new Collector(publisher, 1);
+        publisher.subscribe(collector);
+        assertTrue(collector.completed);
+        assertEquals("<div >?cd</div>", collector.text());
+    }
+
+    @Test
+    public void rendersOnlyWhatWasRequested() {
+        AtomicInteger built = new AtomicInteger();
+        List<Element> rows = Arrays.asList(
+            lazy(() -> p(Integer.toString(built.incrementAndGet()))),
+            lazy(() -> p(Integer.toString(built.incrementAndGet()))));
+        RenderPublisher publisher = new RenderPublisher(Collections.singletonList(div(rows)), Runnable::run, 8, 1);
+        Collector collector = new Collector(publisher, Long.MAX_VALUE) {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+            }
+        };
+        publisher.subscribe(collector);
+        assertEquals(0, built.get());
+
+        collector.subscription.request(1);
+        assertEquals(1, collector.chunks);
+        assertEquals(1, built.get());
+
+        collector.subscription.request(Long.MAX_VALUE);
+        assertTrue(collector.completed);
+        assertEquals("<div ><p >1</p><p >2</p></div>", collector.text());
+    }
+
+    @Test
+    public void stopsWhenCancelled() {
+        RenderPublisher publisher = new RenderPublisher(Collections.singletonList(PAGE), Runnable::run, 8, 1);
+        Collector collector = new Collector(publisher, 1) {
+            @Override
+            public void onNext(ByteBuffer chunk) {
+                super.onNext(chunk);
+                this.subscription.cancel();
+            }
+        };
+        publisher.subscribe(collector);
+        assertEquals(1, collector.chunks);
+        assertEquals(false, collector.completed);
+        assertNull(collector.error);
+    }
+
+    @Test
+    public void signalsErrors() {
+        RenderPublisher invalid = new RenderPublisher(Collections.singletonList(PAGE), Runnable::run, 8, 1);
+        Collector collector = new Collector(invalid, 0);
+        invalid.subscribe(collector);
+        assertTrue(collector.error instanceof IllegalArgumentException);
+
+        RenderPublisher failing = new RenderPublisher(
+            Collections.singletonList(div(lazy(() -> { throw new IllegalStateException("boom"); }))), Runnable::run, 64, 1);
+        Collector failed = new Collector(failing, 1);
+        failing.subscribe(failed);
+        assertTrue(failed.error instanceof IllegalStateException);
+        assertEquals(false, failed.completed);
+    }
+
+    @Test
+    public void rejectsChunksThatCannotHoldACharacter() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new RenderPublisher(Collections.singletonList(PAGE), Runnable::run, 3, 1));
+    }
+
+}
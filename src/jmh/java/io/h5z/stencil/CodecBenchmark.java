@@ -0,0 +1,56 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+
+    private List<Element> page;
+    private ByteBuffer encoded;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() {
+        this.page = Pages.page();
+        this.encoded = ElementCodec.encode(this.page);
+        this.buffer = ByteBuffer.allocate(this.encoded.remaining() * 2);
+    }
+
+    @Benchmark
+    public List<Element> build() {
+        return Pages.page();
+    }
+
+    @Benchmark
+    public List<Element> decode() {
+        return ElementCodec.decode(this.encoded.duplicate());
+    }
+
+    @Benchmark
+    public ByteBuffer encode() {
+        this.buffer.clear();
+        ElementCodec.encode(this.page, this.buffer);
+        return this.buffer;
+    }
+
+}
@@ -0,0 +1,69 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressBenchmark {
+
+    private List<Element> page;
+    private List<Element> frozenPage;
+
+    @Setup
+    public void setup() {
+        this.page = Pages.page();
+        Frozen chrome = freeze(this.page.get(1));
+        this.frozenPage = html5(body(chrome, p("dynamic")));
+        this.page = html5(body(this.page.get(1), p("dynamic")));
+    }
+
+    @Benchmark
+    public byte[] renderThenGzip() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(16 * 1024);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bos)) {
+            gzip.write(DSL.render(this.page).getBytes(StandardCharsets.UTF_8));
+        }
+        return bos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] renderIntoGzipSink() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(16 * 1024);
+        try (GzipSink sink = new GzipSink(bos)) {
+            new Renderer(sink).render(this.page);
+        }
+        return bos.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] renderFrozenIntoGzipSink() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(16 * 1024);
+        try (GzipSink sink = new GzipSink(bos)) {
+            new Renderer(sink).render(this.frozenPage);
+        }
+        return bos.toByteArray();
+    }
+
+}
@@ -0,0 +1,77 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.td;
+import static io.h5z.stencil.DSL.tr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.h5z.stencil.DSL.Element;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataTableBenchmark {
+
+    @Param({ "10000" })
+    public int rows;
+
+    private long[] ids;
+    private double[] prices;
+    private String[] names;
+    private StringBuilder sb;
+    private Renderer renderer;
+
+    @Setup
+    public void setup() {
+        this.ids = new long[this.rows];
+        this.prices = new double[this.rows];
+        this.names = new String[this.rows];
+        for (int i = 0; i < this.rows; i++) {
+            this.ids[i] = 1_000_000 + i;
+            this.prices[i] = i * 1.37;
+            this.names[i] = "customer " + i;
+        }
+        this.sb = new StringBuilder(this.rows * 128);
+        this.renderer = new Renderer(Sink.of(this.sb), null);
+    }
+
+    // one element per cell, numbers formatted to strings first
+    @Benchmark
+    public StringBuilder elements() {
+        List<Element> trs = new ArrayList<>(this.rows);
+        for (int i = 0; i < this.rows; i++) {
+            trs.add(tr(td(String.valueOf(this.ids[i])), td(this.names[i]), td(String.format("%.2f", this.prices[i]))));
+        }
+        this.sb.setLength(0);
+        this.renderer.render(DSL.table(DSL.tbody(trs)));
+        return this.sb;
+    }
+
+    @Benchmark
+    public StringBuilder dataTable() {
+        this.sb.setLength(0);
+        this.renderer.render(DSL.dataTable(this.rows)
+            .number("Id", this.ids)
+            .text("Customer", this.names)
+            .decimal("Price", this.prices, 2));
+        return this.sb;
+    }
+
+}
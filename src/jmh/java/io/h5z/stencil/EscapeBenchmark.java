@@ -0,0 +1,95 @@
+package io.h5z.stencil;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapeBenchmark {
+
+    @Param({ "ascii", "mixed", "cjk" })
+    public String corpus;
+
+    private String text;
+    private char[] chars;
+    private byte[] utf8;
+    private StringBuilder sb;
+    private Sink sink;
+    private ByteArrayOutputStream bytes;
+
+    @Setup
+    public void setup() {
+        String sentence;
+        switch (this.corpus) {
+            case "ascii":
+                sentence = "The quick brown fox jumps over the lazy dog, 0123456789 times. ";
+                break;
+            case "mixed":
+                sentence = "Price <b>€ 12</b> & \"café crème\" isn't cheap. ";
+                break;
+            default:
+                sentence = "漢字とかなを含む文章です。";
+        }
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 16 * 1024) {
+            text.append(sentence);
+        }
+        this.text = text.toString();
+        this.chars = this.text.toCharArray();
+        this.utf8 = this.text.getBytes(StandardCharsets.UTF_8);
+        this.sb = new StringBuilder(this.text.length() * 8);
+        this.sink = Sink.of(this.sb);
+        this.bytes = new ByteArrayOutputStream(this.utf8.length * 4);
+    }
+
+    // the per code point implementation escapeHTML had before Escaper
+    @Benchmark
+    public String codePoints() {
+        return this.text.codePoints().mapToObj(c -> c > 127 || "\"'<>&".indexOf(c) != -1 ?
+                "&#" + c + ";" : new String(Character.toChars(c)))
+           .collect(Collectors.joining());
+    }
+
+    @Benchmark
+    public StringBuilder chars() {
+        this.sb.setLength(0);
+        Escaper.escape(this.text, this.sink);
+        return this.sb;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream utf8() {
+        this.bytes.reset();
+        Escaper.escape(this.utf8, 0, this.utf8.length, this.bytes);
+        return this.bytes;
+    }
+
+    @Benchmark
+    public int scanChars() {
+        return Escaper.scan(this.chars, 0, this.chars.length);
+    }
+
+    @Benchmark
+    public int scanUtf8() {
+        return Escaper.scan(this.utf8, 0, this.utf8.length);
+    }
+
+}
@@ -0,0 +1,53 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class Pages {
+
+    private Pages() {
+        throw new IllegalAccessError();
+    }
+
+    static List<Element> page() {
+        List<Element> rows = new ArrayList<>();
+        for (int r = 0; r < 100; r++) {
+            rows.add(
+                tr(
+                    td("#row-" + r + ".cell", "Item " + r),
+                    td("Description of item <" + r + "> & more"),
+                    td(Integer.toString(r * 31))));
+        }
+
+        return html5(
+            head(
+                meta(attr("charset", "utf8")),
+                title("hello, world"),
+                link(attr("rel", "stylesheet"), attr("href", "/style.css"))),
+            body(
+                header(
+                    nav(
+                        ul(
+                            li(a(attrs(href("/")), "Home")),
+                            li(a(attrs(href("/products")), "Products")),
+                            li(a(attrs(href("/about")), "About"))))),
+                main(
+                    h1("#main-title.big-title", "This is a title h1"),
+                    div(
+                        attrs(id("super"), classes("class", "my-class")),
+                        p("hello, world"),
+                        p("\u00dcn\u00efc\u00f6d\u00e9 text that needs escaping: \"quoted\" 'single'")),
+                    table(
+                        thead(
+                            tr(
+                                th("Name"),
+                                th("Description"),
+                                th("Price"))),
+                        tbody(rows))),
+                footer(
+                    p("a footer"))));
+    }
+
+}
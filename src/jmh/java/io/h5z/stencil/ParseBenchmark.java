@@ -0,0 +1,73 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// the "bytes" secondary result is the parse throughput in bytes per second
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({ "1", "100" })
+    public int pages;
+
+    private String html;
+    private ByteBuffer utf8;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        String page = render(Pages.page());
+        for (int i = 0; i < this.pages; i++) {
+            sb.append(page);
+        }
+        this.html = sb.toString();
+        this.utf8 = ByteBuffer.wrap(this.html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+        public long bytes;
+    }
+
+    @Benchmark
+    public List<Element> parse(Bytes bytes) {
+        bytes.bytes += this.utf8.remaining();
+        return HtmlParser.parse(this.html);
+    }
+
+    @Benchmark
+    public List<Element> parseUtf8(Bytes bytes) {
+        bytes.bytes += this.utf8.remaining();
+        return HtmlParser.parse(this.utf8);
+    }
+
+    @Benchmark
+    public Frozen freeze(Bytes bytes) {
+        bytes.bytes += this.utf8.remaining();
+        return HtmlParser.freeze(this.utf8);
+    }
+
+}
@@ -0,0 +1,59 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({ "none", "metrics", "timed" })
+    public String listener;
+
+    private List<Element> page;
+
+    @Setup
+    public void setup() {
+        switch (this.listener) {
+            case "metrics":
+                setRenderListener(new RenderMetrics());
+                break;
+            case "timed":
+                setRenderListener(new RenderMetrics(true));
+                break;
+            default:
+                setRenderListener(null);
+        }
+        this.page = Pages.page();
+    }
+
+    @TearDown
+    public void tearDown() {
+        setRenderListener(null);
+    }
+
+    @Benchmark
+    public String render() {
+        return DSL.render(this.page);
+    }
+
+}
@@ -0,0 +1,67 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateBenchmark {
+
+    public static final class Product {
+        final String id;
+        final String name;
+        final String price;
+
+        Product(String id, String name, String price) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+        }
+    }
+
+    private Product product;
+    private Template<Product> template;
+
+    @Setup
+    public void setup() {
+        this.product = new Product("42", "Coffee & <Tea> set", "19.90");
+        this.template = Template.compile(s -> card(s.attr(p -> p.id), s.text(p -> p.name), s.text(p -> p.price)));
+    }
+
+    private static Element card(String id, Element name, Element price) {
+        return div(
+            attrs(classes("card", "product"), data("id", id)),
+            header(h2(name)),
+            ul(
+                li("In stock"),
+                li("Free shipping")),
+            footer(span(".price", price), button("Add to cart")));
+    }
+
+    @Benchmark
+    public String tree() {
+        return DSL.render(card(this.product.id, __(this.product.name), __(this.product.price)));
+    }
+
+    @Benchmark
+    public String template() {
+        return this.template.render(this.product);
+    }
+
+}
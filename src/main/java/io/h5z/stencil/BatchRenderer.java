@@ -0,0 +1,448 @@
+package io.h5z.stencil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import io.h5z.stencil.DSL.Element;
+
+/**
+ * Renders many documents with a pool of worker threads.
+ *
+ * <p>The producer (the thread calling {@link #render}) feeds a bounded queue and blocks
+ * when it is full, so a lazy stream of inputs is never read further ahead than the queue
+ * capacity. Each worker renders into its own reused buffer and hands it to the
+ * {@link Output} without copying it into a {@code String}; the buffer is only valid for the
+ * duration of that call. Without ordering, outputs are called concurrently from the
+ * workers; with ordering they are called one at a time in input order.
+ */
+public final class BatchRenderer<T> {
+
+    private final Function<? super T, ? extends List<? extends Element>> page;
+    private final int threads;
+    private final int capacity;
+    private final int bufferSize;
+    private final boolean ordered;
+    private final BiConsumer<? super T, ? super RuntimeException> onError;
+
+    private BatchRenderer(Builder<T> builder) {
+        this.page = builder.page;
+        this.threads = builder.threads;
+        this.capacity = 0 == builder.capacity ? builder.threads * 4 : builder.capacity;
+        this.bufferSize = builder.bufferSize;
+        this.ordered = builder.ordered;
+        this.onError = builder.onError;
+    }
+
+    public static <T> Builder<T> builder(Function<? super T, ? extends List<? extends Element>> page) {
+        return new Builder<>(page);
+    }
+
+    public Stats render(Stream<? extends T> inputs, Output<? super T> output) {
+        return render(inputs.iterator(), output);
+    }
+
+    public Stats render(Iterable<? extends T> inputs, Output<? super T> output) {
+        return render(inputs.iterator(), output);
+    }
+
+    public Stats render(Iterator<? extends T> inputs, Output<? super T> output) {
+        Batch<T> batch = new Batch<>(this, output);
+        List<Thread> workers = new ArrayList<>(this.threads);
+        for (int i = 0; i < this.threads; i++) {
+            Thread worker = new Thread(batch::work, "stencil-batch-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+
+        long start = System.nanoTime();
+        long index = 0;
+        try {
+            while (inputs.hasNext() && null == batch.failure.get()) {
+                if (!put(batch, new Task<>(index++, inputs.next()), workers)) {
+                    break;
+                }
+            }
+            for (int i = 0; i < this.threads; i++) {
+                if (!put(batch, Batch.poison(), workers)) {
+                    break;
+                }
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            workers.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("batch interrupted after " + index + " inputs", e);
+        }
+
+        Stats stats = batch.stats(System.nanoTime() - start);
+        Throwable failure = batch.failure.get();
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (null != failure) {
+            throw (RuntimeException) failure;
+        }
+        return stats;
+    }
+
+    // false once every worker has died of a fatal error, nothing takes from the queue then
+    private static <T> boolean put(Batch<T> batch, Task<T> task, List<Thread> workers) throws InterruptedException {
+        while (!batch.queue.offer(task, 10, TimeUnit.MILLISECONDS)) {
+            if (workers.stream().noneMatch(Thread::isAlive)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Receives each rendered document. {@code html} is the worker's buffer: copy it if it
+     * has to outlive the call.
+     */
+    @FunctionalInterface
+    public interface Output<T> {
+
+        void accept(long index, T input, CharSequence html);
+
+        // documents are encoded in chunks through one buffer per worker thread
+        static <T> Output<T> files(Path directory, Function<? super T, String> fileName) {
+            ThreadLocal<CharsetEncoder> encoders = ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE));
+            ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(16 * 1024));
+            return (index, input, html) -> {
+                Path file = directory.resolve(fileName.apply(input));
+                try (FileChannel channel = FileChannel.open(file,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    CharsetEncoder encoder = encoders.get().reset();
+                    ByteBuffer bytes = buffers.get();
+                    CharBuffer chars = CharBuffer.wrap(html);
+                    CoderResult result;
+                    do {
+                        bytes.clear();
+                        result = encoder.encode(chars, bytes, true);
+                        if (!result.isOverflow()) {
+                            encoder.flush(bytes);
+                        }
+                        bytes.flip();
+                        while (bytes.hasRemaining()) {
+                            channel.write(bytes);
+                        }
+                    } while (result.isOverflow());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        }
+    }
+
+    public static final class Builder<T> {
+
+        private final Function<? super T, ? extends List<? extends Element>> page;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int capacity;
+        private int bufferSize = 16 * 1024;
+        private boolean ordered;
+        private BiConsumer<? super T, ? super RuntimeException> onError;
+
+        private Builder(Function<? super T, ? extends List<? extends Element>> page) {
+            this.page = page;
+        }
+
+        public Builder<T> threads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        // inputs waiting for a worker before the producer blocks, defaults to 4 per thread
+        public Builder<T> queueCapacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("queue capacity must be positive");
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        // initial capacity of each worker's buffer, it grows to the largest document
+        public Builder<T> bufferSize(int chars) {
+            if (chars < 0) {
+                throw new IllegalArgumentException("buffer size must not be negative");
+            }
+            this.bufferSize = chars;
+            return this;
+        }
+
+        public Builder<T> ordered(boolean ordered) {
+            this.ordered = ordered;
+            return this;
+        }
+
+        // called for inputs that fail to render or to write; without it the first failure stops the batch
+        public Builder<T> onError(BiConsumer<? super T, ? super RuntimeException> onError) {
+            this.onError = onError;
+            return this;
+        }
+
+        public BatchRenderer<T> build() {
+            return new BatchRenderer<>(this);
+        }
+    }
+
+    /**
+     * Totals for one batch. Latencies are the time from a worker taking an input to its
+     * output returning, kept in a histogram with 1/8 power-of-two precision.
+     */
+    public static final class Stats {
+
+        private final long documents;
+        private final long failures;
+        private final long chars;
+        private final long elapsedNanos;
+        private final Histogram latencies;
+
+        private Stats(long documents, long failures, long chars, long elapsedNanos, Histogram latencies) {
+            this.documents = documents;
+            this.failures = failures;
+            this.chars = chars;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+        }
+
+        public long documents() { return this.documents; }
+        public long failures() { return this.failures; }
+        public long chars() { return this.chars; }
+        public long elapsedNanos() { return this.elapsedNanos; }
+
+        public double documentsPerSecond() {
+            return 0 == this.elapsedNanos ? 0 : this.documents * 1e9 / this.elapsedNanos;
+        }
+
+        public long latencyNanos(double percentile) {
+            return this.latencies.percentile(percentile);
+        }
+
+        public long maxLatencyNanos() {
+            return this.latencies.max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d documents (%d failed), %d chars in %d ms, %.0f docs/s,"
+                    + " latency p50 %d us p99 %d us max %d us",
+                this.documents, this.failures, this.chars, this.elapsedNanos / 1_000_000,
+                documentsPerSecond(), latencyNanos(50) / 1000, latencyNanos(99) / 1000,
+                maxLatencyNanos() / 1000);
+        }
+    }
+
+    private static final class Task<T> {
+        private final long index;
+        private final T input;
+
+        Task(long index, T input) {
+            this.index = index;
+            this.input = input;
+        }
+    }
+
+    private static final class Batch<T> {
+
+        private static final Task<?> POISON = new Task<>(-1, null);
+
+        private final BatchRenderer<T> renderer;
+        private final Output<? super T> output;
+        private final BlockingQueue<Task<T>> queue;
+        // the first failure that stops the batch, a RuntimeException or a fatal Error
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final LongAdder documents = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder chars = new LongAdder();
+        private final List<Histogram> latencies = new ArrayList<>();
+        private final Object turn = new Object();
+        private long next;
+
+        Batch(BatchRenderer<T> renderer, Output<? super T> output) {
+            this.renderer = renderer;
+            this.output = output;
+            this.queue = new ArrayBlockingQueue<>(renderer.capacity);
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> Task<T> poison() {
+            return (Task<T>) POISON;
+        }
+
+        void work() {
+            Histogram histogram = new Histogram();
+            try {
+                StringBuilder buffer = new StringBuilder(this.renderer.bufferSize);
+                Renderer html = new Renderer(Sink.of(buffer));
+                Task<T> task;
+                while (POISON != (task = this.queue.take())) {
+                    long start = System.nanoTime();
+                    buffer.setLength(0);
+                    Throwable error = null;
+                    try {
+                        html.render(this.renderer.page.apply(task.input));
+                    } catch (Throwable e) {
+                        error = e;
+                    }
+                    if (this.renderer.ordered) {
+                        awaitTurn(task.index);
+                    }
+                    try {
+                        if (null == error && null == this.failure.get()) {
+                            this.output.accept(task.index, task.input, buffer);
+                            this.documents.increment();
+                            this.chars.add(buffer.length());
+                        }
+                    } catch (Throwable e) {
+                        error = e;
+                    } finally {
+                        if (this.renderer.ordered) {
+                            endTurn();
+                        }
+                    }
+                    histogram.record(System.nanoTime() - start);
+                    if (error instanceof Error) {
+                        // the turn is passed on and the batch stopped before this worker dies
+                        this.failures.increment();
+                        this.failure.compareAndSet(null, error);
+                        throw (Error) error;
+                    }
+                    if (null != error) {
+                        failed(task.input, error instanceof RuntimeException
+                            ? (RuntimeException) error
+                            : new UndeclaredThrowableException(error));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException | Error e) {
+                // a worker that dies outside a task still stops the batch
+                this.failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                synchronized (this.latencies) {
+                    this.latencies.add(histogram);
+                }
+            }
+        }
+
+        private void awaitTurn(long index) throws InterruptedException {
+            synchronized (this.turn) {
+                while (this.next != index) {
+                    this.turn.wait();
+                }
+            }
+        }
+
+        private void endTurn() {
+            synchronized (this.turn) {
+                this.next++;
+                this.turn.notifyAll();
+            }
+        }
+
+        private void failed(T input, RuntimeException error) {
+            this.failures.increment();
+            if (null == this.renderer.onError) {
+                this.failure.compareAndSet(null, error);
+            } else {
+                this.renderer.onError.accept(input, error);
+            }
+        }
+
+        Stats stats(long elapsedNanos) {
+            Histogram merged = new Histogram();
+            synchronized (this.latencies) {
+                for (Histogram h : this.latencies) {
+                    merged.add(h);
+                }
+            }
+            return new Stats(this.documents.sum(), this.failures.sum(), this.chars.sum(), elapsedNanos, merged);
+        }
+    }
+
+    // log-linear buckets: 8 sub-buckets per power of two, values below 8 are exact
+    private static final class Histogram {
+
+        private final long[] counts = new long[64 * 8];
+        private long total;
+        private long max;
+
+        void record(long value) {
+            this.counts[bucket(value)]++;
+            this.total++;
+            this.max = Math.max(this.max, value);
+        }
+
+        void add(Histogram other) {
+            for (int i = 0; i < this.counts.length; i++) {
+                this.counts[i] += other.counts[i];
+            }
+            this.total += other.total;
+            this.max = Math.max(this.max, other.max);
+        }
+
+        long percentile(double percentile) {
+            if (0 == this.total) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile / 100 * this.total);
+            long seen = 0;
+            for (int i = 0; i < this.counts.length; i++) {
+                seen += this.counts[i];
+                if (seen >= rank && 0 != this.counts[i]) {
+                    return Math.min(upperBound(i), this.max);
+                }
+            }
+            return this.max;
+        }
+
+        private static int bucket(long value) {
+            if (value < 8) {
+                return (int) Math.max(value, 0);
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            return (exponent - 2) * 8 + (int) ((value >>> (exponent - 3)) & 7);
+        }
+
+        private static long upperBound(int bucket) {
+            if (bucket < 8) {
+                return bucket;
+            }
+            int exponent = bucket / 8 + 2;
+            long sub = bucket % 8;
+            return ((8 + sub + 1) << (exponent - 3)) - 1;
+        }
+    }
+
+}
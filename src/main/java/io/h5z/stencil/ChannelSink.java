@@ -0,0 +1,172 @@
+package io.h5z.stencil;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import io.h5z.stencil.DSL.Frozen;
+
+/**
+ * Encodes rendered characters to UTF-8 and writes them to a channel. Bytes that are
+ * already UTF-8 skip the encoder: {@link Frozen} fragments are written from their cached
+ * bytes, and file regions go through {@link FileChannel#transferTo} so they are never
+ * copied onto the heap.
+ */
+public final class ChannelSink implements Sink, Flushable, Closeable {
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(4 * 1024);
+    private final ByteBuffer bytes = ByteBuffer.allocate(16 * 1024);
+    private long written;
+
+    public ChannelSink(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public Sink append(char c) {
+        if (!this.chars.hasRemaining()) {
+            encode(false);
+        }
+        this.chars.put(c);
+        return this;
+    }
+
+    @Override
+    public Sink append(CharSequence s) {
+        return append(s, 0, s.length());
+    }
+
+    @Override
+    public Sink append(CharSequence s, int start, int end) {
+        int i = start;
+        while (i < end) {
+            if (!this.chars.hasRemaining()) {
+                encode(false);
+            }
+            int n = Math.min(end - i, this.chars.remaining());
+            if (s instanceof String) {
+                this.chars.put((String) s, i, i + n);
+            } else {
+                for (int j = i; j < i + n; j++) {
+                    this.chars.put(s.charAt(j));
+                }
+            }
+            i += n;
+        }
+        return this;
+    }
+
+    @Override
+    public Sink append(char[] chars, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            if (!this.chars.hasRemaining()) {
+                encode(false);
+            }
+            int n = Math.min(end - i, this.chars.remaining());
+            this.chars.put(chars, i, n);
+            i += n;
+        }
+        return this;
+    }
+
+    @Override
+    public Sink appendFrozen(Frozen frozen) {
+        drainText();
+        write(ByteBuffer.wrap(frozen.utf8()));
+        return this;
+    }
+
+    @Override
+    public Sink appendFile(FileChannel file, long position, long size) {
+        drainText();
+        try {
+            long end = position + size;
+            while (position < end) {
+                long n = file.transferTo(position, end - position, this.channel);
+                if (n <= 0) {
+                    throw new IOException("file ended at " + position + ", expected " + end + " bytes");
+                }
+                position += n;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.written += size;
+        return this;
+    }
+
+    // bytes written to the channel so far
+    public long written() {
+        return this.written;
+    }
+
+    @Override
+    public void flush() {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        encode(true);
+        this.encoder.flush(this.bytes);
+        write();
+        this.channel.close();
+    }
+
+    // writes out all buffered characters; a trailing high surrogate stays for its pair
+    private void drain() {
+        encode(false);
+        write();
+    }
+
+    // before bytes that skip the encoder: a trailing high surrogate will never get its pair,
+    // so it is replaced here rather than written after those bytes
+    private void drainText() {
+        drain();
+        if (this.chars.position() > 0) {
+            this.chars.clear();
+            this.bytes.put(this.encoder.replacement());
+            write();
+        }
+    }
+
+    private void encode(boolean end) {
+        this.chars.flip();
+        while (this.encoder.encode(this.chars, this.bytes, end).isOverflow()) {
+            write();
+        }
+        this.chars.compact();
+    }
+
+    private void write() {
+        this.bytes.flip();
+        write(this.bytes);
+        this.bytes.clear();
+    }
+
+    private void write(ByteBuffer buffer) {
+        try {
+            this.written += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                this.channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package io.h5z.stencil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable, ordered set of class names: the {@code class} attribute as an entry for
+ * {@link DSL#attrs}. Names are split on whitespace, deduplicated in order of first
+ * appearance and interned, and the joined value and its {@link Selector} are computed
+ * once. Keep common combinations in constants:
+ *
+ * <pre>
+ * static final ClassSet CARD = ClassSet.of("card", "shadow");
+ *
+ * div(attrs(CARD), ...)                    // written as one pre-rendered class="card shadow"
+ * div(attrs(CARD.with("active")), ...)
+ * </pre>
+ *
+ * Sets built from the same names are shared while the cache has room, like selectors.
+ */
+public final class ClassSet implements Entry<String, String> {
+
+    private static final int CACHE_SIZE = 1024;
+    private static final Map<String, ClassSet> CACHE = new ConcurrentHashMap<>();
+    private static final Map<String, String> NAMES = new ConcurrentHashMap<>();
+
+    private static final ClassSet EMPTY = new ClassSet(Collections.emptyList(), "");
+
+    private final List<String> names;
+    private final String value;
+    private final Selector selector;
+
+    private ClassSet(List<String> names, String value) {
+        this.names = names;
+        this.value = value;
+        this.selector = Selector.of(null, value);
+    }
+
+    public static ClassSet of(String... names) {
+        return of(Arrays.asList(names));
+    }
+
+    public static ClassSet of(Collection<String> names) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String name : names) {
+            split(name, unique);
+        }
+        if (unique.isEmpty()) {
+            return EMPTY;
+        }
+        String value = String.join(" ", unique);
+        ClassSet set = CACHE.get(value);
+        if (null != set) {
+            return set;
+        }
+        List<String> interned = new ArrayList<>(unique.size());
+        for (String name : unique) {
+            interned.add(intern(name));
+        }
+        set = new ClassSet(Collections.unmodifiableList(interned), value);
+        if (CACHE.size() < CACHE_SIZE) {
+            ClassSet previous = CACHE.putIfAbsent(value, set);
+            return null == previous ? set : previous;
+        }
+        return set;
+    }
+
+    public ClassSet with(String... names) {
+        List<String> all = new ArrayList<>(this.names);
+        all.addAll(Arrays.asList(names));
+        return of(all);
+    }
+
+    public ClassSet without(String name) {
+        if (!this.names.contains(name)) {
+            return this;
+        }
+        List<String> rest = new ArrayList<>(this.names);
+        rest.remove(name);
+        return of(rest);
+    }
+
+    public boolean contains(String name) {
+        return this.names.contains(name);
+    }
+
+    public List<String> names() {
+        return this.names;
+    }
+
+    public int size() {
+        return this.names.size();
+    }
+
+    // the class attribute alone as an immutable attribute map, rendered as one chunk
+    public Selector selector() {
+        return this.selector;
+    }
+
+    @Override
+    public String getKey() {
+        return "class";
+    }
+
+    @Override
+    public String getValue() {
+        return this.value;
+    }
+
+    @Override
+    public String setValue(String value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int hashCode() {
+        return "class".hashCode() ^ this.value.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Entry)) {
+            return false;
+        }
+        Entry<?, ?> other = (Entry<?, ?>) obj;
+        return "class".equals(other.getKey()) && this.value.equals(other.getValue());
+    }
+
+    @Override
+    public String toString() {
+        return "class=" + this.value;
+    }
+
+    private static void split(String names, Set<String> into) {
+        int start = -1;
+        for (int i = 0, n = names.length(); i <= n; i++) {
+            boolean space = i == n || Character.isWhitespace(names.charAt(i));
+            if (space && start >= 0) {
+                into.add(names.substring(start, i));
+                start = -1;
+            } else if (!space && start < 0) {
+                start = i;
+            }
+        }
+    }
+
+    // shared name strings, only while the table has room
+    private static String intern(String name) {
+        String interned = NAMES.get(name);
+        if (null != interned) {
+            return interned;
+        }
+        if (NAMES.size() < 16 * CACHE_SIZE) {
+            interned = NAMES.putIfAbsent(name, name);
+        }
+        return null == interned ? name : interned;
+    }
+
+}
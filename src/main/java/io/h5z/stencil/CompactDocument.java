@@ -0,0 +1,308 @@
+package io.h5z.stencil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import io.h5z.stencil.DSL.DocType;
+import io.h5z.stencil.DSL.DocTypeValue;
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.ElementVisitor;
+import io.h5z.stencil.DSL.HTMLElement;
+import io.h5z.stencil.DSL.Text;
+
+/**
+ * A document stored as parallel primitive arrays instead of objects. Nodes are laid out
+ * in document order, an element's subtree is the range {@code [i, ends[i])}, tag and
+ * attribute names are interned in a small string table, and every text and attribute
+ * value lives in a single {@code char[]}. Rendering is one linear scan.
+ */
+public final class CompactDocument extends Element {
+
+    static final byte ELEMENT = 0;
+    static final byte VOID_ELEMENT = 1;
+    static final byte TEXT = 2;
+    static final byte DOCTYPE = 3;
+
+    private final int size;
+    private final int depth;
+    private final byte[] kinds;
+    private final int[] values;
+    private final int[] lengths;
+    private final int[] ends;
+    private final int[] attributes;
+    private final int[] attributeNames;
+    private final int[] attributeOffsets;
+    private final int[] attributeLengths;
+    private final String[] names;
+    private final char[] chars;
+
+    private CompactDocument(Builder builder) {
+        this.size = builder.size;
+        this.depth = builder.maxDepth;
+        this.kinds = Arrays.copyOf(builder.kinds, builder.size);
+        this.values = Arrays.copyOf(builder.values, builder.size);
+        this.lengths = Arrays.copyOf(builder.lengths, builder.size);
+        this.ends = Arrays.copyOf(builder.ends, builder.size);
+        this.attributes = Arrays.copyOf(builder.attributes, builder.size + 1);
+        this.attributes[builder.size] = builder.attributeCount;
+        this.attributeNames = Arrays.copyOf(builder.attributeNames, builder.attributeCount);
+        this.attributeOffsets = Arrays.copyOf(builder.attributeOffsets, builder.attributeCount);
+        this.attributeLengths = Arrays.copyOf(builder.attributeLengths, builder.attributeCount);
+        this.names = builder.names.toArray(new String[0]);
+        this.chars = Arrays.copyOf(builder.chars, builder.charCount);
+    }
+
+    public static CompactDocument of(Element... elements) {
+        return of(Arrays.asList(elements));
+    }
+
+    public static CompactDocument of(List<? extends Element> elements) {
+        Builder builder = builder();
+        ElementVisitor<Void> converter = new ElementVisitor<Void>() {
+
+            @Override
+            public Void visit(HTMLElement element) {
+                if (element.isVoidElement()) {
+                    builder.voidElement(element.name());
+                } else {
+                    builder.element(element.name());
+                }
+                for (Entry<String, String> kv : element.attributes().entrySet()) {
+                    builder.rawAttr(kv.getKey(), kv.getValue());
+                }
+                if (!element.isVoidElement()) {
+                    for (Element e : element.nodes()) {
+                        e.accept(this);
+                    }
+                    builder.close();
+                }
+                return null;
+            }
+
+            @Override
+            public Void visit(DocType page) {
+                builder.docType(page.docType());
+                return null;
+            }
+
+            @Override
+            public Void visit(Text text) {
+                builder.rawText(String.valueOf(text.content()));
+                return null;
+            }
+        };
+        for (Element e : elements) {
+            e.accept(converter);
+        }
+        return builder.build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void render(Sink out) {
+        int[] open = new int[this.depth];
+        int top = 0;
+        for (int i = 0; i < this.size; i++) {
+            while (top > 0 && this.ends[open[top - 1]] <= i) {
+                closingTag(out, open[--top]);
+            }
+            switch (this.kinds[i]) {
+                case ELEMENT:
+                    openingTag(out, i);
+                    open[top++] = i;
+                    break;
+                case VOID_ELEMENT:
+                    openingTag(out, i);
+                    break;
+                case TEXT:
+                    out.append(this.chars, this.values[i], this.lengths[i]);
+                    break;
+                default:
+                    out.append(DocTypeValue.values()[this.values[i]].value());
+            }
+        }
+        while (top > 0) {
+            closingTag(out, open[--top]);
+        }
+    }
+
+    private void openingTag(Sink out, int node) {
+        out.append('<').append(this.names[this.values[node]]).append(' ');
+        for (int a = this.attributes[node], end = this.attributes[node + 1]; a < end; a++) {
+            if (a > this.attributes[node]) {
+                out.append(' ');
+            }
+            out.append(this.names[this.attributeNames[a]]);
+            if (this.attributeLengths[a] >= 0) {
+                out.append("=\"");
+                out.append(this.chars, this.attributeOffsets[a], this.attributeLengths[a]);
+                out.append('"');
+            }
+        }
+        out.append('>');
+    }
+
+    private void closingTag(Sink out, int node) {
+        out.append("</").append(this.names[this.values[node]]).append('>');
+    }
+
+    @Override
+    public <T> T accept(ElementVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(this.chars.length + this.size * 8);
+        render(Sink.of(sb));
+        return sb.toString();
+    }
+
+    public static final class Builder {
+
+        private int size;
+        private int depth;
+        private int maxDepth;
+        private byte[] kinds = new byte[64];
+        private int[] values = new int[64];
+        private int[] lengths = new int[64];
+        private int[] ends = new int[64];
+        private int[] attributes = new int[65];
+        private int attributeCount;
+        private int[] attributeNames = new int[32];
+        private int[] attributeOffsets = new int[32];
+        private int[] attributeLengths = new int[32];
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> nameIds = new HashMap<>();
+        private char[] chars = new char[1024];
+        private int charCount;
+        private int[] open = new int[16];
+        private int last = -1;
+
+        private Builder() {
+        }
+
+        public Builder element(String name) {
+            int node = node(ELEMENT, name(name), 0);
+            if (this.depth == this.open.length) {
+                this.open = Arrays.copyOf(this.open, this.depth * 2);
+            }
+            this.open[this.depth++] = node;
+            this.maxDepth = Math.max(this.maxDepth, this.depth);
+            return this;
+        }
+
+        public Builder voidElement(String name) {
+            int node = node(VOID_ELEMENT, name(name), 0);
+            this.ends[node] = node + 1;
+            return this;
+        }
+
+        // the value is written as is, like any attribute rendered by DSL: it must already be escaped
+        public Builder rawAttr(String name, String value) {
+            if (this.last < 0 || this.kinds[this.last] > VOID_ELEMENT) {
+                throw new IllegalStateException("attributes must follow the element they belong to");
+            }
+            if (this.attributeCount == this.attributeNames.length) {
+                int capacity = this.attributeCount * 2;
+                this.attributeNames = Arrays.copyOf(this.attributeNames, capacity);
+                this.attributeOffsets = Arrays.copyOf(this.attributeOffsets, capacity);
+                this.attributeLengths = Arrays.copyOf(this.attributeLengths, capacity);
+            }
+            this.attributeNames[this.attributeCount] = name(name);
+            if (null == value) {
+                this.attributeOffsets[this.attributeCount] = 0;
+                this.attributeLengths[this.attributeCount] = -1;
+            } else {
+                this.attributeOffsets[this.attributeCount] = chars(value);
+                this.attributeLengths[this.attributeCount] = value.length();
+            }
+            this.attributeCount++;
+            return this;
+        }
+
+        // escaped like __(String)
+        public Builder text(String content) {
+            return rawText(DSL.escapeHTML(content));
+        }
+
+        // written as is like __u(String): the content must already be escaped markup
+        public Builder rawText(String content) {
+            int offset = chars(content);
+            int node = node(TEXT, offset, content.length());
+            this.ends[node] = node + 1;
+            return this;
+        }
+
+        public Builder docType(DocTypeValue docType) {
+            int node = node(DOCTYPE, docType.ordinal(), 0);
+            this.ends[node] = node + 1;
+            return this;
+        }
+
+        public Builder close() {
+            if (0 == this.depth) {
+                throw new IllegalStateException("no open element to close");
+            }
+            this.ends[this.open[--this.depth]] = this.size;
+            this.last = -1;
+            return this;
+        }
+
+        public CompactDocument build() {
+            if (0 != this.depth) {
+                throw new IllegalStateException(this.depth + " element(s) left open");
+            }
+            return new CompactDocument(this);
+        }
+
+        private int node(byte kind, int value, int length) {
+            if (this.size == this.kinds.length) {
+                int capacity = this.size * 2;
+                this.kinds = Arrays.copyOf(this.kinds, capacity);
+                this.values = Arrays.copyOf(this.values, capacity);
+                this.lengths = Arrays.copyOf(this.lengths, capacity);
+                this.ends = Arrays.copyOf(this.ends, capacity);
+                this.attributes = Arrays.copyOf(this.attributes, capacity + 1);
+            }
+            int node = this.size++;
+            this.kinds[node] = kind;
+            this.values[node] = value;
+            this.lengths[node] = length;
+            this.attributes[node] = this.attributeCount;
+            this.last = node;
+            return node;
+        }
+
+        private int name(String name) {
+            Integer id = this.nameIds.get(name);
+            if (null == id) {
+                id = this.names.size();
+                this.names.add(name);
+                this.nameIds.put(name, id);
+            }
+            return id;
+        }
+
+        private int chars(String s) {
+            int offset = this.charCount;
+            if (offset + s.length() > this.chars.length) {
+                this.chars = Arrays.copyOf(this.chars, Math.max(this.chars.length * 2, offset + s.length()));
+            }
+            s.getChars(0, s.length(), this.chars, offset);
+            this.charCount += s.length();
+            return offset;
+        }
+    }
+
+}
@@ -0,0 +1,299 @@
+package io.h5z.stencil;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.ElementVisitor;
+import io.h5z.stencil.DSL.Frozen;
+
+/**
+ * A function from props to an element whose rendered output is memoized. Props must be
+ * immutable and implement {@code equals}/{@code hashCode}: two uses with equal props
+ * render once and share the cached markup until it is evicted or
+ * {@link #invalidate invalidated}.
+ *
+ * <p>Only {@link Renderer} reads the cache. Other visitors, including
+ * {@link MinifyingRenderer}, see the element built from the props.
+ */
+public final class Component<P> {
+
+    private final String name;
+    private final Function<? super P, ? extends Element> render;
+    private final Cache cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    Component(String name, Function<? super P, ? extends Element> render, Cache cache) {
+        this.name = name;
+        this.render = render;
+        this.cache = cache;
+    }
+
+    public String name() {
+        return this.name;
+    }
+
+    public Element with(P props) {
+        return new Use<>(this, props);
+    }
+
+    public Element build(P props) {
+        return this.render.apply(props);
+    }
+
+    public void invalidate(P props) {
+        this.cache.remove(new Key(this, props));
+    }
+
+    public void invalidateAll() {
+        this.cache.removeAll(this);
+    }
+
+    public long hits() {
+        return this.hits.sum();
+    }
+
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    public double hitRate() {
+        long hits = hits();
+        long total = hits + misses();
+        return 0 == total ? 0 : (double) hits / total;
+    }
+
+    Frozen rendered(P props) {
+        Key key = new Key(this, props);
+        Frozen frozen = this.cache.get(key);
+        if (null != frozen) {
+            this.hits.increment();
+            return frozen;
+        }
+        this.misses.increment();
+        StringBuilder sb = new StringBuilder();
+        new Renderer(Sink.of(sb), null).render(build(props));
+        frozen = new Frozen(sb.toString());
+        this.cache.put(key, frozen);
+        return frozen;
+    }
+
+    @Override
+    public String toString() {
+        return "Component[" + this.name + "]";
+    }
+
+    public static final class Use<P> extends Element {
+
+        private final Component<P> component;
+        private final P props;
+
+        private Use(Component<P> component, P props) {
+            this.component = component;
+            this.props = props;
+        }
+
+        public Component<P> component() {
+            return this.component;
+        }
+
+        public P props() {
+            return this.props;
+        }
+
+        public Element element() {
+            return this.component.build(this.props);
+        }
+
+        Frozen rendered() {
+            return this.component.rendered(this.props);
+        }
+
+        @Override
+        public <T> T accept(ElementVisitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+        // equal uses render the same markup, which lets Diff skip them
+        @Override
+        public int hashCode() {
+            return 31 * this.component.hashCode() + (null == this.props ? 0 : this.props.hashCode());
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Use))
+                return false;
+            Use<?> other = (Use<?>) obj;
+            return this.component == other.component
+                && (null == this.props ? null == other.props : this.props.equals(other.props));
+        }
+    }
+
+    /**
+     * Least recently used rendered outputs, bounded by entry count and total characters.
+     * Keys are spread over independently locked segments, each evicting its own least
+     * recently used entries within an equal share of both bounds.
+     */
+    public static final class Cache {
+
+        private static final Cache SHARED = new Cache(10_000, 64L * 1024 * 1024);
+
+        private final Segment[] segments;
+
+        public Cache(int maxEntries, long maxChars) {
+            // a power of two, at most 16 and no more than there are entries to share
+            int n = Integer.highestOneBit(Math.max(1, Math.min(16, maxEntries)));
+            this.segments = new Segment[n];
+            for (int i = 0; i < n; i++) {
+                this.segments[i] = new Segment(maxEntries / n, maxChars / n);
+            }
+        }
+
+        public static Cache shared() {
+            return SHARED;
+        }
+
+        public int size() {
+            int size = 0;
+            for (Segment segment : this.segments) {
+                size += segment.size();
+            }
+            return size;
+        }
+
+        public long chars() {
+            long chars = 0;
+            for (Segment segment : this.segments) {
+                chars += segment.chars();
+            }
+            return chars;
+        }
+
+        public void clear() {
+            for (Segment segment : this.segments) {
+                segment.clear();
+            }
+        }
+
+        Frozen get(Key key) {
+            return segment(key).get(key);
+        }
+
+        void put(Key key, Frozen frozen) {
+            segment(key).put(key, frozen);
+        }
+
+        void remove(Key key) {
+            segment(key).remove(key);
+        }
+
+        void removeAll(Component<?> component) {
+            for (Segment segment : this.segments) {
+                segment.removeAll(component);
+            }
+        }
+
+        private Segment segment(Key key) {
+            int h = key.hash;
+            h ^= h >>> 16;
+            return this.segments[h & (this.segments.length - 1)];
+        }
+    }
+
+    private static final class Segment {
+
+        private final int maxEntries;
+        private final long maxChars;
+        private final LinkedHashMap<Key, Frozen> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private long chars;
+
+        Segment(int maxEntries, long maxChars) {
+            this.maxEntries = maxEntries;
+            this.maxChars = maxChars;
+        }
+
+        synchronized int size() {
+            return this.entries.size();
+        }
+
+        synchronized long chars() {
+            return this.chars;
+        }
+
+        synchronized void clear() {
+            this.entries.clear();
+            this.chars = 0;
+        }
+
+        synchronized Frozen get(Key key) {
+            return this.entries.get(key);
+        }
+
+        synchronized void put(Key key, Frozen frozen) {
+            Frozen previous = this.entries.put(key, frozen);
+            if (null != previous) {
+                this.chars -= previous.content().length();
+            }
+            this.chars += frozen.content().length();
+            Iterator<Map.Entry<Key, Frozen>> eldest = this.entries.entrySet().iterator();
+            while (eldest.hasNext() && (this.entries.size() > this.maxEntries || this.chars > this.maxChars)) {
+                this.chars -= eldest.next().getValue().content().length();
+                eldest.remove();
+            }
+        }
+
+        synchronized void remove(Key key) {
+            Frozen previous = this.entries.remove(key);
+            if (null != previous) {
+                this.chars -= previous.content().length();
+            }
+        }
+
+        synchronized void removeAll(Component<?> component) {
+            Iterator<Map.Entry<Key, Frozen>> i = this.entries.entrySet().iterator();
+            while (i.hasNext()) {
+                Map.Entry<Key, Frozen> entry = i.next();
+                if (entry.getKey().component == component) {
+                    this.chars -= entry.getValue().content().length();
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final Component<?> component;
+        private final Object props;
+        private final int hash;
+
+        Key(Component<?> component, Object props) {
+            this.component = component;
+            this.props = props;
+            this.hash = 31 * System.identityHashCode(component) + (null == props ? 0 : props.hashCode());
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return this.component == other.component
+                && (null == this.props ? null == other.props : this.props.equals(other.props));
+        }
+    }
+
+}
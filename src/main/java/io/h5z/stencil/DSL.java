@@ -1,14 +1,31 @@
 package io.h5z.stencil;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
 
 public final class DSL {
     
@@ -31,6 +48,40 @@ public final class DSL {
         public T visit(HTMLElement element);
         public T visit(DocType page);
         public T visit(Text text);
+
+        public default T visit(Named named) {
+            return named.element().accept(this);
+        }
+
+        public default T visit(Frozen frozen) {
+            return visit((Text) frozen);
+        }
+
+        public default T visit(Value value) {
+            return visit((Text) value);
+        }
+
+        public default T visit(CompactDocument document) {
+            return visit(new Text(document.toString()));
+        }
+
+        public default T visit(Lazy lazy) {
+            Element element = lazy.get();
+            return null == element ? null : element.accept(this);
+        }
+
+        public default T visit(Each<?> each) {
+            each.forEach(e -> e.accept(this));
+            return null;
+        }
+
+        public default T visit(Component.Use<?> use) {
+            return use.element().accept(this);
+        }
+
+        public default T visit(DataTable<?> table) {
+            return table.element().accept(this);
+        }
     }
 
     public static class HTMLElement extends Element {
@@ -72,6 +123,35 @@ public final class DSL {
             result = prime * result + ((nodes == null) ? 0 : nodes.hashCode());
             return result;
         }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            HTMLElement other = (HTMLElement) obj;
+            if (isVoidElement != other.isVoidElement)
+                return false;
+            if (name == null) {
+                if (other.name != null)
+                    return false;
+            } else if (!name.equals(other.name))
+                return false;
+            if (attributes == null) {
+                if (other.attributes != null)
+                    return false;
+            } else if (!attributes.equals(other.attributes))
+                return false;
+            if (nodes == null) {
+                if (other.nodes != null)
+                    return false;
+            } else if (!nodes.equals(other.nodes))
+                return false;
+            return true;
+        }
     }
 
     public static class Text extends Element {
@@ -123,7 +203,345 @@ public final class DSL {
     }
 
     public static Element __u(String content) {
-        return new Text(content);
+        return new Raw(content);
+    }
+
+    // markup written as is by __u; minifiers leave it untouched
+    public static final class Raw extends Text {
+
+        public Raw(String content) {
+            super(content);
+        }
+
+    }
+
+    /**
+     * Text whose markup is written straight into the sink while rendering, such as the
+     * digits of a number. {@link #content()} formats it into a string for the other
+     * visitors.
+     */
+    public static abstract class Value extends Text {
+
+        protected Value() {
+            super(null);
+        }
+
+        public abstract void writeTo(Sink out);
+
+        @Override
+        public String content() {
+            StringBuilder sb = new StringBuilder();
+            writeTo(Sink.of(sb));
+            return sb.toString();
+        }
+
+        @Override
+        public <T> T accept(ElementVisitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+        @Override
+        public int hashCode() {
+            return content().hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Value))
+                return false;
+            return content().equals(((Value) obj).content());
+        }
+
+    }
+
+    // referenced, not copied: the sequence is read, and escaped, when rendered
+    public static Element __(CharSequence content) {
+        return Values.text(content);
+    }
+
+    public static Element __(char[] content, int offset, int length) {
+        return Values.text(content, offset, length);
+    }
+
+    public static Element __u(CharSequence content) {
+        return Values.raw(content);
+    }
+
+    public static Element __u(char[] content, int offset, int length) {
+        return Values.raw(content, offset, length);
+    }
+
+    // a UTF-8 file included as is
+    public static Element __u(Path file) {
+        try {
+            return Values.raw(file, 0, Files.size(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static Element __u(Path file, long position, long size) {
+        return Values.raw(file, position, size);
+    }
+
+    public static Element __(long value) {
+        return Values.of(value);
+    }
+
+    // rounded half up to a fixed number of decimals
+    public static Element __(double value, int decimals) {
+        return Values.of(value, decimals);
+    }
+
+    public static Element __(BigDecimal value) {
+        return Values.of(value);
+    }
+
+    public static Element __(LocalDate value) {
+        return Values.of(value);
+    }
+
+    public static Element __(LocalTime value) {
+        return Values.of(value);
+    }
+
+    public static Element __(LocalDateTime value) {
+        return Values.of(value);
+    }
+
+    public static Element __(TemporalAccessor value, DateTimeFormatter formatter) {
+        return Values.of(value, formatter);
+    }
+
+    public static class Frozen extends Text {
+
+        private volatile byte[] utf8;
+        // one slot per compression level, 0 to 9
+        private volatile AtomicReferenceArray<byte[]> deflated;
+
+        public Frozen(String html) {
+            super(html);
+        }
+
+        public byte[] utf8() {
+            byte[] bytes = this.utf8;
+            if (null == bytes) {
+                bytes = this.utf8 = content().getBytes(StandardCharsets.UTF_8);
+            }
+            return bytes;
+        }
+
+        // Raw deflate blocks ending with a sync flush and no final block, so they can be
+        // spliced into any deflate stream that has itself been sync flushed.
+        public byte[] deflated() {
+            return deflated(Deflater.DEFAULT_COMPRESSION);
+        }
+
+        // The blocks are built and kept per level, so that a GzipSink copies blocks
+        // compressed at its own level.
+        public byte[] deflated(int level) {
+            int slot = Deflater.DEFAULT_COMPRESSION == level ? 6 : level;
+            if (slot < Deflater.NO_COMPRESSION || slot > Deflater.BEST_COMPRESSION) {
+                throw new IllegalArgumentException("invalid compression level " + level);
+            }
+            AtomicReferenceArray<byte[]> levels = this.deflated;
+            if (null == levels) {
+                // racing threads may each install an array, the losers' blocks are rebuilt
+                levels = this.deflated = new AtomicReferenceArray<>(Deflater.BEST_COMPRESSION + 1);
+            }
+            byte[] bytes = levels.get(slot);
+            if (null == bytes) {
+                bytes = GzipSink.deflate(utf8(), slot);
+                levels.set(slot, bytes);
+            }
+            return bytes;
+        }
+
+        @Override
+        public <T> T accept(ElementVisitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+    }
+
+    public static Frozen freeze(Element element) {
+        return new Frozen(render(element));
+    }
+
+    public static Frozen freeze(List<Element> elements) {
+        return new Frozen(render(elements));
+    }
+
+    public static class Named extends Element {
+
+        private final String name;
+        private final Element element;
+
+        public Named(String name, Element element) {
+            this.name = name;
+            this.element = element;
+        }
+
+        public String name() {
+            return this.name;
+        }
+
+        public Element element() {
+            return this.element;
+        }
+
+        @Override
+        public <T> T accept(ElementVisitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + ((element == null) ? 0 : element.hashCode());
+            result = prime * result + ((name == null) ? 0 : name.hashCode());
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            Named other = (Named) obj;
+            if (name == null) {
+                if (other.name != null)
+                    return false;
+            } else if (!name.equals(other.name))
+                return false;
+            if (element == null) {
+                if (other.element != null)
+                    return false;
+            } else if (!element.equals(other.element))
+                return false;
+            return true;
+        }
+
+    }
+
+    public static Element named(String name, Element element) {
+        return new Named(name, element);
+    }
+
+    // The call site is only captured while a render listener is installed, walking the
+    // stack is far too expensive to do on every page build.
+    public static Element named(Element element) {
+        if (null == renderListener) {
+            return element;
+        }
+        StackTraceElement[] stack = new Throwable().getStackTrace();
+        if (stack.length < 2) {
+            return element;
+        }
+        StackTraceElement site = stack[1];
+        return new Named(
+            site.getClassName() + "." + site.getMethodName() + ":" + site.getLineNumber(),
+            element);
+    }
+
+    /**
+     * A node whose content is only built when it is visited. The result is not kept, so it
+     * is built again on every render and never retained by the tree.
+     */
+    public static class Lazy extends Element {
+
+        private static final Lazy EMPTY = new Lazy(() -> null);
+
+        private final Supplier<? extends Element> supplier;
+
+        public Lazy(Supplier<? extends Element> supplier) {
+            this.supplier = supplier;
+        }
+
+        // null renders nothing
+        public Element get() {
+            return this.supplier.get();
+        }
+
+        @Override
+        public <T> T accept(ElementVisitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
+    }
+
+    /**
+     * One node per item, built while the items are visited, see {@link Lazy}.
+     */
+    public static class Each<T> extends Element {
+
+        private final Iterable<? extends T> items;
+        private final Function<? super T, ? extends Element> element;
+
+        public Each(Iterable<? extends T> items, Function<? super T, ? extends Element> element) {
+            this.items = items;
+            this.element = element;
+        }
+
+        public void forEach(Consumer<? super Element> action) {
+            for (T item : this.items) {
+                Element e = this.element.apply(item);
+                if (null != e) {
+                    action.accept(e);
+                }
+            }
+        }
+
+        // the non-null nodes, built as the iterator advances
+        Iterator<Element> iterator() {
+            Iterator<? extends T> items = this.items.iterator();
+            return new Iterator<Element>() {
+
+                private Element next;
+
+                @Override
+                public boolean hasNext() {
+                    while (null == this.next && items.hasNext()) {
+                        this.next = Each.this.element.apply(items.next());
+                    }
+                    return null != this.next;
+                }
+
+                @Override
+                public Element next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Element e = this.next;
+                    this.next = null;
+                    return e;
+                }
+            };
+        }
+
+        @Override
+        public <R> R accept(ElementVisitor<R> visitor) {
+            return visitor.visit(this);
+        }
+
+    }
+
+    public static Element lazy(Supplier<? extends Element> element) {
+        return new Lazy(element);
+    }
+
+    public static Element when(boolean condition, Supplier<? extends Element> element) {
+        return condition ? new Lazy(element) : Lazy.EMPTY;
+    }
+
+    public static <T> Element each(Iterable<? extends T> items, Function<? super T, ? extends Element> element) {
+        return new Each<>(items, element);
     }
 
     public enum DocTypeValue {
@@ -181,82 +599,67 @@ public final class DSL {
 
     }
 
-    public static String render(List<Element> elements) {
-        return elements.stream()
-            .map(DSL::renderElement)
-            .reduce("", (a, b) -> a + b);
+    private static volatile RenderListener renderListener;
+
+    public static void setRenderListener(RenderListener listener) {
+        renderListener = listener;
     }
 
-    public static String render(Element... elements) {
-        return render(Arrays.asList(elements));
+    public static RenderListener renderListener() {
+        return renderListener;
     }
 
-    private static String renderElement(Element element) {
-        return element.accept(new ElementVisitor<String>() {
+    private static volatile EscapeCache escapeCache;
 
-            @Override
-            public String visit(HTMLElement element) {
-                return renderHTMLElement(element);
-            }
+    // null disables the cache, which is the default
+    public static void setEscapeCache(EscapeCache cache) {
+        escapeCache = cache;
+    }
 
-            @Override
-            public String visit(DocType page) {
-                return page.docType().value();
-            }
+    public static EscapeCache escapeCache() {
+        return escapeCache;
+    }
 
-            @Override
-            public String visit(Text text) {
-                return text.content();
-            }
-        });
+    private static final Map<String, Component<?>> components = new ConcurrentHashMap<>();
+
+    public static <P> Component<P> component(String name, Function<? super P, ? extends Element> render) {
+        return component(name, render, Component.Cache.shared());
     }
 
-    private static String renderHTMLElement(HTMLElement element) {
-        StringBuilder elementBuilder = new StringBuilder()
-                .append(
-                    openingTag(
-                        element.name(),
-                        renderTagAttrs(element.attributes())));
-        
-        if (element.isVoidElement()) {
-            return elementBuilder.toString();
+    // registering a name again (a reloaded class, a test) replaces the component and drops
+    // the cached output of the one it replaces
+    public static <P> Component<P> component(String name, Function<? super P, ? extends Element> render,
+            Component.Cache cache) {
+        Component<P> component = new Component<>(name, render, cache);
+        Component<?> previous = components.put(name, component);
+        if (null != previous) {
+            previous.invalidateAll();
         }
+        return component;
+    }
 
-        return elementBuilder.append(
-                    element.nodes().stream()
-                        .map(e -> render(e))
-                        .reduce("", (a, b) -> a + b))
-                .append(closingTag(element.name()))
-                .toString();
+    public static Map<String, Component<?>> components() {
+        return Collections.unmodifiableMap(components);
     }
 
-    private static String openingTag(String name, String attrs) {
-        return new StringBuilder()
-                .append("<")
-                .append(name)
-                .append(" ")
-                .append(attrs)
-                .append(">")
-                .toString();
+    public static String render(List<Element> elements) {
+        StringBuilder sb = new StringBuilder();
+        new Renderer(Sink.of(sb)).render(elements);
+        return sb.toString();
     }
 
-    private static String closingTag(String name) {
-        return new StringBuilder()
-            .append("</")
-            .append(name)
-            .append(">")
-            .toString();
+    public static String render(Element... elements) {
+        return render(Arrays.asList(elements));
     }
 
-    private static String renderTagAttrs(Map<String, String> attrs) {
-        return attrs.entrySet()
-            .stream()
-            .map(kv -> 
-                null == kv.getValue() 
-                    ? kv.getKey()
-                    : String.format("%s=\"%s\"", kv.getKey(), kv.getValue()))
-            .reduce("", (a, b) -> String.format("%s %s", a, b))
-            .trim();
+    public static String renderMinified(List<Element> elements) {
+        StringBuilder sb = new StringBuilder();
+        new MinifyingRenderer(Sink.of(sb)).render(elements);
+        return sb.toString();
+    }
+
+    public static String renderMinified(Element... elements) {
+        return renderMinified(Arrays.asList(elements));
     }
 
     public static Element html(Map<String, String> attrs, List<Element> es) {
@@ -351,6 +754,15 @@ public final class DSL {
         return script(attributes, "");
     }
 
+    // inline content that is not a String, such as __u(Path) or __u(CharSequence)
+    public static Element script(Map<String, String> attributes, Element content) {
+        return new HTMLElement("script", attributes, Arrays.asList(content));
+    }
+
+    public static Element script(Element content) {
+        return script(Collections.emptyMap(), content);
+    }
+
     public static Element body(Map<String, String> attrs, List<Element> es) {
         return new HTMLElement("body", attrs, es);
     }
@@ -368,11 +780,11 @@ public final class DSL {
     }
 
     public static Element body(String idAndClasses, List<Element> elements) {
-        return body(parseIdAndClasses(idAndClasses), elements);
+        return body(Selector.of(idAndClasses), elements);
     }
 
     public static Element body(String idAndClasses, Element... elements) {
-        return body(parseIdAndClasses(idAndClasses), elements);
+        return body(Selector.of(idAndClasses), elements);
     }
 
     // ----------------------------------------------------------------------------------
@@ -396,11 +808,11 @@ public final class DSL {
     }
 
     public static Element section(String idAndClasses, List<Element> elements) {
-        return section(parseIdAndClasses(idAndClasses), elements);
+        return section(Selector.of(idAndClasses), elements);
     }
 
     public static Element section(String idAndClasses, Element... elements) {
-        return section(parseIdAndClasses(idAndClasses), elements);
+        return section(Selector.of(idAndClasses), elements);
     }
 
     public static HTMLElement aside(Map<String, String> attrs, List<Element> es) {
@@ -420,11 +832,11 @@ public final class DSL {
     }
 
     public static Element aside(String idAndClasses, List<Element> elements) {
-        return aside(parseIdAndClasses(idAndClasses), elements);
+        return aside(Selector.of(idAndClasses), elements);
     }
 
     public static Element aside(String idAndClasses, Element... elements) {
-        return aside(parseIdAndClasses(idAndClasses), elements);
+        return aside(Selector.of(idAndClasses), elements);
     }
 
     public static Element footer(Map<String, String> attrs, List<Element> es) {
@@ -444,11 +856,11 @@ public final class DSL {
     }
 
     public static Element footer(String idAndClasses, List<Element> elements) {
-        return footer(parseIdAndClasses(idAndClasses), elements);
+        return footer(Selector.of(idAndClasses), elements);
     }
 
     public static Element footer(String idAndClasses, Element... elements) {
-        return footer(parseIdAndClasses(idAndClasses), elements);
+        return footer(Selector.of(idAndClasses), elements);
     }
 
     public static Element header(Map<String, String> attrs, List<Element> es) {
@@ -468,11 +880,11 @@ public final class DSL {
     }
 
     public static Element header(String idAndClasses, List<Element> elements) {
-        return header(parseIdAndClasses(idAndClasses), elements);
+        return header(Selector.of(idAndClasses), elements);
     }
 
     public static Element header(String idAndClasses, Element... elements) {
-        return header(parseIdAndClasses(idAndClasses), elements);
+        return header(Selector.of(idAndClasses), elements);
     }
 
     public static Element main(Map<String, String> attrs, List<Element> es) {
@@ -492,11 +904,11 @@ public final class DSL {
     }
 
     public static Element main(String idAndClasses, List<Element> elements) {
-        return main(parseIdAndClasses(idAndClasses), elements);
+        return main(Selector.of(idAndClasses), elements);
     }
 
     public static Element main(String idAndClasses, Element... elements) {
-        return main(parseIdAndClasses(idAndClasses), elements);
+        return main(Selector.of(idAndClasses), elements);
     }
 
     public static Element nav(Map<String, String> attrs, List<Element> es) {
@@ -516,11 +928,11 @@ public final class DSL {
     }
 
     public static Element nav(String idAndClasses, List<Element> elements) {
-        return nav(parseIdAndClasses(idAndClasses), elements);
+        return nav(Selector.of(idAndClasses), elements);
     }
 
     public static Element nav(String idAndClasses, Element... elements) {
-        return nav(parseIdAndClasses(idAndClasses), elements);
+        return nav(Selector.of(idAndClasses), elements);
     }
 
     public static Element article(Map<String, String> attrs, List<Element> es) {
@@ -540,11 +952,11 @@ public final class DSL {
     }
 
     public static Element article(String idAndClasses, List<Element> elements) {
-        return article(parseIdAndClasses(idAndClasses), elements);
+        return article(Selector.of(idAndClasses), elements);
     }
 
     public static Element article(String idAndClasses, Element... elements) {
-        return article(parseIdAndClasses(idAndClasses), elements);
+        return article(Selector.of(idAndClasses), elements);
     }
 
     public static Element h1(Map<String, String> attrs, List<Element> es) {
@@ -572,15 +984,15 @@ public final class DSL {
     }
 
     public static Element h1(String idAndClasses, List<Element> elements) {
-        return h1(parseIdAndClasses(idAndClasses), elements);
+        return h1(Selector.of(idAndClasses), elements);
     }
 
     public static Element h1(String idAndClasses, Element... elements) {
-        return h1(parseIdAndClasses(idAndClasses), elements);
+        return h1(Selector.of(idAndClasses), elements);
     }
 
     public static Element h1(String idAndClasses, String content) {
-        return h1(parseIdAndClasses(idAndClasses), content);
+        return h1(Selector.of(idAndClasses), content);
     }
 
     public static Element h2(Map<String, String> attrs, List<Element> es) {
@@ -608,15 +1020,15 @@ public final class DSL {
     }
 
     public static Element h2(String idAndClasses, List<Element> elements) {
-        return h2(parseIdAndClasses(idAndClasses), elements);
+        return h2(Selector.of(idAndClasses), elements);
     }
 
     public static Element h2(String idAndClasses, Element... elements) {
-        return h2(parseIdAndClasses(idAndClasses), elements);
+        return h2(Selector.of(idAndClasses), elements);
     }
 
     public static Element h2(String idAndClasses, String content) {
-        return h2(parseIdAndClasses(idAndClasses), content);
+        return h2(Selector.of(idAndClasses), content);
     }
 
     public static Element h3(Map<String, String> attrs, List<Element> es) {
@@ -644,15 +1056,15 @@ public final class DSL {
     }
 
     public static Element h3(String idAndClasses, List<Element> elements) {
-        return h3(parseIdAndClasses(idAndClasses), elements);
+        return h3(Selector.of(idAndClasses), elements);
     }
 
     public static Element h3(String idAndClasses, Element... elements) {
-        return h3(parseIdAndClasses(idAndClasses), elements);
+        return h3(Selector.of(idAndClasses), elements);
     }
 
     public static Element h3(String idAndClasses, String content) {
-        return h3(parseIdAndClasses(idAndClasses), content);
+        return h3(Selector.of(idAndClasses), content);
     }
 
     public static Element h4(Map<String, String> attrs, List<Element> es) {
@@ -680,15 +1092,15 @@ public final class DSL {
     }
 
     public static Element h4(String idAndClasses, List<Element> elements) {
-        return h4(parseIdAndClasses(idAndClasses), elements);
+        return h4(Selector.of(idAndClasses), elements);
     }
 
     public static Element h4(String idAndClasses, Element... elements) {
-        return h4(parseIdAndClasses(idAndClasses), elements);
+        return h4(Selector.of(idAndClasses), elements);
     }
 
     public static Element h4(String idAndClasses, String content) {
-        return h4(parseIdAndClasses(idAndClasses), content);
+        return h4(Selector.of(idAndClasses), content);
     }
 
     public static Element h5(Map<String, String> attrs, List<Element> es) {
@@ -716,15 +1128,15 @@ public final class DSL {
     }
 
     public static Element h5(String idAndClasses, List<Element> elements) {
-        return h5(parseIdAndClasses(idAndClasses), elements);
+        return h5(Selector.of(idAndClasses), elements);
     }
 
     public static Element h5(String idAndClasses, Element... elements) {
-        return h5(parseIdAndClasses(idAndClasses), elements);
+        return h5(Selector.of(idAndClasses), elements);
     }
 
     public static Element h5(String idAndClasses, String content) {
-        return h5(parseIdAndClasses(idAndClasses), content);
+        return h5(Selector.of(idAndClasses), content);
     }
 
     public static Element h6(Map<String, String> attrs, List<Element> es) {
@@ -752,15 +1164,15 @@ public final class DSL {
     }
 
     public static Element h6(String idAndClasses, List<Element> elements) {
-        return h6(parseIdAndClasses(idAndClasses), elements);
+        return h6(Selector.of(idAndClasses), elements);
     }
 
     public static Element h6(String idAndClasses, Element... elements) {
-        return h6(parseIdAndClasses(idAndClasses), elements);
+        return h6(Selector.of(idAndClasses), elements);
     }
 
     public static Element h6(String idAndClasses, String content) {
-        return h6(parseIdAndClasses(idAndClasses), content);
+        return h6(Selector.of(idAndClasses), content);
     }
 
     // ----------------------------------------------------------------------------------
@@ -785,11 +1197,11 @@ public final class DSL {
     }
 
     public static Element div(String idAndClasses, List<Element> elements) {
-        return div(parseIdAndClasses(idAndClasses), elements);
+        return div(Selector.of(idAndClasses), elements);
     }
 
     public static Element div(String idAndClasses, Element... elements) {
-        return div(parseIdAndClasses(idAndClasses), elements);
+        return div(Selector.of(idAndClasses), elements);
     }
 
     public static Element p(Map<String, String> attrs, List<Element> es) {
@@ -817,11 +1229,11 @@ public final class DSL {
     }
 
     public static Element p(String idAndClasses, List<Element> elements) {
-        return p(parseIdAndClasses(idAndClasses), elements);
+        return p(Selector.of(idAndClasses), elements);
     }
 
     public static Element p(String idAndClasses, Element... elements) {
-        return p(parseIdAndClasses(idAndClasses), elements);
+        return p(Selector.of(idAndClasses), elements);
     }
 
     public static Element ul(Map<String, String> attrs, List<Element> es) {
@@ -841,11 +1253,11 @@ public final class DSL {
     }
 
     public static Element ul(String idAndClasses, List<Element> elements) {
-        return ul(parseIdAndClasses(idAndClasses), elements);
+        return ul(Selector.of(idAndClasses), elements);
     }
 
     public static Element ul(String idAndClasses, Element... elements) {
-        return ul(parseIdAndClasses(idAndClasses), elements);
+        return ul(Selector.of(idAndClasses), elements);
     }
 
     public static HTMLElement li(Map<String, String> attrs, List<Element> es) {
@@ -873,15 +1285,31 @@ public final class DSL {
     }
 
     public static Element li(String idAndClasses, List<Element> elements) {
-        return li(parseIdAndClasses(idAndClasses), elements);
+        return li(Selector.of(idAndClasses), elements);
     }
 
     public static Element li(String idAndClasses, Element... elements) {
-        return li(parseIdAndClasses(idAndClasses), elements);
+        return li(Selector.of(idAndClasses), elements);
     }
 
     public static Element li(String idAndClasses, String content) {
-        return li(parseIdAndClasses(idAndClasses), content);
+        return li(Selector.of(idAndClasses), content);
+    }
+
+    public static Element li(long value) {
+        return li(__(value));
+    }
+
+    public static Element li(double value, int decimals) {
+        return li(__(value, decimals));
+    }
+
+    public static Element li(BigDecimal value) {
+        return li(__(value));
+    }
+
+    public static Element li(Map<String, String> attrs, long value) {
+        return li(attrs, __(value));
     }
 
     public static HTMLElement ol(Map<String, String> attrs, List<Element> es) {
@@ -901,11 +1329,11 @@ public final class DSL {
     }
 
     public static Element ol(String idAndClasses, List<Element> elements) {
-        return ol(parseIdAndClasses(idAndClasses), elements);
+        return ol(Selector.of(idAndClasses), elements);
     }
 
     public static Element ol(String idAndClasses, Element... elements) {
-        return ol(parseIdAndClasses(idAndClasses), elements);
+        return ol(Selector.of(idAndClasses), elements);
     }
 
     public static HTMLElement dl(Map<String, String> attrs, List<Element> es) {
@@ -925,11 +1353,11 @@ public final class DSL {
     }
 
     public static Element dl(String idAndClasses, List<Element> elements) {
-        return dl(parseIdAndClasses(idAndClasses), elements);
+        return dl(Selector.of(idAndClasses), elements);
     }
 
     public static Element dl(String idAndClasses, Element... elements) {
-        return dl(parseIdAndClasses(idAndClasses), elements);
+        return dl(Selector.of(idAndClasses), elements);
     }
 
     public static HTMLElement dt(Map<String, String> attrs, List<Element> es) {
@@ -957,15 +1385,15 @@ public final class DSL {
     }
 
     public static Element dt(String idAndClasses, List<Element> elements) {
-        return dt(parseIdAndClasses(idAndClasses), elements);
+        return dt(Selector.of(idAndClasses), elements);
     }
 
     public static Element dt(String idAndClasses, Element... elements) {
-        return dt(parseIdAndClasses(idAndClasses), elements);
+        return dt(Selector.of(idAndClasses), elements);
     }
 
     public static Element dt(String idAndClasses, String content) {
-        return dt(parseIdAndClasses(idAndClasses), content);
+        return dt(Selector.of(idAndClasses), content);
     }
 
     public static HTMLElement dd(Map<String, String> attrs, List<Element> es) {
@@ -993,15 +1421,15 @@ public final class DSL {
     }
 
     public static Element dd(String idAndClasses, List<Element> elements) {
-        return dd(parseIdAndClasses(idAndClasses), elements);
+        return dd(Selector.of(idAndClasses), elements);
     }
 
     public static Element dd(String idAndClasses, Element... elements) {
-        return dd(parseIdAndClasses(idAndClasses), elements);
+        return dd(Selector.of(idAndClasses), elements);
     }
 
     public static Element dd(String idAndClasses, String content) {
-        return dd(parseIdAndClasses(idAndClasses), content);
+        return dd(Selector.of(idAndClasses), content);
     }
 
     // ----------------------------------------------------------------------------------
@@ -1132,11 +1560,40 @@ public final class DSL {
     }
 
     public static Element table(String idAndClasses, List<Element> elements) {
-        return table(parseIdAndClasses(idAndClasses), elements);
+        return table(Selector.of(idAndClasses), elements);
     }
 
     public static Element table(String idAndClasses, Element... elements) {
-        return table(parseIdAndClasses(idAndClasses), elements);
+        return table(Selector.of(idAndClasses), elements);
+    }
+
+    public static <R> DataTable<R> dataTable(Iterable<? extends R> rows) {
+        return dataTable(Collections.emptyMap(), rows);
+    }
+
+    public static <R> DataTable<R> dataTable(Map<String, String> attrs, Iterable<? extends R> rows) {
+        return new DataTable<>(attrs, rows, null, -1);
+    }
+
+    // rendered once, the iterator is consumed
+    public static <R> DataTable<R> dataTable(Iterator<? extends R> rows) {
+        return dataTable(Collections.emptyMap(), rows);
+    }
+
+    public static <R> DataTable<R> dataTable(Map<String, String> attrs, Iterator<? extends R> rows) {
+        return new DataTable<>(attrs, null, rows, -1);
+    }
+
+    // rows read from column arrays
+    public static DataTable<Void> dataTable(int rows) {
+        return dataTable(Collections.emptyMap(), rows);
+    }
+
+    public static DataTable<Void> dataTable(Map<String, String> attrs, int rows) {
+        if (rows < 0) {
+            throw new IllegalArgumentException("negative row count: " + rows);
+        }
+        return new DataTable<>(attrs, null, null, rows);
     }
 
     public static Element thead(Map<String, String> attrs, List<Element> es) {
@@ -1156,11 +1613,11 @@ public final class DSL {
     }
 
     public static Element thead(String idAndClasses, List<Element> elements) {
-        return thead(parseIdAndClasses(idAndClasses), elements);
+        return thead(Selector.of(idAndClasses), elements);
     }
 
     public static Element thead(String idAndClasses, Element... elements) {
-        return thead(parseIdAndClasses(idAndClasses), elements);
+        return thead(Selector.of(idAndClasses), elements);
     }
 
     public static Element tbody(Map<String, String> attrs, List<Element> es) {
@@ -1180,11 +1637,11 @@ public final class DSL {
     }
 
     public static Element tbody(String idAndClasses, List<Element> elements) {
-        return tbody(parseIdAndClasses(idAndClasses), elements);
+        return tbody(Selector.of(idAndClasses), elements);
     }
 
     public static Element tbody(String idAndClasses, Element... elements) {
-        return tbody(parseIdAndClasses(idAndClasses), elements);
+        return tbody(Selector.of(idAndClasses), elements);
     }
 
     public static Element tr(Map<String, String> attrs, List<Element> es) {
@@ -1204,11 +1661,11 @@ public final class DSL {
     }
 
     public static Element tr(String idAndClasses, List<Element> elements) {
-        return tr(parseIdAndClasses(idAndClasses), elements);
+        return tr(Selector.of(idAndClasses), elements);
     }
 
     public static Element tr(String idAndClasses, Element... elements) {
-        return tr(parseIdAndClasses(idAndClasses), elements);
+        return tr(Selector.of(idAndClasses), elements);
     }
 
     public static Element th(Map<String, String> attrs, List<Element> es) {
@@ -1236,15 +1693,31 @@ public final class DSL {
     }
 
     public static Element th(String idAndClasses, List<Element> elements) {
-        return th(parseIdAndClasses(idAndClasses), elements);
+        return th(Selector.of(idAndClasses), elements);
     }
 
     public static Element th(String idAndClasses, Element... elements) {
-        return th(parseIdAndClasses(idAndClasses), elements);
+        return th(Selector.of(idAndClasses), elements);
     }
 
     public static Element th(String idAndClasses, String content) {
-        return th(parseIdAndClasses(idAndClasses), content);
+        return th(Selector.of(idAndClasses), content);
+    }
+
+    public static Element th(long value) {
+        return th(__(value));
+    }
+
+    public static Element th(double value, int decimals) {
+        return th(__(value, decimals));
+    }
+
+    public static Element th(BigDecimal value) {
+        return th(__(value));
+    }
+
+    public static Element th(Map<String, String> attrs, long value) {
+        return th(attrs, __(value));
     }
 
     public static Element td(Map<String, String> attrs, List<Element> es) {
@@ -1272,15 +1745,31 @@ public final class DSL {
     }
 
     public static Element td(String idAndClasses, List<Element> elements) {
-        return td(parseIdAndClasses(idAndClasses), elements);
+        return td(Selector.of(idAndClasses), elements);
     }
 
     public static Element td(String idAndClasses, Element... elements) {
-        return td(parseIdAndClasses(idAndClasses), elements);
+        return td(Selector.of(idAndClasses), elements);
     }
 
     public static Element td(String idAndClasses, String content) {
-        return td(parseIdAndClasses(idAndClasses), content);
+        return td(Selector.of(idAndClasses), content);
+    }
+
+    public static Element td(long value) {
+        return td(__(value));
+    }
+
+    public static Element td(double value, int decimals) {
+        return td(__(value, decimals));
+    }
+
+    public static Element td(BigDecimal value) {
+        return td(__(value));
+    }
+
+    public static Element td(Map<String, String> attrs, long value) {
+        return td(attrs, __(value));
     }
 
     // ----------------------------------------------------------------------------------
@@ -1313,15 +1802,31 @@ public final class DSL {
     }
 
     public static Element span(String idAndClasses, List<Element> elements) {
-        return span(parseIdAndClasses(idAndClasses), elements);
+        return span(Selector.of(idAndClasses), elements);
     }
 
     public static Element span(String idAndClasses, Element... elements) {
-        return span(parseIdAndClasses(idAndClasses), elements);
+        return span(Selector.of(idAndClasses), elements);
     }
 
     public static Element span(String idAndClasses, String content) {
-        return span(parseIdAndClasses(idAndClasses), content);
+        return span(Selector.of(idAndClasses), content);
+    }
+
+    public static Element span(long value) {
+        return span(__(value));
+    }
+
+    public static Element span(double value, int decimals) {
+        return span(__(value, decimals));
+    }
+
+    public static Element span(BigDecimal value) {
+        return span(__(value));
+    }
+
+    public static Element span(Map<String, String> attrs, long value) {
+        return span(attrs, __(value));
     }
 
     public static HTMLElement a(Map<String, String> attrs, Element e) {
@@ -1365,15 +1870,15 @@ public final class DSL {
     }
 
     public static Element i(String idAndClasses, List<Element> elements) {
-        return i(parseIdAndClasses(idAndClasses), elements);
+        return i(Selector.of(idAndClasses), elements);
     }
 
     public static Element i(String idAndClasses, Element... elements) {
-        return i(parseIdAndClasses(idAndClasses), elements);
+        return i(Selector.of(idAndClasses), elements);
     }
 
     public static Element i(String idAndClasses, String content) {
-        return i(parseIdAndClasses(idAndClasses), content);
+        return i(Selector.of(idAndClasses), content);
     }
 
     public static Element br(String content) {
@@ -1389,7 +1894,12 @@ public final class DSL {
         return attrs(Arrays.asList(attrs));
     }
 
+    // a new HashMap, except for a lone ClassSet: then its shared, immutable Selector, which
+    // renders as one chunk; copy it before adding attributes
     public static Map<String, String> attrs(List<Entry<String, String>> attrs) {
+        if (1 == attrs.size() && attrs.get(0) instanceof ClassSet) {
+            return ((ClassSet) attrs.get(0)).selector();
+        }
         return attrs.stream()
             .collect(HashMap::new, (m,v)->m.put(v.getKey(), v.getValue()), HashMap::putAll);
     }
@@ -1421,9 +1931,7 @@ public final class DSL {
     public static Entry<String, String> classes(List<String> classes) {
         return attr(
             "class",
-            classes.stream() 
-                .reduce("", (a, b) -> String.format("%s %s", a, b))
-                .trim()); 
+            String.join(" ", classes).trim());
     }
 
     public static Entry<String, String> type(String type) {
@@ -1535,30 +2043,28 @@ public final class DSL {
     // ----------------------------------------------------------------------------------
 
     public static String escapeHTML(String str) {
-        return str.codePoints().mapToObj(c -> c > 127 || "\"'<>&".indexOf(c) != -1 ?
-                "&#" + c + ";" : new String(Character.toChars(c)))
-           .collect(Collectors.joining());
+        EscapeCache cache = escapeCache;
+        String escaped = null == cache ? null : cache.get(str);
+        if (null == escaped) {
+            StringBuilder sb = new StringBuilder(str.length() + 16);
+            escapeHTML(str, Sink.of(sb));
+            escaped = sb.toString();
+        }
+        RenderListener listener = renderListener;
+        if (null != listener) {
+            listener.escaped(str.length(), escaped.length());
+        }
+        return escaped;
+    }
+
+    // non-ASCII code points and "'<>& become numeric character references
+    public static Sink escapeHTML(CharSequence str, Sink out) {
+        return Escaper.escape(str, out);
     }
 
+    // a mutable copy; the element factories use the cached, immutable Selector.of
     public static Map<String, String> parseIdAndClasses(String idAndClasses) {
-        return _parseIdAndClasses(
-            new LinkedList<>(Arrays.asList(idAndClasses.split("\\."))), 
-            new HashMap<String, String>() {{
-                put("class", "");
-                put("id", "");
-            }});
-    }
-
-    private static Map<String, String> _parseIdAndClasses(LinkedList<String> parts, HashMap<String, String> acc) {
-        if (parts.size() < 1) { return acc; }
-        String current = parts.get(0);
-        if (current.startsWith("#")) {
-            acc.put("id", current.substring(1));
-        } else {
-            acc.put("class", acc.get("class") + " " + current);
-        }
-        parts.remove();
-        return _parseIdAndClasses(parts, acc);
+        return new HashMap<>(Selector.of(idAndClasses));
     }
 
     private static class Tuple2<T1, T2> implements Entry<T1, T2> {
@@ -0,0 +1,389 @@
+package io.h5z.stencil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.ElementVisitor;
+import io.h5z.stencil.DSL.HTMLElement;
+
+/**
+ * A {@code table} rendered column by column from a row source, without one element per
+ * cell. Rows come from an {@code Iterable}, a single-use {@code Iterator}, or a row count
+ * for tables built from primitive column arrays:
+ *
+ * <pre>
+ * dataTable(orders)
+ *     .number("Id", Order::id)
+ *     .text("Customer", Order::customer)
+ *     .decimal("Total", attrs(classes("num")), Order::total, 2);
+ *
+ * dataTable(ids.length)
+ *     .number("Id", ids)
+ *     .decimal("Price", prices, 2);
+ * </pre>
+ *
+ * {@link Renderer} writes each row in one loop using {@code <td ...>} prefixes encoded once
+ * per column, so memory does not grow with the number of rows. Other visitors, including
+ * {@link MinifyingRenderer}, see the equivalent {@link #element() element tree}. Array
+ * columns are read at the row number; function columns get a null row in count tables.
+ */
+public final class DataTable<R> extends Element {
+
+    private final Map<String, String> attrs;
+    private final Iterable<? extends R> rows;
+    private Iterator<? extends R> iterator;
+    private final int count;
+    private final List<Column<R>> columns = new ArrayList<>();
+    private volatile Encoded encoded;
+
+    DataTable(Map<String, String> attrs, Iterable<? extends R> rows, Iterator<? extends R> iterator, int count) {
+        this.attrs = attrs;
+        this.rows = rows;
+        this.iterator = iterator;
+        this.count = count;
+    }
+
+    public DataTable<R> text(String header, Function<? super R, ? extends CharSequence> value) {
+        return text(header, Collections.emptyMap(), value);
+    }
+
+    public DataTable<R> text(String header, Map<String, String> attrs, Function<? super R, ? extends CharSequence> value) {
+        return add(new TextColumn<>(header, attrs, (row, index) -> value.apply(row)));
+    }
+
+    public DataTable<R> text(String header, CharSequence[] values) {
+        return text(header, Collections.emptyMap(), values);
+    }
+
+    public DataTable<R> text(String header, Map<String, String> attrs, CharSequence[] values) {
+        checkLength(header, values.length);
+        return add(new TextColumn<>(header, attrs, (row, index) -> values[index]));
+    }
+
+    public DataTable<R> number(String header, ToLongFunction<? super R> value) {
+        return number(header, Collections.emptyMap(), value);
+    }
+
+    public DataTable<R> number(String header, Map<String, String> attrs, ToLongFunction<? super R> value) {
+        return add(new LongColumn<>(header, attrs, (row, index) -> value.applyAsLong(row)));
+    }
+
+    public DataTable<R> number(String header, long[] values) {
+        return number(header, Collections.emptyMap(), values);
+    }
+
+    public DataTable<R> number(String header, Map<String, String> attrs, long[] values) {
+        checkLength(header, values.length);
+        return add(new LongColumn<>(header, attrs, (row, index) -> values[index]));
+    }
+
+    public DataTable<R> number(String header, int[] values) {
+        return number(header, Collections.emptyMap(), values);
+    }
+
+    public DataTable<R> number(String header, Map<String, String> attrs, int[] values) {
+        checkLength(header, values.length);
+        return add(new LongColumn<>(header, attrs, (row, index) -> values[index]));
+    }
+
+    public DataTable<R> decimal(String header, ToDoubleFunction<? super R> value, int decimals) {
+        return decimal(header, Collections.emptyMap(), value, decimals);
+    }
+
+    public DataTable<R> decimal(String header, Map<String, String> attrs, ToDoubleFunction<? super R> value, int decimals) {
+        return add(new DecimalColumn<>(header, attrs, (row, index) -> value.applyAsDouble(row), decimals));
+    }
+
+    public DataTable<R> decimal(String header, double[] values, int decimals) {
+        return decimal(header, Collections.emptyMap(), values, decimals);
+    }
+
+    public DataTable<R> decimal(String header, Map<String, String> attrs, double[] values, int decimals) {
+        checkLength(header, values.length);
+        return add(new DecimalColumn<>(header, attrs, (row, index) -> values[index], decimals));
+    }
+
+    public DataTable<R> cell(String header, Function<? super R, ? extends Element> value) {
+        return cell(header, Collections.emptyMap(), value);
+    }
+
+    public DataTable<R> cell(String header, Map<String, String> attrs, Function<? super R, ? extends Element> value) {
+        return add(new ElementColumn<>(header, attrs, value));
+    }
+
+    /**
+     * The same table as {@code table}, {@code thead}, {@code tbody}, {@code tr},
+     * {@code th} and {@code td} elements. Builds every row.
+     */
+    public Element element() {
+        List<Element> trs = new ArrayList<>();
+        forEachRow((row, index) -> trs.add(row(row, index)));
+        return DSL.table(this.attrs, header(), DSL.tbody(trs));
+    }
+
+    @Override
+    public <T> T accept(ElementVisitor<T> visitor) {
+        return visitor.visit(this);
+    }
+
+    void render(Renderer renderer) {
+        Encoded encoded = encoded();
+        Sink out = renderer.out;
+        List<Column<R>> columns = this.columns;
+        int n = columns.size();
+        out.append(encoded.head);
+        forEachRow((row, index) -> {
+            out.append("<tr >");
+            for (int i = 0; i < n; i++) {
+                out.append(encoded.cells[i]);
+                columns.get(i).write(row, index, renderer);
+                out.append("</td>");
+            }
+            out.append("</tr>");
+        });
+        out.append("</tbody></table>");
+    }
+
+    private DataTable<R> add(Column<R> column) {
+        this.columns.add(column);
+        this.encoded = null;
+        return this;
+    }
+
+    private void checkLength(String header, int length) {
+        if (length < this.count) {
+            throw new IllegalArgumentException(
+                "column " + header + " has " + length + " values for " + this.count + " rows");
+        }
+    }
+
+    private void forEachRow(RowAction<R> action) {
+        if (this.count >= 0) {
+            for (int i = 0; i < this.count; i++) {
+                action.accept(null, i);
+            }
+            return;
+        }
+        Iterator<? extends R> rows = rowIterator();
+        int index = 0;
+        while (rows.hasNext()) {
+            action.accept(rows.next(), index++);
+        }
+    }
+
+    private Iterator<? extends R> rowIterator() {
+        Iterator<? extends R> rows = null != this.rows ? this.rows.iterator() : this.iterator;
+        if (null == rows) {
+            throw new IllegalStateException("the rows of an iterator table can only be read once");
+        }
+        this.iterator = null;
+        return rows;
+    }
+
+    // the markup before the first row, after which rows() follow and "</tbody></table>" ends the table
+    String head() {
+        return encoded().head;
+    }
+
+    // one tr element per row, built as the rows are read
+    Iterator<Element> rows() {
+        Iterator<? extends R> rows = this.count >= 0 ? null : rowIterator();
+        return new Iterator<Element>() {
+
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return null == rows ? this.index < DataTable.this.count : rows.hasNext();
+            }
+
+            @Override
+            public Element next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return row(null == rows ? null : rows.next(), this.index++);
+            }
+        };
+    }
+
+    private Element header() {
+        List<Element> headers = new ArrayList<>(this.columns.size());
+        for (Column<R> column : this.columns) {
+            headers.add(DSL.th(column.header));
+        }
+        return DSL.thead(DSL.tr(headers));
+    }
+
+    private Element row(R row, int index) {
+        List<Element> tds = new ArrayList<>(this.columns.size());
+        for (Column<R> column : this.columns) {
+            tds.add(DSL.td(column.attrs, column.content(row, index)));
+        }
+        return DSL.tr(tds);
+    }
+
+    // the start of the table through <tbody >, and the <td ...> prefix of each column
+    private Encoded encoded() {
+        Encoded encoded = this.encoded;
+        if (null != encoded) {
+            return encoded;
+        }
+        StringBuilder sb = new StringBuilder();
+        Renderer plain = new Renderer(Sink.of(sb), null);
+        plain.openingTag((HTMLElement) DSL.table(this.attrs));
+        plain.render(header());
+        sb.append("<tbody >");
+        String head = sb.toString();
+        String[] cells = new String[this.columns.size()];
+        for (int i = 0; i < cells.length; i++) {
+            sb.setLength(0);
+            plain.openingTag((HTMLElement) DSL.td(this.columns.get(i).attrs));
+            cells[i] = sb.toString();
+        }
+        return this.encoded = new Encoded(head, cells);
+    }
+
+    private static final class Encoded {
+
+        private final String head;
+        private final String[] cells;
+
+        Encoded(String head, String[] cells) {
+            this.head = head;
+            this.cells = cells;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowAction<R> {
+        void accept(R row, int index);
+    }
+
+    @FunctionalInterface
+    private interface Cell<R, V> {
+        V get(R row, int index);
+    }
+
+    @FunctionalInterface
+    private interface LongCell<R> {
+        long get(R row, int index);
+    }
+
+    @FunctionalInterface
+    private interface DoubleCell<R> {
+        double get(R row, int index);
+    }
+
+    private abstract static class Column<R> {
+
+        final String header;
+        final Map<String, String> attrs;
+
+        Column(String header, Map<String, String> attrs) {
+            this.header = header;
+            this.attrs = attrs;
+        }
+
+        abstract void write(R row, int index, Renderer renderer);
+
+        abstract Element content(R row, int index);
+    }
+
+    // null text renders an empty cell
+    private static final class TextColumn<R> extends Column<R> {
+
+        private final Cell<R, ? extends CharSequence> value;
+
+        TextColumn(String header, Map<String, String> attrs, Cell<R, ? extends CharSequence> value) {
+            super(header, attrs);
+            this.value = value;
+        }
+
+        @Override
+        void write(R row, int index, Renderer renderer) {
+            CharSequence text = this.value.get(row, index);
+            if (null != text) {
+                DSL.escapeHTML(text, renderer.out);
+            }
+        }
+
+        @Override
+        Element content(R row, int index) {
+            CharSequence text = this.value.get(row, index);
+            return DSL.__(null == text ? "" : text.toString());
+        }
+    }
+
+    private static final class LongColumn<R> extends Column<R> {
+
+        private final LongCell<R> value;
+
+        LongColumn(String header, Map<String, String> attrs, LongCell<R> value) {
+            super(header, attrs);
+            this.value = value;
+        }
+
+        @Override
+        void write(R row, int index, Renderer renderer) {
+            Values.write(this.value.get(row, index), renderer.out);
+        }
+
+        @Override
+        Element content(R row, int index) {
+            return DSL.__(this.value.get(row, index));
+        }
+    }
+
+    private static final class DecimalColumn<R> extends Column<R> {
+
+        private final DoubleCell<R> value;
+        private final int decimals;
+
+        DecimalColumn(String header, Map<String, String> attrs, DoubleCell<R> value, int decimals) {
+            super(header, attrs);
+            Values.checkDecimals(decimals);
+            this.value = value;
+            this.decimals = decimals;
+        }
+
+        @Override
+        void write(R row, int index, Renderer renderer) {
+            Values.write(this.value.get(row, index), this.decimals, renderer.out);
+        }
+
+        @Override
+        Element content(R row, int index) {
+            return DSL.__(this.value.get(row, index), this.decimals);
+        }
+    }
+
+    private static final class ElementColumn<R> extends Column<R> {
+
+        private final Function<? super R, ? extends Element> value;
+
+        ElementColumn(String header, Map<String, String> attrs, Function<? super R, ? extends Element> value) {
+            super(header, attrs);
+            this.value = value;
+        }
+
+        @Override
+        void write(R row, int index, Renderer renderer) {
+            this.value.apply(row).accept(renderer);
+        }
+
+        @Override
+        Element content(R row, int index) {
+            return this.value.apply(row);
+        }
+    }
+
+}
@@ -0,0 +1,361 @@
+package io.h5z.stencil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.function.Function;
+
+import io.h5z.stencil.DSL.DocType;
+import io.h5z.stencil.DSL.Each;
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.HTMLElement;
+import io.h5z.stencil.DSL.Lazy;
+import io.h5z.stencil.DSL.Named;
+import io.h5z.stencil.DSL.Text;
+
+/**
+ * Computes the patches that turn one element tree into another. Subtrees are compared by
+ * identity first and then by a structural hash, so unchanged regions cost one lookup.
+ * Lazy, each and data table nodes are built once per diff and reused for hashing and
+ * comparing, at the root too. Text nodes, values included, are compared by the markup
+ * they render. Paths are child indexes from the root, counting text nodes; {@link Named}
+ * wrappers are transparent.
+ */
+public final class Diff {
+
+    private final Map<Element, Long> hashes = new IdentityHashMap<>();
+    // built children of elements and built data tables, so that suppliers run once
+    private final Map<Element, List<Element>> children = new IdentityHashMap<>();
+    private final Map<Element, Element> tables = new IdentityHashMap<>();
+    private final List<Patch> patches = new ArrayList<>();
+
+    private Diff() {
+    }
+
+    public static List<Patch> diff(Element before, Element after) {
+        Diff diff = new Diff();
+        List<Element> bs = diff.expand(Collections.singletonList(before));
+        List<Element> as = diff.expand(Collections.singletonList(after));
+        if (1 == bs.size() && 1 == as.size()) {
+            diff.node(bs.get(0), as.get(0), new int[0]);
+            return Collections.unmodifiableList(diff.patches);
+        }
+        // a lazy or each root rendering no node or several has no paths for them, a change replaces it whole
+        if (bs.size() == as.size()) {
+            for (int i = 0; i < as.size(); i++) {
+                diff.node(bs.get(i), as.get(i), new int[0]);
+            }
+        }
+        if (bs.size() != as.size() || !diff.patches.isEmpty()) {
+            diff.patches.clear();
+            diff.patches.add(new Patch(Op.REPLACE, new int[0], null, null, DSL.each(as, Function.identity())));
+        }
+        return Collections.unmodifiableList(diff.patches);
+    }
+
+    public static List<Patch> diff(List<Element> before, List<Element> after) {
+        Diff diff = new Diff();
+        before = diff.expand(before);
+        after = diff.expand(after);
+        if (before.size() != after.size()) {
+            throw new IllegalArgumentException("documents must have the same number of root nodes");
+        }
+        for (int i = 0; i < before.size(); i++) {
+            diff.node(before.get(i), after.get(i), new int[] { i });
+        }
+        return Collections.unmodifiableList(diff.patches);
+    }
+
+    private void node(Element before, Element after, int[] path) {
+        before = unwrap(before);
+        after = unwrap(after);
+        if (before == after) {
+            return;
+        }
+        if (hash(before) == hash(after) && before.equals(after)) {
+            return;
+        }
+        // leaves are compared by what they render: a value and a text of the same markup are equal
+        if (before instanceof Text && after instanceof Text) {
+            String content = ((Text) after).content();
+            if (!Objects.equals(((Text) before).content(), content)) {
+                this.patches.add(new Patch(Op.REPLACE_TEXT, path, null, content, null));
+            }
+            return;
+        }
+
+        if (before instanceof HTMLElement && after instanceof HTMLElement) {
+            HTMLElement b = (HTMLElement) before;
+            HTMLElement a = (HTMLElement) after;
+            List<Element> bs = children(b);
+            List<Element> as = children(a);
+            if (b.name().equals(a.name())
+                    && b.isVoidElement() == a.isVoidElement()
+                    && bs.size() == as.size()) {
+                attributes(b.attributes(), a.attributes(), path);
+                for (int i = 0; i < as.size(); i++) {
+                    int[] child = Arrays.copyOf(path, path.length + 1);
+                    child[path.length] = i;
+                    node(bs.get(i), as.get(i), child);
+                }
+                return;
+            }
+        }
+
+        this.patches.add(new Patch(Op.REPLACE, path, null, null, after));
+    }
+
+    private void attributes(Map<String, String> before, Map<String, String> after, int[] path) {
+        if (before.equals(after)) {
+            return;
+        }
+        for (Entry<String, String> kv : after.entrySet()) {
+            String previous = before.get(kv.getKey());
+            if (!before.containsKey(kv.getKey())
+                    || (null == previous ? null != kv.getValue() : !previous.equals(kv.getValue()))) {
+                this.patches.add(new Patch(Op.SET_ATTRIBUTE, path, kv.getKey(), kv.getValue(), null));
+            }
+        }
+        for (String name : before.keySet()) {
+            if (!after.containsKey(name)) {
+                this.patches.add(new Patch(Op.REMOVE_ATTRIBUTE, path, name, null, null));
+            }
+        }
+    }
+
+    private long hash(Element element) {
+        Long cached = this.hashes.get(element);
+        if (null != cached) {
+            return cached;
+        }
+
+        long h;
+        if (element instanceof HTMLElement) {
+            HTMLElement e = (HTMLElement) element;
+            h = mix(0x9e3779b97f4a7c15L, e.name().hashCode());
+            h = mix(h, e.attributes().hashCode());
+            h = mix(h, e.isVoidElement() ? 1 : 0);
+            for (Element child : children(e)) {
+                h = mix(h, hash(unwrap(child)));
+            }
+        } else if (element instanceof Text) {
+            h = mix(0xc2b2ae3d27d4eb4fL, String.valueOf(((Text) element).content()).hashCode());
+        } else if (element instanceof DocType) {
+            h = mix(0x165667b19e3779f9L, ((DocType) element).docType().ordinal());
+        } else {
+            h = mix(0x27d4eb2f165667c5L, element.hashCode());
+        }
+        this.hashes.put(element, h);
+        return h;
+    }
+
+    private static long mix(long h, long v) {
+        h ^= v + 0x9e3779b97f4a7c15L + (h << 6) + (h >>> 2);
+        h *= 0xbf58476d1ce4e5b9L;
+        return h ^ (h >>> 31);
+    }
+
+    private Element unwrap(Element element) {
+        while (element instanceof Named || element instanceof DataTable) {
+            element = element instanceof Named ? ((Named) element).element() : table((DataTable<?>) element);
+        }
+        return element;
+    }
+
+    private Element table(DataTable<?> table) {
+        return this.tables.computeIfAbsent(table, t -> ((DataTable<?>) t).element());
+    }
+
+    private List<Element> children(HTMLElement element) {
+        List<Element> children = this.children.get(element);
+        if (null == children) {
+            children = expand(element.nodes());
+            this.children.put(element, children);
+        }
+        return children;
+    }
+
+    // lazy nodes are built here so that paths count the nodes they render
+    @SuppressWarnings("unchecked")
+    private List<Element> expand(List<? extends Element> nodes) {
+        boolean lazy = false;
+        for (Element e : nodes) {
+            lazy |= e instanceof Lazy || e instanceof Each || e instanceof DataTable;
+        }
+        if (!lazy) {
+            return (List<Element>) nodes;
+        }
+        List<Element> expanded = new ArrayList<>(nodes.size());
+        for (Element e : nodes) {
+            expand(e, expanded);
+        }
+        return expanded;
+    }
+
+    private void expand(Element e, List<Element> expanded) {
+        if (e instanceof Lazy) {
+            Element element = ((Lazy) e).get();
+            if (null != element) {
+                expand(element, expanded);
+            }
+        } else if (e instanceof Each) {
+            ((Each<?>) e).forEach(element -> expand(element, expanded));
+        } else if (e instanceof DataTable) {
+            expanded.add(table((DataTable<?>) e));
+        } else {
+            expanded.add(e);
+        }
+    }
+
+    public enum Op {
+        REPLACE("replace"),
+        SET_ATTRIBUTE("attr"),
+        REMOVE_ATTRIBUTE("removeAttr"),
+        REPLACE_TEXT("text");
+
+        private final String value;
+
+        private Op(String value) {
+            this.value = value;
+        }
+
+        public String value() {
+            return this.value;
+        }
+    }
+
+    public static final class Patch {
+
+        private final Op op;
+        private final int[] path;
+        private final String name;
+        private final String value;
+        private final Element element;
+
+        private Patch(Op op, int[] path, String name, String value, Element element) {
+            this.op = op;
+            this.path = path;
+            this.name = name;
+            this.value = value;
+            this.element = element;
+        }
+
+        public Op op() { return this.op; }
+        public int[] path() { return this.path.clone(); }
+        public String name() { return this.name; }
+        public String value() { return this.value; }
+        public Element element() { return this.element; }
+
+        public String html() {
+            return Op.REPLACE == this.op ? DSL.render(this.element) : this.value;
+        }
+
+        @Override
+        public String toString() {
+            return this.op.value() + " " + Arrays.toString(this.path)
+                + (null == this.name ? "" : " " + this.name)
+                + (Op.REMOVE_ATTRIBUTE == this.op ? "" : " " + html());
+        }
+    }
+
+    // [{"op":"replace","path":[0,2],"html":"<td >1</td>"},{"op":"attr","path":[0],"name":"class","value":"x"}]
+    public static String toJson(List<Patch> patches) {
+        StringBuilder sb = new StringBuilder().append('[');
+        for (int i = 0; i < patches.size(); i++) {
+            Patch patch = patches.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"op\":\"").append(patch.op.value()).append("\",\"path\":[");
+            for (int j = 0; j < patch.path.length; j++) {
+                if (j > 0) {
+                    sb.append(',');
+                }
+                sb.append(patch.path[j]);
+            }
+            sb.append(']');
+            switch (patch.op) {
+                case REPLACE:
+                case REPLACE_TEXT:
+                    sb.append(",\"html\":");
+                    json(sb, patch.html());
+                    break;
+                case SET_ATTRIBUTE:
+                    sb.append(",\"name\":");
+                    json(sb, patch.name);
+                    sb.append(",\"value\":");
+                    json(sb, patch.value);
+                    break;
+                case REMOVE_ATTRIBUTE:
+                    sb.append(",\"name\":");
+                    json(sb, patch.name);
+                    break;
+            }
+            sb.append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    // <template data-op="replace" data-path="0.2">...</template>, one per patch; a boolean
+    // attribute, set without a value, is marked data-boolean and has no content
+    public static String toHtml(List<Patch> patches) {
+        StringBuilder sb = new StringBuilder();
+        for (Patch patch : patches) {
+            sb.append("<template data-op=\"").append(patch.op.value()).append("\" data-path=\"");
+            for (int j = 0; j < patch.path.length; j++) {
+                if (j > 0) {
+                    sb.append('.');
+                }
+                sb.append(patch.path[j]);
+            }
+            sb.append('"');
+            if (null != patch.name) {
+                sb.append(" data-name=\"").append(DSL.escapeHTML(patch.name)).append('"');
+            }
+            if (Op.SET_ATTRIBUTE == patch.op && null == patch.value) {
+                sb.append(" data-boolean");
+            }
+            sb.append('>');
+            if (Op.SET_ATTRIBUTE == patch.op) {
+                if (null != patch.value) {
+                    sb.append(DSL.escapeHTML(patch.value));
+                }
+            } else if (Op.REMOVE_ATTRIBUTE != patch.op) {
+                sb.append(patch.html());
+            }
+            sb.append("</template>");
+        }
+        return sb.toString();
+    }
+
+    private static void json(StringBuilder sb, String s) {
+        if (null == s) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (c < 0x20 || c == '<' || c == '\u2028' || c == '\u2029') {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+}
@@ -0,0 +1,346 @@
+package io.h5z.stencil;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import io.h5z.stencil.DSL.DocType;
+import io.h5z.stencil.DSL.DocTypeValue;
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.ElementVisitor;
+import io.h5z.stencil.DSL.Frozen;
+import io.h5z.stencil.DSL.HTMLElement;
+import io.h5z.stencil.DSL.Named;
+import io.h5z.stencil.DSL.Raw;
+import io.h5z.stencil.DSL.Text;
+
+/**
+ * Binary format for element trees.
+ *
+ * <pre>
+ * document := "STNC" version:u8 node* END
+ * node     := ELEMENT name:str attrs children | VOID_ELEMENT name:str attrs
+ *           | TEXT str | RAW str | FROZEN str | DOCTYPE ordinal:varint | NAMED name:str node
+ * attrs    := count:varint (name:str value:str)*
+ * children := node* END
+ * str      := varint(id &lt;&lt; 1)                      a string seen before, id 0 is null
+ *           | varint(length &lt;&lt; 1 | 1) utf8-bytes   a new string, takes the next id
+ * </pre>
+ *
+ * The string table starts with the tag and attribute names of {@link #DICTIONARY}, so
+ * common names cost a single byte and repeated text or attribute values are written once.
+ */
+public final class ElementCodec {
+
+    // version 2 added RAW, version 1 documents are still read
+    public static final int VERSION = 2;
+
+    private static final byte[] MAGIC = { 'S', 'T', 'N', 'C' };
+
+    private static final int END = 0;
+    private static final int ELEMENT = 1;
+    private static final int VOID_ELEMENT = 2;
+    private static final int TEXT = 3;
+    private static final int FROZEN = 4;
+    private static final int DOCTYPE = 5;
+    private static final int NAMED = 6;
+    private static final int RAW = 7;
+
+    // the decoder recurses, so documents nesting nodes (text included) deeper than this are rejected
+    static final int MAX_DEPTH = 1024;
+
+    // append only: changing the order of these entries requires a new VERSION
+    static final List<String> DICTIONARY = Collections.unmodifiableList(Arrays.asList(
+        "html", "head", "body", "meta", "title", "link", "script", "style",
+        "section", "aside", "footer", "header", "main", "nav", "article",
+        "h1", "h2", "h3", "h4", "h5", "h6", "div", "p", "ul", "ol", "li", "dl", "dt", "dd",
+        "form", "input", "label", "button", "select", "option", "textarea",
+        "table", "thead", "tbody", "tfoot", "tr", "th", "td", "span", "a", "i", "b", "br", "img",
+        "id", "class", "type", "name", "value", "href", "src", "rel", "content", "charset",
+        "for", "action", "method", "placeholder", "required", "selected", "checked",
+        "alt", "role", "lang", "width", "height", "rows", "cols", "rowspan", "colspan", "async"));
+
+    private ElementCodec() {
+        throw new IllegalAccessError();
+    }
+
+    public static ByteBuffer encode(List<? extends Element> elements) {
+        int capacity = 4 * 1024;
+        while (true) {
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            try {
+                encode(elements, buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                capacity *= 4;
+            }
+        }
+    }
+
+    public static ByteBuffer encode(Element... elements) {
+        return encode(Arrays.asList(elements));
+    }
+
+    public static void encode(List<? extends Element> elements, ByteBuffer out) {
+        Encoder encoder = new Encoder(out);
+        out.put(MAGIC).put((byte) VERSION);
+        for (Element e : elements) {
+            e.accept(encoder);
+        }
+        out.put((byte) END);
+    }
+
+    /**
+     * Reads the elements of one encoded document, leaving {@code in} after its end.
+     *
+     * @throws IllegalArgumentException if the input is not an encoded document of a
+     *         supported version, or is truncated or malformed, or nests nodes deeper than
+     *         {@value #MAX_DEPTH} levels
+     */
+    public static List<Element> decode(ByteBuffer in) {
+        try {
+            for (byte b : MAGIC) {
+                if (in.get() != b) {
+                    throw new IllegalArgumentException("not an encoded element tree");
+                }
+            }
+            int version = in.get() & 0xff;
+            if (version < 1 || version > VERSION) {
+                throw new IllegalArgumentException("unsupported version " + version);
+            }
+            return new Decoder(in).nodes();
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("truncated element tree", e);
+        }
+    }
+
+    private static final class Encoder implements ElementVisitor<Void> {
+
+        private final ByteBuffer out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        Encoder(ByteBuffer out) {
+            this.out = out;
+            for (String s : DICTIONARY) {
+                this.strings.put(s, this.strings.size() + 1);
+            }
+        }
+
+        @Override
+        public Void visit(HTMLElement element) {
+            this.out.put((byte) (element.isVoidElement() ? VOID_ELEMENT : ELEMENT));
+            string(element.name());
+            Map<String, String> attrs = element.attributes();
+            varint(attrs.size());
+            for (Entry<String, String> kv : attrs.entrySet()) {
+                string(kv.getKey());
+                string(kv.getValue());
+            }
+            if (!element.isVoidElement()) {
+                for (Element e : element.nodes()) {
+                    e.accept(this);
+                }
+                this.out.put((byte) END);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(DocType page) {
+            this.out.put((byte) DOCTYPE);
+            varint(page.docType().ordinal());
+            return null;
+        }
+
+        @Override
+        public Void visit(Text text) {
+            this.out.put((byte) (text instanceof Raw || text instanceof Values.RawValue ? RAW : TEXT));
+            string(text.content());
+            return null;
+        }
+
+        @Override
+        public Void visit(Frozen frozen) {
+            this.out.put((byte) FROZEN);
+            string(frozen.content());
+            return null;
+        }
+
+        @Override
+        public Void visit(Named named) {
+            this.out.put((byte) NAMED);
+            string(named.name());
+            named.element().accept(this);
+            return null;
+        }
+
+        private void string(String s) {
+            if (null == s) {
+                varint(0);
+                return;
+            }
+            Integer id = this.strings.get(s);
+            if (null != id) {
+                varint(id << 1);
+                return;
+            }
+            this.strings.put(s, this.strings.size() + 1);
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            varint(bytes.length << 1 | 1);
+            this.out.put(bytes);
+        }
+
+        private void varint(int value) {
+            while ((value & ~0x7f) != 0) {
+                this.out.put((byte) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            this.out.put((byte) value);
+        }
+    }
+
+    private static final class Decoder {
+
+        private final ByteBuffer in;
+        private final List<String> strings = new ArrayList<>(DICTIONARY.size() + 64);
+        private byte[] scratch = new byte[256];
+        private int depth;
+
+        Decoder(ByteBuffer in) {
+            this.in = in;
+            this.strings.add(null);
+            this.strings.addAll(DICTIONARY);
+        }
+
+        List<Element> nodes() {
+            List<Element> nodes = new ArrayList<>();
+            int kind;
+            while ((kind = this.in.get()) != END) {
+                nodes.add(node(kind));
+            }
+            return nodes;
+        }
+
+        private Element node(int kind) {
+            if (++this.depth > MAX_DEPTH) {
+                throw malformed("nesting too deep");
+            }
+            try {
+                return read(kind);
+            } finally {
+                this.depth--;
+            }
+        }
+
+        private Element read(int kind) {
+            switch (kind) {
+                case ELEMENT:
+                case VOID_ELEMENT: {
+                    String name = required(string(), "element name");
+                    int count = varint();
+                    // every attribute takes at least two bytes
+                    if (count > this.in.remaining() / 2) {
+                        throw malformed(count + " attributes");
+                    }
+                    Map<String, String> attrs = count == 0
+                        ? Collections.emptyMap()
+                        : new LinkedHashMap<>(count * 2);
+                    for (int i = 0; i < count; i++) {
+                        attrs.put(required(string(), "attribute name"), string());
+                    }
+                    if (kind == VOID_ELEMENT) {
+                        return new HTMLElement(name, attrs, Collections.emptyList(), true);
+                    }
+                    return new HTMLElement(name, attrs, nodes());
+                }
+                case TEXT:
+                    return new Text(string());
+                case RAW:
+                    return new Raw(string());
+                case FROZEN:
+                    return new Frozen(string());
+                case DOCTYPE: {
+                    int ordinal = varint();
+                    if (ordinal >= DocTypeValue.values().length) {
+                        throw malformed("doctype " + ordinal);
+                    }
+                    return new DocType(DocTypeValue.values()[ordinal]);
+                }
+                case NAMED: {
+                    String name = required(string(), "fragment name");
+                    return new Named(name, node(this.in.get()));
+                }
+                default:
+                    throw malformed("unknown node kind " + kind);
+            }
+        }
+
+        private String required(String s, String what) {
+            if (null == s) {
+                throw malformed("null " + what);
+            }
+            return s;
+        }
+
+        private IllegalArgumentException malformed(String problem) {
+            return new IllegalArgumentException("malformed element tree at byte " + this.in.position() + ": " + problem);
+        }
+
+        private String string() {
+            int header = varint();
+            if ((header & 1) == 0) {
+                int id = header >>> 1;
+                if (id >= this.strings.size()) {
+                    throw malformed("unknown string " + id);
+                }
+                return this.strings.get(id);
+            }
+            int length = header >>> 1;
+            if (length > this.in.remaining()) {
+                throw malformed("string of " + length + " bytes");
+            }
+            String s;
+            if (this.in.hasArray()) {
+                s = new String(this.in.array(), this.in.arrayOffset() + this.in.position(), length, StandardCharsets.UTF_8);
+                this.in.position(this.in.position() + length);
+            } else {
+                if (this.scratch.length < length) {
+                    this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+                }
+                this.in.get(this.scratch, 0, length);
+                s = new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+            }
+            this.strings.add(s);
+            return s;
+        }
+
+        private int varint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                if (shift > 28) {
+                    throw malformed("varint longer than 5 bytes");
+                }
+                b = this.in.get();
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (value < 0) {
+                throw malformed("negative varint");
+            }
+            return value;
+        }
+    }
+
+}
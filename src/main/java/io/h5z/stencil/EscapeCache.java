@@ -0,0 +1,123 @@
+package io.h5z.stencil;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escaped forms of frequently repeated strings, used by {@link DSL#escapeHTML(String)}
+ * once installed with {@link DSL#setEscapeCache}. Strings longer than {@code maxLength}
+ * are escaped every time.
+ *
+ * <p>Each thread first looks in its own small direct-mapped table, so hot values are found
+ * without touching shared state. Misses go to a concurrent map bounded by
+ * {@code maxEntries} (loosely, under concurrent misses); when it is full, an arbitrary
+ * eighth of it is dropped. Escaping is a pure function of the string, so entries never
+ * need invalidating.
+ */
+public final class EscapeCache {
+
+    private static final int FRONT_SIZE = 256;
+
+    private final int maxEntries;
+    private final int maxLength;
+    private final ConcurrentHashMap<String, String> shared;
+    private final ThreadLocal<String[]> front = ThreadLocal.withInitial(() -> new String[2 * FRONT_SIZE]);
+    private final LongAdder frontHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public EscapeCache(int maxEntries, int maxLength) {
+        if (maxEntries < 1 || maxLength < 0) {
+            throw new IllegalArgumentException("invalid limits: " + maxEntries + " entries of " + maxLength + " chars");
+        }
+        this.maxEntries = maxEntries;
+        this.maxLength = maxLength;
+        this.shared = new ConcurrentHashMap<>(Math.min(maxEntries, 1024));
+    }
+
+    /**
+     * The escaped form of {@code s}, or null if it is longer than the cached strings.
+     */
+    public String get(String s) {
+        if (s.length() > this.maxLength) {
+            return null;
+        }
+        // slot i holds a raw string at 2i and its escaped form at 2i + 1
+        String[] front = this.front.get();
+        int slot = 2 * (spread(s.hashCode()) & (FRONT_SIZE - 1));
+        String raw = front[slot];
+        if (null != raw && (raw == s || raw.equals(s))) {
+            this.frontHits.increment();
+            return front[slot + 1];
+        }
+        String escaped = this.shared.get(s);
+        if (null != escaped) {
+            this.sharedHits.increment();
+        } else {
+            this.misses.increment();
+            StringBuilder sb = new StringBuilder(s.length() + 16);
+            Escaper.escape(s, Sink.of(sb));
+            escaped = sb.toString();
+            if (this.shared.size() >= this.maxEntries) {
+                evict();
+            }
+            this.shared.put(s, escaped);
+        }
+        front[slot] = s;
+        front[slot + 1] = escaped;
+        return escaped;
+    }
+
+    public int size() {
+        return this.shared.size();
+    }
+
+    public long hits() {
+        return this.frontHits.sum() + this.sharedHits.sum();
+    }
+
+    public long frontHits() {
+        return this.frontHits.sum();
+    }
+
+    public long misses() {
+        return this.misses.sum();
+    }
+
+    public double hitRate() {
+        long hits = hits();
+        long total = hits + misses();
+        return 0 == total ? 0 : (double) hits / total;
+    }
+
+    // per-thread tables are left alone, their entries are still correct
+    public void clear() {
+        this.shared.clear();
+    }
+
+    public void resetStats() {
+        this.frontHits.reset();
+        this.sharedHits.reset();
+        this.misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EscapeCache[%d/%d entries, hit rate %.3f]", size(), this.maxEntries, hitRate());
+    }
+
+    private void evict() {
+        int drop = Math.max(1, this.maxEntries / 8);
+        Iterator<String> keys = this.shared.keySet().iterator();
+        while (drop-- > 0 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+}
@@ -0,0 +1,241 @@
+package io.h5z.stencil;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The {@link DSL#escapeHTML} rules (non-ASCII code points and {@code "'<>&} become numeric
+ * character references) applied a block at a time.
+ *
+ * <p>Text is copied in chunks into a per-thread buffer and clean runs are appended to the
+ * sink with a single call. UTF-8 input is scanned eight bytes per step: a 64-bit word is
+ * tested for bytes at or above 0x80 and for each special byte with the usual
+ * {@code (x - 0x01..) & ~x & 0x80..} zero-byte trick, and only the first flagged byte is
+ * looked at. Word loads go through {@link Words}, which the multi-release JAR replaces
+ * with a VarHandle version on Java 9 and later.
+ */
+public final class Escaper {
+
+    private static final int CHUNK = 2 * 1024;
+
+    private static final boolean[] SPECIAL = new boolean[128];
+
+    static {
+        for (char c : "\"'<>&".toCharArray()) {
+            SPECIAL[c] = true;
+        }
+    }
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[CHUNK]);
+
+    private Escaper() {
+        throw new IllegalAccessError();
+    }
+
+    public static Sink escape(CharSequence s, Sink out) {
+        int length = s.length();
+        if (length <= 16) {
+            return escapeShort(s, out);
+        }
+        char[] chunk = BUFFER.get();
+        int offset = 0;
+        while (offset < length) {
+            int end = Math.min(length, offset + CHUNK);
+            // keep a surrogate pair in one chunk
+            if (end < length && Character.isHighSurrogate(s.charAt(end - 1))) {
+                end--;
+            }
+            copy(s, offset, end, chunk);
+            escape(chunk, 0, end - offset, out);
+            offset = end;
+        }
+        return out;
+    }
+
+    public static Sink escape(char[] chars, int offset, int length, Sink out) {
+        int end = offset + length;
+        int start = offset;
+        int i = scan(chars, offset, end);
+        while (i < end) {
+            out.append(chars, start, i - start);
+            int cp = chars[i];
+            if (Character.isHighSurrogate(chars[i]) && i + 1 < end && Character.isLowSurrogate(chars[i + 1])) {
+                cp = Character.toCodePoint(chars[i], chars[++i]);
+            }
+            reference(cp, out);
+            start = i + 1;
+            i = scan(chars, start, end);
+        }
+        return out.append(chars, start, end - start);
+    }
+
+    /**
+     * Escapes UTF-8 bytes. A sequence that is malformed or cut off by the end of the range
+     * becomes one U+FFFD reference per maximal invalid prefix, so a stream must be split on
+     * code point boundaries.
+     */
+    public static void escape(byte[] utf8, int offset, int length, OutputStream out) {
+        try {
+            int end = offset + length;
+            int start = offset;
+            int i = scan(utf8, offset, end);
+            while (i < end) {
+                out.write(utf8, start, i - start);
+                int b = utf8[i] & 0xff;
+                int size = sequence(utf8, i, end);
+                int cp;
+                if (size < 0) {
+                    cp = 0xfffd;
+                    size = -size;
+                } else if (1 == size) {
+                    cp = b;
+                } else if (2 == size) {
+                    cp = (b & 0x1f) << 6 | (utf8[i + 1] & 0x3f);
+                } else if (3 == size) {
+                    cp = (b & 0x0f) << 12 | (utf8[i + 1] & 0x3f) << 6 | (utf8[i + 2] & 0x3f);
+                } else {
+                    cp = (b & 0x07) << 18 | (utf8[i + 1] & 0x3f) << 12 | (utf8[i + 2] & 0x3f) << 6 | (utf8[i + 3] & 0x3f);
+                }
+                out.write('&');
+                out.write('#');
+                String digits = Integer.toString(cp);
+                for (int d = 0; d < digits.length(); d++) {
+                    out.write(digits.charAt(d));
+                }
+                out.write(';');
+                start = i + size;
+                i = scan(utf8, start, end);
+            }
+            out.write(utf8, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // length of the well-formed sequence at i, or minus the length of its longest valid
+    // prefix when it is malformed or cut off at end (Unicode table 3-7)
+    private static int sequence(byte[] utf8, int i, int end) {
+        int b = utf8[i] & 0xff;
+        int size;
+        int min = 0x80;
+        int max = 0xbf;
+        if (b < 0x80) {
+            return 1;
+        } else if (b >= 0xc2 && b <= 0xdf) {
+            size = 2;
+        } else if (b >= 0xe0 && b <= 0xef) {
+            size = 3;
+            min = 0xe0 == b ? 0xa0 : min;
+            max = 0xed == b ? 0x9f : max;
+        } else if (b >= 0xf0 && b <= 0xf4) {
+            size = 4;
+            min = 0xf0 == b ? 0x90 : min;
+            max = 0xf4 == b ? 0x8f : max;
+        } else {
+            return -1;
+        }
+        for (int k = 1; k < size; k++) {
+            if (i + k >= end) {
+                return -k;
+            }
+            int c = utf8[i + k] & 0xff;
+            if (c < min || c > max) {
+                return -k;
+            }
+            min = 0x80;
+            max = 0xbf;
+        }
+        return size;
+    }
+
+    // index of the first char to escape in [from, to), or to; four chars are tested per step
+    static int scan(char[] chars, int from, int to) {
+        boolean[] special = SPECIAL;
+        int i = from;
+        for (; i + 4 <= to; i += 4) {
+            char a = chars[i];
+            char b = chars[i + 1];
+            char c = chars[i + 2];
+            char d = chars[i + 3];
+            if ((a | b | c | d) >= 128 || (special[a] | special[b] | special[c] | special[d])) {
+                break;
+            }
+        }
+        for (; i < to; i++) {
+            char c = chars[i];
+            if (c >= 128 || special[c]) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    // index of the first byte to escape in [from, to), or to; eight bytes are tested per step
+    static int scan(byte[] bytes, int from, int to) {
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = Words.getLong(bytes, i);
+            long hits = (word & HIGHS)
+                | zero(word ^ (ONES * '"'))
+                | zero(word ^ (ONES * '\''))
+                | zero(word ^ (ONES * '<'))
+                | zero(word ^ (ONES * '>'))
+                | zero(word ^ (ONES * '&'));
+            if (0 != hits) {
+                // words are little endian: the lowest flagged byte is the first one
+                return i + (Long.numberOfTrailingZeros(hits) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            int b = bytes[i];
+            if (b < 0 || SPECIAL[b]) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    // high bit set in each zero byte; a borrow can only flag bytes above a zero byte
+    private static long zero(long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+
+    private static Sink escapeShort(CharSequence s, Sink out) {
+        int start = 0;
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 128 && !SPECIAL[c]) {
+                continue;
+            }
+            out.append(s, start, i);
+            int cp = c;
+            if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                cp = Character.toCodePoint(c, s.charAt(++i));
+            }
+            reference(cp, out);
+            start = i + 1;
+        }
+        return out.append(s, start, s.length());
+    }
+
+    private static void reference(int cp, Sink out) {
+        out.append("&#").append(Integer.toString(cp)).append(';');
+    }
+
+    private static void copy(CharSequence s, int start, int end, char[] chunk) {
+        if (s instanceof String) {
+            ((String) s).getChars(start, end, chunk, 0);
+        } else if (s instanceof StringBuilder) {
+            ((StringBuilder) s).getChars(start, end, chunk, 0);
+        } else {
+            for (int i = start; i < end; i++) {
+                chunk[i - start] = s.charAt(i);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,422 @@
+package io.h5z.stencil;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.Frozen;
+
+/**
+ * Rendered fragments kept in an append-only file so that they survive restarts.
+ *
+ * <p>Each record is {@code keyLength:i32 valueLength:i32 crc32:i32 key value}, a value
+ * length of -1 marks a removal. The in-memory index is rebuilt on open by scanning the
+ * memory-mapped log; a torn record at the end (crash during a write) fails its checksum and
+ * is truncated. Reads are slices of the mapping, {@link #transferTo} hands the region to
+ * the kernel without copying it through the heap, and {@link #compact()} copies the live
+ * records into a new log the same way; if it fails, the store keeps using the old log.
+ * Writes and compaction exclude readers, reads run concurrently.
+ *
+ * <p>The log is remapped only once it has grown to twice the mapped size, so appends cost
+ * a logarithmic number of mappings; records written since are read from the channel.
+ */
+public final class FragmentStore implements Closeable {
+
+    private static final int HEADER = 12;
+    private static final int TOMBSTONE = -1;
+
+    private final Path path;
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private volatile MappedByteBuffer mapped;
+    private long end;
+    private long dead;
+
+    private FragmentStore(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path,
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+    }
+
+    public static FragmentStore open(Path path) {
+        try {
+            return new FragmentStore(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void put(String key, byte[] value) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        append(k, value, value.length);
+    }
+
+    public void put(String key, Element element) {
+        put(key, DSL.render(element).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void put(String key, Frozen frozen) {
+        put(key, frozen.utf8());
+    }
+
+    public void remove(String key) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.index.containsKey(key)) {
+                append(key.getBytes(StandardCharsets.UTF_8), new byte[0], TOMBSTONE);
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // under the lock, compaction rebuilds the index
+    public boolean contains(String key) {
+        this.lock.readLock().lock();
+        try {
+            return this.index.containsKey(key);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.index.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    // read-only view of the mapped bytes, valid until the next compaction
+    public ByteBuffer get(String key) {
+        this.lock.readLock().lock();
+        try {
+            Location location = this.index.get(key);
+            if (null == location) {
+                return null;
+            }
+            MappedByteBuffer mapping = mapping(location.offset + location.length);
+            if (null == mapping) {
+                return read(location);
+            }
+            ByteBuffer view = mapping.duplicate();
+            view.position((int) location.offset).limit((int) (location.offset + location.length));
+            return view.slice().asReadOnlyBuffer();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public Frozen frozen(String key) {
+        ByteBuffer bytes = get(key);
+        return null == bytes ? null : new Frozen(StandardCharsets.UTF_8.decode(bytes).toString());
+    }
+
+    public Frozen computeIfAbsent(String key, Supplier<? extends Element> fragment) {
+        Frozen frozen = frozen(key);
+        if (null == frozen) {
+            frozen = DSL.freeze(fragment.get());
+            put(key, frozen);
+        }
+        return frozen;
+    }
+
+    public long transferTo(String key, WritableByteChannel target) {
+        this.lock.readLock().lock();
+        try {
+            Location location = this.index.get(key);
+            if (null == location) {
+                return -1;
+            }
+            long position = location.offset;
+            long remaining = location.length;
+            while (remaining > 0) {
+                long n = this.channel.transferTo(position, remaining, target);
+                // a truncated log or a target that takes nothing would spin under the lock
+                if (n <= 0) {
+                    throw new IOException("transfer stopped at " + position + " of the log");
+                }
+                position += n;
+                remaining -= n;
+            }
+            return location.length;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public long deadBytes() {
+        this.lock.readLock().lock();
+        try {
+            return this.dead;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public long fileSize() {
+        this.lock.readLock().lock();
+        try {
+            return this.end;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public void flush() {
+        this.lock.writeLock().lock();
+        try {
+            this.channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    public void compact() {
+        this.lock.writeLock().lock();
+        try {
+            Path compacted = this.path.resolveSibling(this.path.getFileName() + ".compact");
+            Map<String, Location> live = new ConcurrentHashMap<>();
+            long position = 0;
+            try (FileChannel out = FileChannel.open(compacted,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                // live records are copied whole, checksum included, from channel to channel
+                for (Map.Entry<String, Location> entry : this.index.entrySet()) {
+                    int keyLength = entry.getKey().getBytes(StandardCharsets.UTF_8).length;
+                    Location location = entry.getValue();
+                    long start = location.offset - HEADER - keyLength;
+                    long length = HEADER + keyLength + location.length;
+                    for (long copied = 0; copied < length; ) {
+                        long n = this.channel.transferTo(start + copied, length - copied, out);
+                        if (n <= 0) {
+                            throw new IOException("log ended at " + (start + copied) + " while compacting");
+                        }
+                        copied += n;
+                    }
+                    live.put(entry.getKey(), new Location(position + HEADER + keyLength, location.length));
+                    position += length;
+                }
+                out.force(true);
+            } catch (IOException e) {
+                deleteAfter(e, compacted);
+                throw e;
+            }
+            // the new log is opened before it replaces the old one, which stays in use if the move fails
+            FileChannel replacement = FileChannel.open(compacted, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                Files.move(compacted, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                replacement.close();
+                deleteAfter(e, compacted);
+                throw e;
+            }
+            FileChannel previous = this.channel;
+            this.channel = replacement;
+            this.end = position;
+            this.dead = 0;
+            this.mapped = null;
+            this.index.clear();
+            this.index.putAll(live);
+            previous.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    // a leftover that cannot be deleted is reported with the failure, not instead of it
+    private static void deleteAfter(IOException failure, Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.lock.writeLock().lock();
+        try {
+            this.channel.force(false);
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private void append(byte[] key, byte[] value, int length) {
+        this.lock.writeLock().lock();
+        try {
+            ByteBuffer record = record(key, value, length);
+            int size = record.remaining();
+            try {
+                while (record.hasRemaining()) {
+                    this.channel.write(record, this.end + size - record.remaining());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            String k = new String(key, StandardCharsets.UTF_8);
+            Location previous = TOMBSTONE == length
+                ? this.index.remove(k)
+                : this.index.put(k, new Location(this.end + HEADER + key.length, length));
+            if (null != previous) {
+                this.dead += HEADER + key.length + previous.length;
+            }
+            if (TOMBSTONE == length) {
+                this.dead += size;
+            }
+            this.end += size;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    private static ByteBuffer record(byte[] key, byte[] value, int length) {
+        int size = Math.max(length, 0);
+        CRC32 crc = new CRC32();
+        crc.update(key, 0, key.length);
+        crc.update(value, 0, size);
+        ByteBuffer record = ByteBuffer.allocate(HEADER + key.length + size);
+        record.putInt(key.length).putInt(length).putInt((int) crc.getValue());
+        record.put(key).put(value, 0, size);
+        record.flip();
+        return record;
+    }
+
+    private void load() throws IOException {
+        long size = this.channel.size();
+        this.end = 0;
+        this.dead = 0;
+        if (size == 0) {
+            return;
+        }
+        MappedByteBuffer log = remap(size);
+        CRC32 crc = new CRC32();
+        long position = 0;
+        while (position + HEADER <= size) {
+            int p = (int) position;
+            int keyLength = log.getInt(p);
+            int length = log.getInt(p + 4);
+            int checksum = log.getInt(p + 8);
+            long recordEnd = position + HEADER + keyLength + Math.max(length, 0);
+            if (keyLength < 0 || length < TOMBSTONE || recordEnd > size) {
+                break;
+            }
+            byte[] key = new byte[keyLength];
+            ByteBuffer view = log.duplicate();
+            view.position(p + HEADER);
+            view.get(key);
+            crc.reset();
+            crc.update(key, 0, keyLength);
+            ByteBuffer value = log.duplicate();
+            value.position(p + HEADER + keyLength).limit((int) recordEnd);
+            crc.update(value);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            String k = new String(key, StandardCharsets.UTF_8);
+            Location previous = TOMBSTONE == length
+                ? this.index.remove(k)
+                : this.index.put(k, new Location(position + HEADER + keyLength, length));
+            if (null != previous) {
+                this.dead += HEADER + key.length + previous.length;
+            }
+            if (TOMBSTONE == length) {
+                this.dead += recordEnd - position;
+            }
+            position = recordEnd;
+        }
+        this.end = position;
+        if (position < size) {
+            this.channel.truncate(position);
+            this.mapped = null;
+        }
+    }
+
+    // the mapping covering the first size bytes, or null if they are read from the channel
+    private MappedByteBuffer mapping(long size) {
+        MappedByteBuffer current = this.mapped;
+        if (null != current && current.capacity() >= size) {
+            return current;
+        }
+        synchronized (this) {
+            current = this.mapped;
+            if (null != current && current.capacity() >= size) {
+                return current;
+            }
+            if (null != current && this.end < 2L * current.capacity()) {
+                return null;
+            }
+            return remap(size);
+        }
+    }
+
+    private synchronized MappedByteBuffer remap(long size) {
+        try {
+            long length = Math.max(Math.max(size, this.end), this.channel.size());
+            if (length > Integer.MAX_VALUE) {
+                throw new IllegalStateException("fragment log exceeds 2GB, compact it");
+            }
+            MappedByteBuffer current = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            this.mapped = current;
+            return current;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer read(Location location) {
+        ByteBuffer value = ByteBuffer.allocate(location.length);
+        try {
+            while (value.hasRemaining()) {
+                if (this.channel.read(value, location.offset + value.position()) < 0) {
+                    throw new IOException("log ended at " + (location.offset + value.position()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        value.flip();
+        return value.asReadOnlyBuffer();
+    }
+
+    private static final class Location {
+        private final long offset;
+        private final int length;
+
+        Location(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+}
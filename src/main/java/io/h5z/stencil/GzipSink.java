@@ -0,0 +1,213 @@
+package io.h5z.stencil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import io.h5z.stencil.DSL.Frozen;
+
+/**
+ * Encodes rendered characters to UTF-8 and deflates them into a gzip stream as they are
+ * produced, so a page is compressed in the same pass that renders it.
+ *
+ * <p>{@link Frozen} fragments are not recompressed: the stream is sync flushed, the
+ * fragment's pre-deflated blocks are copied as is, and the deflater restarts with the
+ * tail of the fragment as its dictionary so that back references stay valid. The blocks
+ * are compressed at the sink's level, and cached per level by the fragment.
+ */
+public final class GzipSink implements Sink, Closeable {
+
+    private static final int WINDOW = 32 * 1024;
+    private static final byte[] HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final OutputStream out;
+    private final Deflater deflater;
+    private final int level;
+    private final CRC32 crc = new CRC32();
+    private final byte[] input = new byte[8 * 1024];
+    private final byte[] output = new byte[8 * 1024];
+
+    private int position;
+    private long size;
+    private char highSurrogate;
+    private boolean finished;
+
+    public GzipSink(OutputStream out) {
+        this(out, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public GzipSink(OutputStream out, int level) {
+        this.out = out;
+        this.deflater = new Deflater(level, true);
+        this.level = level;
+        write(HEADER, 0, HEADER.length);
+    }
+
+    @Override
+    public Sink append(char c) {
+        if (this.position + 4 > this.input.length) {
+            drain(Deflater.NO_FLUSH);
+        }
+        encode(c);
+        return this;
+    }
+
+    @Override
+    public Sink append(CharSequence s) {
+        return append(s, 0, s.length());
+    }
+
+    @Override
+    public Sink append(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (this.position + 4 > this.input.length) {
+                drain(Deflater.NO_FLUSH);
+            }
+            encode(s.charAt(i));
+        }
+        return this;
+    }
+
+    @Override
+    public Sink append(char[] chars, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (this.position + 4 > this.input.length) {
+                drain(Deflater.NO_FLUSH);
+            }
+            encode(chars[i]);
+        }
+        return this;
+    }
+
+    @Override
+    public Sink appendFrozen(Frozen frozen) {
+        byte[] bytes = frozen.utf8();
+        if (0 != this.highSurrogate || bytes.length < 256) {
+            return append(frozen.content());
+        }
+
+        drain(Deflater.SYNC_FLUSH);
+        byte[] deflated = frozen.deflated(this.level);
+        write(deflated, 0, deflated.length);
+        this.crc.update(bytes, 0, bytes.length);
+        this.size += bytes.length;
+
+        int window = Math.min(WINDOW, bytes.length);
+        this.deflater.reset();
+        this.deflater.setDictionary(bytes, bytes.length - window, window);
+        return this;
+    }
+
+    public void finish() {
+        if (this.finished) {
+            return;
+        }
+        if (0 != this.highSurrogate) {
+            this.highSurrogate = 0;
+            this.input[this.position++] = '?';
+        }
+        this.crc.update(this.input, 0, this.position);
+        this.size += this.position;
+        this.deflater.setInput(this.input, 0, this.position);
+        this.position = 0;
+        this.deflater.finish();
+        while (!this.deflater.finished()) {
+            int n = this.deflater.deflate(this.output, 0, this.output.length);
+            write(this.output, 0, n);
+        }
+        byte[] trailer = new byte[8];
+        int crc = (int) this.crc.getValue();
+        int length = (int) this.size;
+        for (int i = 0; i < 4; i++) {
+            trailer[i] = (byte) (crc >>> (8 * i));
+            trailer[4 + i] = (byte) (length >>> (8 * i));
+        }
+        write(trailer, 0, trailer.length);
+        this.deflater.end();
+        this.finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        this.out.close();
+    }
+
+    static byte[] deflate(byte[] bytes, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            ByteArrayOutputStream result = new ByteArrayOutputStream(bytes.length / 4 + 16);
+            byte[] buffer = new byte[8 * 1024];
+            deflater.setInput(bytes);
+            int n;
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                result.write(buffer, 0, n);
+            } while (n == buffer.length || !deflater.needsInput());
+            return result.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void encode(char c) {
+        byte[] b = this.input;
+        if (0 != this.highSurrogate) {
+            char high = this.highSurrogate;
+            this.highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int cp = Character.toCodePoint(high, c);
+                b[this.position++] = (byte) (0xf0 | (cp >> 18));
+                b[this.position++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                b[this.position++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                b[this.position++] = (byte) (0x80 | (cp & 0x3f));
+                return;
+            }
+            b[this.position++] = '?';
+            if (this.position + 4 > b.length) {
+                drain(Deflater.NO_FLUSH);
+            }
+        }
+        if (c < 0x80) {
+            b[this.position++] = (byte) c;
+        } else if (c < 0x800) {
+            b[this.position++] = (byte) (0xc0 | (c >> 6));
+            b[this.position++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            this.highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            b[this.position++] = '?';
+        } else {
+            b[this.position++] = (byte) (0xe0 | (c >> 12));
+            b[this.position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            b[this.position++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void drain(int flush) {
+        this.crc.update(this.input, 0, this.position);
+        this.size += this.position;
+        this.deflater.setInput(this.input, 0, this.position);
+        this.position = 0;
+        int n;
+        do {
+            n = this.deflater.deflate(this.output, 0, this.output.length, flush);
+            write(this.output, 0, n);
+        } while (n == this.output.length || !this.deflater.needsInput());
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        try {
+            this.out.write(bytes, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,729 @@
+package io.h5z.stencil;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.h5z.stencil.DSL.DocType;
+import io.h5z.stencil.DSL.DocTypeValue;
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.Frozen;
+import io.h5z.stencil.DSL.HTMLElement;
+import io.h5z.stencil.DSL.Text;
+
+/**
+ * Reads existing markup into element trees, or straight into {@link Frozen} fragments
+ * rendered the way {@link Renderer} would render the tree, without building it.
+ *
+ * <p>The tokenizer works on a fixed window refilled from the input, so documents are never
+ * held as a whole in memory. Text and attribute values are kept as written: they are
+ * already escaped markup, and entities are not decoded. Tag and attribute names are
+ * lowercased and interned. Void elements never take children. The contents of
+ * {@code script}, {@code style}, {@code textarea} and {@code title} are read as raw text.
+ * Common implied end tags ({@code li}, {@code p}, table rows and cells, {@code option},
+ * {@code dt}/{@code dd}) are inserted, unmatched end tags are dropped, and elements still
+ * open at the end of the input are closed there. Comments are kept as text.
+ */
+public final class HtmlParser {
+
+    static final Set<String> VOID_ELEMENTS = new HashSet<>(Arrays.asList(
+        "area", "base", "br", "col", "embed", "hr", "img", "input",
+        "link", "meta", "param", "source", "track", "wbr"));
+
+    private static final Set<String> RAW_TEXT = new HashSet<>(Arrays.asList(
+        "script", "style", "textarea", "title"));
+
+    private static final Set<String> CLOSES_P = new HashSet<>(Arrays.asList(
+        "address", "article", "aside", "blockquote", "div", "dl", "fieldset", "footer", "form",
+        "h1", "h2", "h3", "h4", "h5", "h6", "header", "hr", "main", "nav", "ol", "p", "pre",
+        "section", "table", "ul"));
+
+    private final Reader in;
+    private final Handler handler;
+    private final char[] buffer = new char[8 * 1024];
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder scratch = new StringBuilder();
+    private final Names names = new Names();
+    private int position;
+    private int limit;
+
+    private String[] open = new String[32];
+    private int depth;
+
+    private String[] attributeNames = new String[8];
+    private String[] attributeValues = new String[8];
+    private int attributeCount;
+
+    private HtmlParser(Reader in, Handler handler) {
+        this.in = in;
+        this.handler = handler;
+    }
+
+    public static List<Element> parse(CharSequence html) {
+        return parse(new StringReader(html.toString()));
+    }
+
+    public static List<Element> parse(Reader html) {
+        TreeBuilder tree = new TreeBuilder();
+        new HtmlParser(html, tree).run();
+        return tree.roots();
+    }
+
+    public static List<Element> parse(ByteBuffer utf8) {
+        return parse(new Utf8Reader(utf8));
+    }
+
+    public static List<Element> parse(Path file) {
+        return parse(map(file));
+    }
+
+    public static Frozen freeze(CharSequence html) {
+        return freeze(new StringReader(html.toString()));
+    }
+
+    public static Frozen freeze(Reader html) {
+        FragmentWriter writer = new FragmentWriter();
+        new HtmlParser(html, writer).run();
+        return new Frozen(writer.out.toString());
+    }
+
+    public static Frozen freeze(ByteBuffer utf8) {
+        return freeze(new Utf8Reader(utf8));
+    }
+
+    public static Frozen freeze(Path file) {
+        return freeze(map(file));
+    }
+
+    private static ByteBuffer map(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            if (!scanText()) {
+                break;
+            }
+            int c = peek();
+            if ('/' == c) {
+                this.position++;
+                endTag();
+            } else if ('!' == c) {
+                this.position++;
+                declaration();
+            } else if (isLetter(c)) {
+                startTag();
+            } else {
+                this.text.append('<');
+            }
+        }
+        flushText();
+        while (this.depth > 0) {
+            this.handler.end(this.open[--this.depth]);
+        }
+    }
+
+    // appends text up to the next '<' and consumes it, false at the end of the input
+    private boolean scanText() {
+        while (true) {
+            int i = this.position;
+            char[] b = this.buffer;
+            while (i < this.limit && '<' != b[i]) {
+                i++;
+            }
+            this.text.append(b, this.position, i - this.position);
+            this.position = i;
+            if (i < this.limit) {
+                this.position++;
+                return true;
+            }
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    private void startTag() {
+        String name = name();
+        this.attributeCount = 0;
+        boolean selfClosing = false;
+        while (true) {
+            skipWhitespace();
+            int c = read();
+            if (c < 0 || '>' == c) {
+                break;
+            }
+            if ('/' == c) {
+                if ('>' == peek()) {
+                    this.position++;
+                    selfClosing = true;
+                    break;
+                }
+                continue;
+            }
+            this.position--;
+            attribute();
+        }
+
+        flushText();
+        impliedEnd(name);
+        boolean isVoid = VOID_ELEMENTS.contains(name);
+        this.handler.start(name, this.attributeNames, this.attributeValues, this.attributeCount, isVoid);
+        if (isVoid) {
+            return;
+        }
+        if (selfClosing) {
+            this.handler.end(name);
+            return;
+        }
+        push(name);
+        if (RAW_TEXT.contains(name)) {
+            rawText(name);
+        }
+    }
+
+    private void attribute() {
+        String name = name();
+        if (name.isEmpty()) {
+            // a stray '='
+            this.position++;
+            return;
+        }
+        String value = null;
+        skipWhitespace();
+        if ('=' == peek()) {
+            this.position++;
+            skipWhitespace();
+            value = value();
+        }
+        for (int i = 0; i < this.attributeCount; i++) {
+            if (this.attributeNames[i].equals(name)) {
+                return;
+            }
+        }
+        if (this.attributeCount == this.attributeNames.length) {
+            this.attributeNames = Arrays.copyOf(this.attributeNames, this.attributeCount * 2);
+            this.attributeValues = Arrays.copyOf(this.attributeValues, this.attributeCount * 2);
+        }
+        this.attributeNames[this.attributeCount] = name;
+        this.attributeValues[this.attributeCount] = value;
+        this.attributeCount++;
+    }
+
+    private String value() {
+        int quote = peek();
+        if ('"' == quote || '\'' == quote) {
+            this.position++;
+        } else {
+            quote = -1;
+        }
+        int end = this.position;
+        char[] b = this.buffer;
+        if (quote < 0) {
+            while (end < this.limit && '>' != b[end] && '"' != b[end] && !isWhitespace(b[end])) {
+                end++;
+            }
+        } else {
+            while (end < this.limit && quote != b[end] && '"' != b[end]) {
+                end++;
+            }
+        }
+        // the value ends inside the window and has no '"' to escape
+        if (end < this.limit && ('"' != b[end] || '"' == quote)) {
+            String value = new String(b, this.position, end - this.position);
+            this.position = quote < 0 ? end : end + 1;
+            return value;
+        }
+        this.scratch.setLength(0);
+        int c;
+        while ((c = peek()) >= 0) {
+            if (quote < 0 ? isWhitespace(c) || '>' == c : quote == c) {
+                break;
+            }
+            if ('"' == c) {
+                this.scratch.append("&quot;");
+            } else {
+                this.scratch.append((char) c);
+            }
+            this.position++;
+        }
+        if (quote >= 0 && quote == c) {
+            this.position++;
+        }
+        return this.scratch.toString();
+    }
+
+    private void endTag() {
+        if (!isLetter(peek())) {
+            // "</>" or "</ ...": not a tag
+            skipTo('>');
+            return;
+        }
+        String name = name();
+        skipTo('>');
+        int i = this.depth - 1;
+        while (i >= 0 && !this.open[i].equals(name)) {
+            i--;
+        }
+        if (i < 0) {
+            return;
+        }
+        flushText();
+        while (this.depth > i) {
+            this.handler.end(this.open[--this.depth]);
+        }
+    }
+
+    private void declaration() {
+        if ('-' == peek() && startsWith("--")) {
+            this.text.append("<!--");
+            // a comment ends at the first "-->"
+            int dashes = 0;
+            int c;
+            while ((c = read()) >= 0) {
+                this.text.append((char) c);
+                if ('>' == c && dashes >= 2) {
+                    return;
+                }
+                dashes = '-' == c ? dashes + 1 : 0;
+            }
+            return;
+        }
+        this.scratch.setLength(0);
+        int c;
+        while ((c = read()) >= 0 && '>' != c) {
+            this.scratch.append((char) c);
+        }
+        String declaration = this.scratch.toString();
+        if (declaration.trim().equalsIgnoreCase("doctype html")) {
+            flushText();
+            this.handler.docType(DocTypeValue.HTML5);
+        } else {
+            this.text.append("<!").append(declaration).append('>');
+        }
+    }
+
+    private void rawText(String name) {
+        while (true) {
+            if (!scanText()) {
+                return;
+            }
+            if ('/' == peek() && endsRawText(name)) {
+                return;
+            }
+            this.text.append('<');
+        }
+    }
+
+    // after "<" in raw text: consumes "/name>" when it closes the element
+    private boolean endsRawText(String name) {
+        this.position++;
+        this.scratch.setLength(0);
+        int c;
+        while ((c = peek()) >= 0 && isLetter(c) && this.scratch.length() <= name.length()) {
+            this.scratch.append(Character.toLowerCase((char) c));
+            this.position++;
+        }
+        if (this.scratch.length() == name.length() && name.contentEquals(this.scratch)
+                && (c < 0 || '>' == c || '/' == c || isWhitespace(c))) {
+            skipTo('>');
+            flushText();
+            this.handler.end(name);
+            this.depth--;
+            return true;
+        }
+        this.text.append('/').append(this.scratch);
+        return false;
+    }
+
+    private void impliedEnd(String name) {
+        while (this.depth > 0) {
+            String current = this.open[this.depth - 1];
+            boolean closes;
+            switch (name) {
+                case "li":
+                    closes = "li".equals(current);
+                    break;
+                case "dt":
+                case "dd":
+                    closes = "dt".equals(current) || "dd".equals(current);
+                    break;
+                case "tr":
+                    closes = "tr".equals(current) || "td".equals(current) || "th".equals(current);
+                    break;
+                case "td":
+                case "th":
+                    closes = "td".equals(current) || "th".equals(current);
+                    break;
+                case "option":
+                    closes = "option".equals(current);
+                    break;
+                default:
+                    closes = "p".equals(current) && CLOSES_P.contains(name);
+            }
+            if (!closes) {
+                return;
+            }
+            this.handler.end(current);
+            this.depth--;
+        }
+    }
+
+    private void push(String name) {
+        if (this.depth == this.open.length) {
+            this.open = Arrays.copyOf(this.open, this.depth * 2);
+        }
+        this.open[this.depth++] = name;
+    }
+
+    private void flushText() {
+        if (this.text.length() > 0) {
+            this.handler.text(this.text);
+            this.text.setLength(0);
+        }
+    }
+
+    private String name() {
+        int end = this.position;
+        char[] b = this.buffer;
+        while (end < this.limit && !isWhitespace(b[end]) && '>' != b[end] && '/' != b[end] && '=' != b[end]) {
+            end++;
+        }
+        if (end < this.limit) {
+            String name = this.names.get(b, this.position, end);
+            this.position = end;
+            return name;
+        }
+        this.scratch.setLength(0);
+        int c;
+        while ((c = peek()) >= 0 && !isWhitespace(c) && '>' != c && '/' != c && '=' != c) {
+            this.scratch.append(Character.toLowerCase((char) c));
+            this.position++;
+        }
+        return this.names.get(this.scratch);
+    }
+
+    private boolean startsWith(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != read()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipTo(char end) {
+        int c;
+        while ((c = read()) >= 0 && end != c) {
+            // skip
+        }
+    }
+
+    private void skipWhitespace() {
+        while (isWhitespace(peek())) {
+            this.position++;
+        }
+    }
+
+    private int peek() {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        return this.buffer[this.position];
+    }
+
+    private int read() {
+        if (this.position == this.limit && !fill()) {
+            return -1;
+        }
+        return this.buffer[this.position++];
+    }
+
+    private boolean fill() {
+        try {
+            int n;
+            do {
+                n = this.in.read(this.buffer, 0, this.buffer.length);
+            } while (0 == n);
+            this.position = 0;
+            this.limit = Math.max(n, 0);
+            return n > 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return ' ' == c || '\n' == c || '\t' == c || '\r' == c || '\f' == c;
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private interface Handler {
+
+        void start(String name, String[] attributeNames, String[] attributeValues, int count, boolean isVoid);
+
+        void end(String name);
+
+        // text is the parser's buffer, only valid during the call
+        void text(CharSequence text);
+
+        void docType(DocTypeValue docType);
+    }
+
+    private static final class TreeBuilder implements Handler {
+
+        private final List<Element> roots = new ArrayList<>();
+        private final List<Frame> frames = new ArrayList<>();
+
+        @Override
+        public void start(String name, String[] attributeNames, String[] attributeValues, int count, boolean isVoid) {
+            Map<String, String> attrs = 0 == count ? Collections.emptyMap() : new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                attrs.put(attributeNames[i], attributeValues[i]);
+            }
+            if (isVoid) {
+                add(new HTMLElement(name, attrs, Collections.emptyList(), true));
+            } else {
+                this.frames.add(new Frame(name, attrs));
+            }
+        }
+
+        @Override
+        public void end(String name) {
+            Frame frame = this.frames.remove(this.frames.size() - 1);
+            add(new HTMLElement(frame.name, frame.attrs, frame.nodes));
+        }
+
+        @Override
+        public void text(CharSequence text) {
+            add(new Text(text.toString()));
+        }
+
+        @Override
+        public void docType(DocTypeValue docType) {
+            add(new DocType(docType));
+        }
+
+        List<Element> roots() {
+            return this.roots;
+        }
+
+        private void add(Element element) {
+            if (this.frames.isEmpty()) {
+                this.roots.add(element);
+            } else {
+                this.frames.get(this.frames.size() - 1).nodes.add(element);
+            }
+        }
+
+        private static final class Frame {
+            private final String name;
+            private final Map<String, String> attrs;
+            private final List<Element> nodes = new ArrayList<>();
+
+            Frame(String name, Map<String, String> attrs) {
+                this.name = name;
+                this.attrs = attrs;
+            }
+        }
+    }
+
+    // writes the markup Renderer would produce for the parsed tree
+    private static final class FragmentWriter implements Handler {
+
+        private final StringBuilder out = new StringBuilder(8 * 1024);
+
+        @Override
+        public void start(String name, String[] attributeNames, String[] attributeValues, int count, boolean isVoid) {
+            this.out.append('<').append(name).append(' ');
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    this.out.append(' ');
+                }
+                this.out.append(attributeNames[i]);
+                if (null != attributeValues[i]) {
+                    this.out.append("=\"").append(attributeValues[i]).append('"');
+                }
+            }
+            this.out.append('>');
+        }
+
+        @Override
+        public void end(String name) {
+            this.out.append("</").append(name).append('>');
+        }
+
+        @Override
+        public void text(CharSequence text) {
+            this.out.append(text);
+        }
+
+        @Override
+        public void docType(DocTypeValue docType) {
+            this.out.append(docType.value());
+        }
+    }
+
+    // tag and attribute names seen so far, looked up without creating a String
+    private static final class Names {
+
+        private String[] table = new String[256];
+        private int size;
+
+        Names() {
+            for (String name : ElementCodec.DICTIONARY) {
+                get(name);
+            }
+            for (String name : VOID_ELEMENTS) {
+                get(name);
+            }
+            for (String name : CLOSES_P) {
+                get(name);
+            }
+        }
+
+        // lowercases the range
+        String get(char[] chars, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                char c = chars[i];
+                if (c >= 'A' && c <= 'Z') {
+                    c += 'a' - 'A';
+                    chars[i] = c;
+                }
+                h = 31 * h + c;
+            }
+            int mask = this.table.length - 1;
+            int i = spread(h) & mask;
+            String name;
+            while (null != (name = this.table[i])) {
+                if (matches(name, chars, start, end)) {
+                    return name;
+                }
+                i = (i + 1) & mask;
+            }
+            return get(CharBuffer.wrap(chars, start, end - start));
+        }
+
+        private static boolean matches(String name, char[] chars, int start, int end) {
+            if (name.length() != end - start) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != chars[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        String get(CharSequence chars) {
+            int mask = this.table.length - 1;
+            int i = hash(chars) & mask;
+            String name;
+            while (null != (name = this.table[i])) {
+                if (name.contentEquals(chars)) {
+                    return name;
+                }
+                i = (i + 1) & mask;
+            }
+            name = chars.toString();
+            if (this.size < 4 * 1024) {
+                this.table[i] = name;
+                if (++this.size * 4 > this.table.length) {
+                    rehash();
+                }
+            }
+            return name;
+        }
+
+        private void rehash() {
+            String[] old = this.table;
+            this.table = new String[old.length * 2];
+            int mask = this.table.length - 1;
+            for (String name : old) {
+                if (null != name) {
+                    int i = hash(name) & mask;
+                    while (null != this.table[i]) {
+                        i = (i + 1) & mask;
+                    }
+                    this.table[i] = name;
+                }
+            }
+        }
+
+        private static int hash(CharSequence chars) {
+            int h = 0;
+            for (int i = 0, n = chars.length(); i < n; i++) {
+                h = 31 * h + chars.charAt(i);
+            }
+            return spread(h);
+        }
+
+        private static int spread(int h) {
+            h *= 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    // decodes UTF-8 from a buffer as the parser reads, instead of decoding it all upfront
+    private static final class Utf8Reader extends Reader {
+
+        private final ByteBuffer in;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private boolean decoded;
+        private boolean flushed;
+
+        Utf8Reader(ByteBuffer in) {
+            this.in = in.duplicate();
+        }
+
+        @Override
+        public int read(char[] chars, int offset, int length) {
+            if (this.flushed) {
+                return -1;
+            }
+            CharBuffer out = CharBuffer.wrap(chars, offset, length);
+            // once the input is decoded the decoder only takes flush calls, until one fits
+            if (!this.decoded) {
+                this.decoded = this.decoder.decode(this.in, out, true).isUnderflow();
+            }
+            if (this.decoded) {
+                this.flushed = this.decoder.flush(out).isUnderflow();
+            }
+            int n = out.position() - offset;
+            return 0 == n && this.flushed ? -1 : n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
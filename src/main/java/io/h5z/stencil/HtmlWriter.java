@@ -0,0 +1,300 @@
+package io.h5z.stencil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import io.h5z.stencil.DSL.DocTypeValue;
+import io.h5z.stencil.DSL.Element;
+
+/**
+ * Writes markup straight to a {@link Sink} without building elements, for long sequential
+ * output such as exports. The output is the same as {@link DSL#render} for the equivalent
+ * tree: same tag format, attribute rendering and {@link DSL#escapeHTML escaping}.
+ *
+ * <pre>
+ * w.open("table").attr("id", "orders");
+ * for (Order o : orders) {
+ *     w.tr(() -&gt; w.td(o.id()).td(o.customer()));
+ * }
+ * w.close().finish();
+ * </pre>
+ *
+ * Open elements are kept as ids on an int stack. Attributes are only accepted right after
+ * {@link #open}, void elements never need closing, and {@link #finish()} fails if
+ * elements are left open.
+ *
+ * <p>With a {@link RenderListener}, a writer reports one render, from its construction to
+ * {@link #finish()} or the first exception it throws. Elements passed to
+ * {@link #element(Element)} count as one node each and their named fragments are timed.
+ */
+public final class HtmlWriter {
+
+    private static final List<String> TAGS = ElementCodec.DICTIONARY;
+    private static final Map<String, Integer> TAG_IDS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < TAGS.size(); i++) {
+            TAG_IDS.put(TAGS.get(i), i);
+        }
+    }
+
+    private final Sink out;
+    private final Renderer renderer;
+    private final RenderListener listener;
+    private final Renderer.CountingSink counter;
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private int[] open = new int[16];
+    private int depth;
+    private boolean inTag;
+    private int attributes;
+
+    private long start;
+    private long nodes;
+    private int maxDepth;
+    private boolean reported;
+
+    public HtmlWriter(Sink out) {
+        this(out, DSL.renderListener());
+    }
+
+    public HtmlWriter(Sink out, RenderListener listener) {
+        this.listener = listener;
+        this.counter = null == listener ? null : new Renderer.CountingSink(out);
+        this.out = null == listener ? out : this.counter;
+        this.renderer = new Renderer(this.out, listener);
+        if (null != listener) {
+            this.start = System.nanoTime();
+            listener.started();
+        }
+    }
+
+    public static HtmlWriter to(StringBuilder sb) {
+        return new HtmlWriter(Sink.of(sb));
+    }
+
+    public HtmlWriter docType() {
+        content();
+        this.nodes++;
+        this.out.append(DocTypeValue.HTML5.value());
+        return this;
+    }
+
+    public HtmlWriter open(String name) {
+        content();
+        this.nodes++;
+        this.maxDepth = Math.max(this.maxDepth, this.depth + 1);
+        this.out.append('<').append(name).append(' ');
+        this.inTag = true;
+        this.attributes = 0;
+        if (!HtmlParser.VOID_ELEMENTS.contains(name)) {
+            push(id(name));
+        }
+        return this;
+    }
+
+    public HtmlWriter attr(String name, String value) {
+        if (!this.inTag) {
+            throw fail(new IllegalStateException("attribute " + name + " must directly follow open()"));
+        }
+        if (this.attributes++ > 0) {
+            this.out.append(' ');
+        }
+        this.out.append(name);
+        if (null != value) {
+            this.out.append("=\"").append(value).append('"');
+        }
+        return this;
+    }
+
+    public HtmlWriter attr(String name) {
+        return attr(name, null);
+    }
+
+    public HtmlWriter attrs(Map<String, String> attrs) {
+        if (attrs instanceof Selector) {
+            if (!this.inTag || 0 != this.attributes) {
+                throw fail(new IllegalStateException("attributes must directly follow open()"));
+            }
+            this.out.append(((Selector) attrs).rendered());
+            this.attributes = attrs.size();
+            return this;
+        }
+        for (Entry<String, String> kv : attrs.entrySet()) {
+            attr(kv.getKey(), kv.getValue());
+        }
+        return this;
+    }
+
+    public HtmlWriter text(CharSequence text) {
+        content();
+        this.nodes++;
+        DSL.escapeHTML(text, this.out);
+        return this;
+    }
+
+    public HtmlWriter raw(CharSequence html) {
+        content();
+        this.nodes++;
+        this.out.append(html);
+        return this;
+    }
+
+    public HtmlWriter element(Element element) {
+        content();
+        this.nodes++;
+        // visited rather than rendered, so that it is not reported as a render of its own
+        try {
+            element.accept(this.renderer);
+        } catch (RuntimeException | Error e) {
+            fail(e);
+            throw e;
+        }
+        return this;
+    }
+
+    public HtmlWriter close() {
+        if (0 == this.depth) {
+            throw fail(new IllegalStateException("no open element to close"));
+        }
+        content();
+        int id = this.open[--this.depth];
+        this.out.append("</").append(name(id)).append('>');
+        return this;
+    }
+
+    public HtmlWriter close(String name) {
+        if (0 == this.depth || !name(this.open[this.depth - 1]).equals(name)) {
+            throw fail(new IllegalStateException("cannot close " + name + ", open elements are " + openElements()));
+        }
+        return close();
+    }
+
+    public int depth() {
+        return this.depth;
+    }
+
+    public void finish() {
+        content();
+        if (0 != this.depth) {
+            throw fail(new IllegalStateException("unclosed elements " + openElements()));
+        }
+        if (null != this.listener && !this.reported) {
+            this.reported = true;
+            this.listener.rendered(this.nodes, this.counter.bytes(), this.maxDepth, System.nanoTime() - this.start);
+        }
+    }
+
+    public HtmlWriter element(String name, Runnable body) {
+        open(name);
+        body.run();
+        return close();
+    }
+
+    public HtmlWriter element(String name, Map<String, String> attrs, Runnable body) {
+        open(name).attrs(attrs);
+        body.run();
+        return close();
+    }
+
+    public HtmlWriter element(String name, String text) {
+        return open(name).text(text).close();
+    }
+
+    public HtmlWriter html(Runnable body) { return element("html", body); }
+    public HtmlWriter head(Runnable body) { return element("head", body); }
+    public HtmlWriter body(Runnable body) { return element("body", body); }
+    public HtmlWriter body(Map<String, String> attrs, Runnable body) { return element("body", attrs, body); }
+    public HtmlWriter title(String text) { return element("title", text); }
+
+    public HtmlWriter div(Runnable body) { return element("div", body); }
+    public HtmlWriter div(Map<String, String> attrs, Runnable body) { return element("div", attrs, body); }
+    public HtmlWriter div(String text) { return element("div", text); }
+    public HtmlWriter span(Runnable body) { return element("span", body); }
+    public HtmlWriter span(Map<String, String> attrs, Runnable body) { return element("span", attrs, body); }
+    public HtmlWriter span(String text) { return element("span", text); }
+    public HtmlWriter p(Runnable body) { return element("p", body); }
+    public HtmlWriter p(Map<String, String> attrs, Runnable body) { return element("p", attrs, body); }
+    public HtmlWriter p(String text) { return element("p", text); }
+    public HtmlWriter pre(Runnable body) { return element("pre", body); }
+    public HtmlWriter pre(String text) { return element("pre", text); }
+    public HtmlWriter a(Map<String, String> attrs, Runnable body) { return element("a", attrs, body); }
+    public HtmlWriter a(Map<String, String> attrs, String text) { return open("a").attrs(attrs).text(text).close(); }
+
+    public HtmlWriter ul(Runnable body) { return element("ul", body); }
+    public HtmlWriter ul(Map<String, String> attrs, Runnable body) { return element("ul", attrs, body); }
+    public HtmlWriter ol(Runnable body) { return element("ol", body); }
+    public HtmlWriter ol(Map<String, String> attrs, Runnable body) { return element("ol", attrs, body); }
+    public HtmlWriter li(Runnable body) { return element("li", body); }
+    public HtmlWriter li(String text) { return element("li", text); }
+
+    public HtmlWriter table(Runnable body) { return element("table", body); }
+    public HtmlWriter table(Map<String, String> attrs, Runnable body) { return element("table", attrs, body); }
+    public HtmlWriter thead(Runnable body) { return element("thead", body); }
+    public HtmlWriter tbody(Runnable body) { return element("tbody", body); }
+    public HtmlWriter tr(Runnable body) { return element("tr", body); }
+    public HtmlWriter tr(Map<String, String> attrs, Runnable body) { return element("tr", attrs, body); }
+    public HtmlWriter th(String text) { return element("th", text); }
+    public HtmlWriter th(Runnable body) { return element("th", body); }
+    public HtmlWriter td(String text) { return element("td", text); }
+    public HtmlWriter td(Runnable body) { return element("td", body); }
+    public HtmlWriter td(Map<String, String> attrs, Runnable body) { return element("td", attrs, body); }
+
+    public HtmlWriter br() { return open("br"); }
+
+    // reports the render as failed, once, before the exception reaches the caller
+    private <E extends Throwable> E fail(E failure) {
+        if (null != this.listener && !this.reported) {
+            this.reported = true;
+            this.listener.failed(failure, System.nanoTime() - this.start);
+        }
+        return failure;
+    }
+
+    // ends a pending start tag before content is written
+    private void content() {
+        if (this.inTag) {
+            this.out.append('>');
+            this.inTag = false;
+        }
+    }
+
+    private void push(int id) {
+        if (this.depth == this.open.length) {
+            this.open = Arrays.copyOf(this.open, this.depth * 2);
+        }
+        this.open[this.depth++] = id;
+    }
+
+    // ids below TAGS.size() are shared tag names, the others are names local to this writer
+    private int id(String name) {
+        Integer id = TAG_IDS.get(name);
+        if (null != id) {
+            return id;
+        }
+        id = this.nameIds.get(name);
+        if (null == id) {
+            id = TAGS.size() + this.names.size();
+            this.names.add(name);
+            this.nameIds.put(name, id);
+        }
+        return id;
+    }
+
+    private String name(int id) {
+        return id < TAGS.size() ? TAGS.get(id) : this.names.get(id - TAGS.size());
+    }
+
+    private List<String> openElements() {
+        List<String> names = new ArrayList<>(this.depth);
+        for (int i = 0; i < this.depth; i++) {
+            names.add(name(this.open[i]));
+        }
+        return names;
+    }
+
+}
@@ -0,0 +1,225 @@
+package io.h5z.stencil;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.Frozen;
+import io.h5z.stencil.DSL.HTMLElement;
+import io.h5z.stencil.DSL.Named;
+import io.h5z.stencil.DSL.Text;
+
+/**
+ * Renders the same document as {@link Renderer} with fewer bytes: whitespace runs in
+ * text are collapsed to one space (except in raw {@code __u} markup and inside {@code pre},
+ * {@code textarea}, {@code script} and {@code style}), attribute values are unquoted when HTML allows it,
+ * and the end tags of {@code li}, {@code td}, {@code th}, {@code tr} and {@code option}
+ * are omitted where the HTML syntax makes them implied. {@link #saved()} returns the
+ * number of bytes dropped so far.
+ */
+public class MinifyingRenderer extends Renderer {
+
+    private long saved;
+    private int preserve;
+    private boolean space;
+    private boolean omitEndTag;
+
+    public MinifyingRenderer(Sink out) {
+        super(out);
+    }
+
+    public MinifyingRenderer(Sink out, RenderListener listener) {
+        super(out, listener);
+    }
+
+    public long saved() {
+        return this.saved;
+    }
+
+    @Override
+    public Void visit(Frozen frozen) {
+        this.space = false;
+        return super.visit(frozen);
+    }
+
+    // cached component output is not minified, build the element instead
+    @Override
+    public Void visit(Component.Use<?> use) {
+        return use.element().accept(this);
+    }
+
+    @Override
+    public Void visit(DataTable<?> table) {
+        return table.element().accept(this);
+    }
+
+    @Override
+    protected void element(HTMLElement element) {
+        boolean omit = this.omitEndTag;
+        this.omitEndTag = false;
+        openingTag(element);
+        if (element.isVoidElement()) {
+            return;
+        }
+
+        boolean preserving = isPreserving(element.name());
+        if (preserving) {
+            this.preserve++;
+        }
+        List<? extends Element> nodes = element.nodes();
+        for (int i = 0, n = nodes.size(); i < n; i++) {
+            Element next = i + 1 < n ? nodes.get(i + 1) : null;
+            this.omitEndTag = canOmitEndTag(nodes.get(i), next);
+            nodes.get(i).accept(this);
+            this.omitEndTag = false;
+        }
+        if (preserving) {
+            this.preserve--;
+        }
+
+        if (omit) {
+            this.saved += element.name().length() + 3;
+            this.space = false;
+        } else {
+            closingTag(element);
+        }
+    }
+
+    @Override
+    protected void openingTag(HTMLElement element) {
+        this.space = false;
+        this.saved++;
+        this.out.append('<').append(element.name());
+        attributes(element.attributes());
+        this.out.append('>');
+    }
+
+    @Override
+    protected void attributes(Map<String, String> attrs) {
+        for (Entry<String, String> kv : attrs.entrySet()) {
+            this.out.append(' ');
+            attribute(kv.getKey(), kv.getValue());
+        }
+        // the base renderer separates n attributes with n - 1 spaces plus the one after the name
+        if (!attrs.isEmpty()) {
+            this.saved--;
+        }
+    }
+
+    @Override
+    protected void attribute(String name, String value) {
+        if (null == value || !isUnquotable(value)) {
+            super.attribute(name, value);
+            return;
+        }
+        this.saved += 2;
+        this.out.append(name).append('=').append(value);
+    }
+
+    @Override
+    protected void closingTag(HTMLElement element) {
+        this.space = false;
+        super.closingTag(element);
+    }
+
+    @Override
+    protected void text(Text text) {
+        // raw markup may hold its own pre or textarea, write it untouched
+        if (text instanceof DSL.Raw || text instanceof Values.RawValue) {
+            this.space = false;
+            super.text(text);
+            return;
+        }
+        String content = String.valueOf(text.content());
+        if (this.preserve > 0) {
+            this.space = false;
+            this.out.append(content);
+            return;
+        }
+
+        int run = 0;
+        for (int i = 0, n = content.length(); i < n; i++) {
+            if (!isWhitespace(content.charAt(i))) {
+                continue;
+            }
+            if (run < i) {
+                this.out.append(content, run, i);
+                this.space = false;
+            }
+            int end = i + 1;
+            while (end < n && isWhitespace(content.charAt(end))) {
+                end++;
+            }
+            if (this.space) {
+                this.saved += end - i;
+            } else {
+                this.out.append(' ');
+                this.saved += end - i - 1;
+                this.space = true;
+            }
+            run = end;
+            i = end - 1;
+        }
+        if (run < content.length()) {
+            this.out.append(content, run, content.length());
+            this.space = false;
+        }
+    }
+
+    private static boolean canOmitEndTag(Element element, Element next) {
+        String name = tagName(element);
+        if (null == name) {
+            return false;
+        }
+        String following = null == next ? null : tagName(next);
+        if (null != next && null == following) {
+            return false;
+        }
+        switch (name) {
+            case "li":
+                return null == next || "li".equals(following);
+            case "td":
+            case "th":
+                return null == next || "td".equals(following) || "th".equals(following);
+            case "tr":
+                return null == next || "tr".equals(following);
+            case "option":
+                return null == next || "option".equals(following) || "optgroup".equals(following);
+            default:
+                return false;
+        }
+    }
+
+    private static String tagName(Element element) {
+        while (element instanceof Named) {
+            element = ((Named) element).element();
+        }
+        return element instanceof HTMLElement ? ((HTMLElement) element).name() : null;
+    }
+
+    private static boolean isPreserving(String name) {
+        return "pre".equals(name)
+            || "textarea".equals(name)
+            || "script".equals(name)
+            || "style".equals(name);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isUnquotable(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (isWhitespace(c) || c == '"' || c == '\'' || c == '=' || c == '<' || c == '>' || c == '`') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
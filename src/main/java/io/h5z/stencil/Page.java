@@ -0,0 +1,34 @@
+package io.h5z.stencil;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import io.h5z.stencil.DSL.Element;
+
+/**
+ * A page of a static site, see {@link SiteGenerator}. A page is regenerated when one of
+ * its {@link #inputs() input files}, its {@link #inputKey() key} or the bytecode of its
+ * {@link #templates() template classes} changed since the last generation.
+ */
+public interface Page {
+
+    // output file, relative to the site directory, e.g. "blog/2021/hello.html"
+    String path();
+
+    List<Element> render();
+
+    default List<Path> inputs() {
+        return Collections.emptyList();
+    }
+
+    // any other data the page depends on, e.g. a model version or a timestamp
+    default String inputKey() {
+        return "";
+    }
+
+    default List<Class<?>> templates() {
+        return Collections.singletonList(getClass());
+    }
+
+}
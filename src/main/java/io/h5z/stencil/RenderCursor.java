@@ -0,0 +1,214 @@
+package io.h5z.stencil;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import io.h5z.stencil.DSL.Each;
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.HTMLElement;
+import io.h5z.stencil.DSL.Lazy;
+import io.h5z.stencil.DSL.Named;
+
+/**
+ * Renders elements as UTF-8 a buffer at a time. The tree is walked with an explicit stack
+ * instead of recursion, so rendering stops when the buffer is full and resumes where it
+ * left off on the next {@link #read}. Only the pending tag or text node is held in memory:
+ * {@link DSL#lazy lazy} and {@link DSL#each each} nodes and {@link DataTable} rows are
+ * built when the cursor reaches them.
+ *
+ * <p>The output is the same as {@link DSL#render}. A cursor is not thread safe.
+ *
+ * <p>With a {@link RenderListener}, the cursor reports one render: {@code started} on the
+ * first read and {@code rendered} or {@code failed} on the read that ends it, from the
+ * reading thread. Its nanos are the time spent in {@code read}, its bytes the UTF-8 output.
+ * Elements and named fragments are not timed one by one, their output spans reads.
+ */
+public final class RenderCursor {
+
+    private final Deque<Frame> stack = new ArrayDeque<>();
+    private final StringBuilder pending = new StringBuilder();
+    private final Renderer renderer = new Renderer(Sink.of(this.pending), null);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final RenderListener listener;
+    private int consumed;
+    private boolean flushed;
+
+    private boolean started;
+    private long nodes;
+    private int depth;
+    private int maxDepth;
+    // data table rows count as part of their table, like in Renderer
+    private int tables;
+    private long bytes;
+    private long nanos;
+
+    public RenderCursor(Element element) {
+        this(Collections.singletonList(element));
+    }
+
+    public RenderCursor(List<? extends Element> elements) {
+        this(elements, DSL.renderListener());
+    }
+
+    public RenderCursor(List<? extends Element> elements, RenderListener listener) {
+        this.stack.push(new Frame(elements.iterator(), null, null));
+        this.listener = listener;
+    }
+
+    /**
+     * Encodes as much output as fits into {@code dst}. A buffer with room for fewer than
+     * four bytes may not fit the next character, in which case nothing is written.
+     *
+     * @return the number of bytes written, or -1 once everything has been read
+     */
+    public int read(ByteBuffer dst) {
+        if (this.flushed) {
+            return -1;
+        }
+        if (null == this.listener) {
+            return encode(dst);
+        }
+
+        long start = System.nanoTime();
+        if (!this.started) {
+            this.started = true;
+            this.listener.started();
+        }
+        int written;
+        try {
+            written = encode(dst);
+        } catch (RuntimeException | Error e) {
+            // a later read starts a new render
+            this.started = false;
+            this.listener.failed(e, this.nanos + System.nanoTime() - start);
+            throw e;
+        }
+        this.nanos += System.nanoTime() - start;
+        this.bytes += Math.max(0, written);
+        if (this.flushed) {
+            this.listener.rendered(this.nodes, this.bytes, this.maxDepth, this.nanos);
+        }
+        return written;
+    }
+
+    private int encode(ByteBuffer dst) {
+        int start = dst.position();
+        while (dst.hasRemaining()) {
+            if (this.pending.length() - this.consumed < 2) {
+                this.pending.delete(0, this.consumed);
+                this.consumed = 0;
+                // fill up to about one buffer of chars; a lone high surrogate at the end is
+                // only encoded once the next node is known, however little room is left
+                while ((this.pending.length() < dst.remaining() || highSurrogateTail()) && step()) {
+                }
+            }
+            boolean end = this.stack.isEmpty();
+            CharBuffer chars = CharBuffer.wrap(this.pending, this.consumed, this.pending.length());
+            CoderResult result = this.encoder.encode(chars, dst, end);
+            this.consumed = chars.position();
+            if (result.isOverflow()) {
+                break;
+            }
+            if (end) {
+                this.flushed = !this.encoder.flush(dst).isOverflow();
+                break;
+            }
+        }
+        int written = dst.position() - start;
+        return 0 == written && this.flushed ? -1 : written;
+    }
+
+    public boolean isDone() {
+        return this.flushed;
+    }
+
+    private boolean highSurrogateTail() {
+        int length = this.pending.length();
+        return length > 0 && Character.isHighSurrogate(this.pending.charAt(length - 1));
+    }
+
+    // renders the next tag or node into pending, false when nothing is left
+    private boolean step() {
+        while (!this.stack.isEmpty()) {
+            Frame top = this.stack.peek();
+            if (top.nodes.hasNext()) {
+                open(top.nodes.next());
+                return true;
+            }
+            this.stack.pop();
+            if (null != top.element) {
+                this.depth--;
+                this.renderer.closingTag(top.element);
+                return true;
+            }
+            if (null != top.tail) {
+                this.tables--;
+                this.pending.append(top.tail);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void open(Element e) {
+        while (e instanceof Named) {
+            e = ((Named) e).element();
+        }
+        if (e instanceof HTMLElement) {
+            HTMLElement element = (HTMLElement) e;
+            if (0 == this.tables) {
+                this.nodes++;
+                this.maxDepth = Math.max(this.maxDepth, this.depth + 1);
+            }
+            this.renderer.openingTag(element);
+            if (!element.isVoidElement()) {
+                this.depth++;
+                this.stack.push(new Frame(element.nodes().iterator(), element, null));
+            }
+        } else if (e instanceof Lazy) {
+            Element element = ((Lazy) e).get();
+            if (null != element) {
+                open(element);
+            }
+        } else if (e instanceof Each) {
+            this.stack.push(new Frame(((Each<?>) e).iterator(), null, null));
+        } else if (e instanceof DataTable) {
+            DataTable<?> table = (DataTable<?>) e;
+            if (0 == this.tables++) {
+                this.nodes++;
+            }
+            this.pending.append(table.head());
+            this.stack.push(new Frame(table.rows(), null, "</tbody></table>"));
+        } else {
+            if (0 == this.tables) {
+                this.nodes++;
+            }
+            e.accept(this.renderer);
+        }
+    }
+
+    private static final class Frame {
+
+        private final Iterator<? extends Element> nodes;
+        private final HTMLElement element;
+        private final String tail;
+
+        Frame(Iterator<? extends Element> nodes, HTMLElement element, String tail) {
+            this.nodes = nodes;
+            this.element = element;
+            this.tail = tail;
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package io.h5z.stencil;
+
+import io.h5z.stencil.DSL.HTMLElement;
+import io.h5z.stencil.DSL.Named;
+
+/**
+ * Callbacks invoked by {@link Renderer}, {@link RenderCursor} and {@link HtmlWriter} when a
+ * listener is installed with {@link DSL#setRenderListener(RenderListener)} or passed to
+ * their constructor. Each render calls {@link #started()} then either {@link #rendered} or
+ * {@link #failed}. {@link #escaped} always goes to the installed listener. All methods are
+ * no-ops by default.
+ */
+public interface RenderListener {
+
+    /**
+     * When true, {@link #element} is called for every HTML element with its own
+     * timing, which costs two {@link System#nanoTime()} calls per element.
+     */
+    default boolean timeElements() {
+        return false;
+    }
+
+    default void started() {}
+
+    default void element(HTMLElement element, int depth, long nanos, long bytes) {}
+
+    default void enter(Named named) {}
+
+    default void exit(Named named, long nanos, long bytes) {}
+
+    default void escaped(int length, int escapedLength) {}
+
+    /**
+     * {@code nodes} counts elements, text and doctypes as they are visited. Frozen
+     * fragments, component uses, data tables and compact documents are rendered in one
+     * piece and count as a single node, whatever their content.
+     */
+    default void rendered(long nodes, long bytes, int maxDepth, long nanos) {}
+
+    // called instead of rendered when the render throws, the exception is rethrown
+    default void failed(Throwable failure, long nanos) {}
+
+}
@@ -0,0 +1,215 @@
+package io.h5z.stencil;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import io.h5z.stencil.DSL.HTMLElement;
+import io.h5z.stencil.DSL.Named;
+
+/**
+ * Default {@link RenderListener}: render totals are kept in striped counters so that
+ * recording a render does not allocate. Per-element timings are only collected when
+ * the metrics are created with {@code timeElements} set; named fragments are always timed.
+ */
+public class RenderMetrics implements RenderListener, RenderMetricsMBean {
+
+    private final boolean timeElements;
+
+    private final LongAdder renders = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder escapes = new LongAdder();
+    private final LongAdder escapedBytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final Map<String, Timing> elements = new ConcurrentHashMap<>();
+    private final Map<String, Timing> fragments = new ConcurrentHashMap<>();
+
+    public RenderMetrics() {
+        this(false);
+    }
+
+    public RenderMetrics(boolean timeElements) {
+        this.timeElements = timeElements;
+    }
+
+    @Override
+    public boolean timeElements() {
+        return this.timeElements;
+    }
+
+    @Override
+    public void element(HTMLElement element, int depth, long nanos, long bytes) {
+        record(this.elements, element.name(), nanos, bytes);
+    }
+
+    @Override
+    public void exit(Named named, long nanos, long bytes) {
+        record(this.fragments, named.name(), nanos, bytes);
+    }
+
+    @Override
+    public void escaped(int length, int escapedLength) {
+        this.escapes.increment();
+        this.escapedBytes.add(escapedLength);
+    }
+
+    @Override
+    public void rendered(long nodes, long bytes, int maxDepth, long nanos) {
+        this.renders.increment();
+        this.nodes.add(nodes);
+        this.bytes.add(bytes);
+        this.nanos.add(nanos);
+        int current;
+        while (maxDepth > (current = this.maxDepth.get())
+                && !this.maxDepth.compareAndSet(current, maxDepth)) {
+            // retry
+        }
+    }
+
+    // failed renders only count here, what they visited before failing is not recorded
+    @Override
+    public void failed(Throwable failure, long nanos) {
+        this.failures.increment();
+    }
+
+    @Override
+    public long getRenders() {
+        return this.renders.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return this.failures.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return this.nodes.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return this.bytes.sum();
+    }
+
+    @Override
+    public long getEscapes() {
+        return this.escapes.sum();
+    }
+
+    @Override
+    public long getEscapedBytes() {
+        return this.escapedBytes.sum();
+    }
+
+    @Override
+    public int getMaxDepth() {
+        return this.maxDepth.get();
+    }
+
+    @Override
+    public long getNanos() {
+        return this.nanos.sum();
+    }
+
+    @Override
+    public Map<String, Long> getElementNanos() {
+        return nanos(this.elements);
+    }
+
+    @Override
+    public Map<String, Long> getElementBytes() {
+        return bytes(this.elements);
+    }
+
+    @Override
+    public Map<String, Long> getFragmentNanos() {
+        return nanos(this.fragments);
+    }
+
+    @Override
+    public Map<String, Long> getFragmentBytes() {
+        return bytes(this.fragments);
+    }
+
+    // read from the registered components, not reset by reset()
+    @Override
+    public Map<String, Double> getComponentHitRates() {
+        Map<String, Double> result = new TreeMap<>();
+        DSL.components().forEach((name, component) -> result.put(name, component.hitRate()));
+        return result;
+    }
+
+    // read from DSL.escapeCache(), 0 when no cache is installed
+    @Override
+    public double getEscapeCacheHitRate() {
+        EscapeCache cache = DSL.escapeCache();
+        return null == cache ? 0 : cache.hitRate();
+    }
+
+    @Override
+    public int getEscapeCacheSize() {
+        EscapeCache cache = DSL.escapeCache();
+        return null == cache ? 0 : cache.size();
+    }
+
+    @Override
+    public void reset() {
+        this.renders.reset();
+        this.failures.reset();
+        this.nodes.reset();
+        this.bytes.reset();
+        this.escapes.reset();
+        this.escapedBytes.reset();
+        this.nanos.reset();
+        this.maxDepth.set(0);
+        this.elements.clear();
+        this.fragments.clear();
+    }
+
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("io.h5z.stencil:type=RenderMetrics,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void record(Map<String, Timing> timings, String name, long nanos, long bytes) {
+        Timing timing = timings.get(name);
+        if (null == timing) {
+            timing = timings.computeIfAbsent(name, k -> new Timing());
+        }
+        timing.nanos.add(nanos);
+        timing.bytes.add(bytes);
+    }
+
+    private static Map<String, Long> nanos(Map<String, Timing> timings) {
+        Map<String, Long> result = new TreeMap<>();
+        timings.forEach((k, v) -> result.put(k, v.nanos.sum()));
+        return result;
+    }
+
+    private static Map<String, Long> bytes(Map<String, Timing> timings) {
+        Map<String, Long> result = new TreeMap<>();
+        timings.forEach((k, v) -> result.put(k, v.bytes.sum()));
+        return result;
+    }
+
+    private static final class Timing {
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+    }
+
+}
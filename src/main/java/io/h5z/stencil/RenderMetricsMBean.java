@@ -0,0 +1,39 @@
+package io.h5z.stencil;
+
+import java.util.Map;
+
+public interface RenderMetricsMBean {
+
+    long getRenders();
+
+    long getFailures();
+
+    long getNodes();
+
+    long getBytes();
+
+    long getEscapes();
+
+    long getEscapedBytes();
+
+    int getMaxDepth();
+
+    long getNanos();
+
+    Map<String, Long> getElementNanos();
+
+    Map<String, Long> getElementBytes();
+
+    Map<String, Long> getFragmentNanos();
+
+    Map<String, Long> getFragmentBytes();
+
+    Map<String, Double> getComponentHitRates();
+
+    double getEscapeCacheHitRate();
+
+    int getEscapeCacheSize();
+
+    void reset();
+
+}
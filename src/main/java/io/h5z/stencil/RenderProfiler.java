@@ -0,0 +1,155 @@
+package io.h5z.stencil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.h5z.stencil.DSL.Named;
+
+/**
+ * Samples one render out of {@code rate} and attributes its time and bytes to the stack
+ * of {@link Named} fragments being rendered. Reports use the collapsed stack format
+ * ({@code render;page;nav 1234}) understood by flamegraph.pl and speedscope, where each
+ * line carries the self cost of its innermost frame.
+ */
+public class RenderProfiler implements RenderListener {
+
+    public static final String ROOT = "render";
+
+    private final int rate;
+    private final AtomicLong renders = new AtomicLong();
+    private final Map<String, Cost> stacks = new ConcurrentHashMap<>();
+    private final ThreadLocal<Sample> current = ThreadLocal.withInitial(Sample::new);
+
+    public RenderProfiler() {
+        this(1);
+    }
+
+    public RenderProfiler(int rate) {
+        if (rate < 1) {
+            throw new IllegalArgumentException("rate must be positive");
+        }
+        this.rate = rate;
+    }
+
+    @Override
+    public void started() {
+        Sample sample = this.current.get();
+        sample.active = this.renders.getAndIncrement() % this.rate == 0;
+        if (sample.active) {
+            sample.reset();
+        }
+    }
+
+    @Override
+    public void enter(Named named) {
+        Sample sample = this.current.get();
+        if (sample.active) {
+            sample.push(named.name());
+        }
+    }
+
+    @Override
+    public void exit(Named named, long nanos, long bytes) {
+        Sample sample = this.current.get();
+        if (sample.active) {
+            pop(sample, nanos, bytes);
+        }
+    }
+
+    @Override
+    public void rendered(long nodes, long bytes, int maxDepth, long nanos) {
+        Sample sample = this.current.get();
+        if (sample.active) {
+            pop(sample, nanos, bytes);
+            sample.active = false;
+        }
+    }
+
+    // a failed render is dropped, its fragments never exited
+    @Override
+    public void failed(Throwable failure, long nanos) {
+        this.current.get().active = false;
+    }
+
+    private void pop(Sample sample, long nanos, long bytes) {
+        int top = sample.size - 1;
+        String path = sample.paths.get(top);
+        Cost cost = this.stacks.get(path);
+        if (null == cost) {
+            cost = this.stacks.computeIfAbsent(path, k -> new Cost());
+        }
+        cost.nanos.add(nanos - sample.childNanos[top]);
+        cost.bytes.add(bytes - sample.childBytes[top]);
+        sample.size = top;
+        if (top > 0) {
+            sample.childNanos[top - 1] += nanos;
+            sample.childBytes[top - 1] += bytes;
+        }
+    }
+
+    public long sampledRenders() {
+        return (this.renders.get() + this.rate - 1) / this.rate;
+    }
+
+    public String collapsedNanos() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(this.stacks).forEach((k, v) ->
+            sb.append(k).append(' ').append(v.nanos.sum()).append('\n'));
+        return sb.toString();
+    }
+
+    public String collapsedBytes() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(this.stacks).forEach((k, v) ->
+            sb.append(k).append(' ').append(v.bytes.sum()).append('\n'));
+        return sb.toString();
+    }
+
+    public void reset() {
+        this.renders.set(0);
+        this.stacks.clear();
+    }
+
+    private static final class Cost {
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+    }
+
+    private static final class Sample {
+        private boolean active;
+        private int size;
+        private final List<String> paths = new ArrayList<>();
+        private long[] childNanos = new long[16];
+        private long[] childBytes = new long[16];
+
+        void reset() {
+            this.size = 0;
+            push(ROOT);
+        }
+
+        void push(String name) {
+            String path = this.size == 0
+                ? name
+                : this.paths.get(this.size - 1) + ";" + name.replace(';', ':');
+            if (this.size == this.paths.size()) {
+                this.paths.add(path);
+            } else {
+                this.paths.set(this.size, path);
+            }
+            if (this.size == this.childNanos.length) {
+                this.childNanos = Arrays.copyOf(this.childNanos, this.size * 2);
+                this.childBytes = Arrays.copyOf(this.childBytes, this.size * 2);
+            }
+            this.childNanos[this.size] = 0;
+            this.childBytes[this.size] = 0;
+            this.size++;
+        }
+    }
+
+}
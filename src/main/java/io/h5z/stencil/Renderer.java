@@ -0,0 +1,270 @@
+package io.h5z.stencil;
+
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import io.h5z.stencil.DSL.DocType;
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.ElementVisitor;
+import io.h5z.stencil.DSL.Frozen;
+import io.h5z.stencil.DSL.HTMLElement;
+import io.h5z.stencil.DSL.Named;
+import io.h5z.stencil.DSL.Text;
+import io.h5z.stencil.DSL.Value;
+
+public class Renderer implements ElementVisitor<Void> {
+
+    protected final Sink out;
+    private final RenderListener listener;
+    private final CountingSink counter;
+
+    private long nodes;
+    private int depth;
+    private int maxDepth;
+
+    public Renderer(Sink out) {
+        this(out, DSL.renderListener());
+    }
+
+    public Renderer(Sink out, RenderListener listener) {
+        this.listener = listener;
+        this.counter = null == listener ? null : new CountingSink(out);
+        this.out = null == listener ? out : this.counter;
+    }
+
+    public Renderer render(List<? extends Element> elements) {
+        if (null == this.listener) {
+            for (Element e : elements) {
+                e.accept(this);
+            }
+            return this;
+        }
+
+        long start = System.nanoTime();
+        long bytes = this.counter.bytes;
+        this.nodes = 0;
+        this.maxDepth = 0;
+        this.listener.started();
+        try {
+            for (Element e : elements) {
+                e.accept(this);
+            }
+        } catch (RuntimeException | Error e) {
+            this.depth = 0;
+            this.listener.failed(e, System.nanoTime() - start);
+            throw e;
+        }
+        this.listener.rendered(
+            this.nodes, this.counter.bytes - bytes, this.maxDepth, System.nanoTime() - start);
+        return this;
+    }
+
+    public Renderer render(Element element) {
+        if (null == this.listener) {
+            element.accept(this);
+            return this;
+        }
+        return render(Collections.singletonList(element));
+    }
+
+    @Override
+    public Void visit(HTMLElement element) {
+        if (null == this.listener) {
+            element(element);
+            return null;
+        }
+
+        this.nodes++;
+        if (++this.depth > this.maxDepth) {
+            this.maxDepth = this.depth;
+        }
+        if (this.listener.timeElements()) {
+            long start = System.nanoTime();
+            long bytes = this.counter.bytes;
+            element(element);
+            this.listener.element(
+                element, this.depth, System.nanoTime() - start, this.counter.bytes - bytes);
+        } else {
+            element(element);
+        }
+        this.depth--;
+        return null;
+    }
+
+    @Override
+    public Void visit(Named named) {
+        if (null == this.listener) {
+            named.element().accept(this);
+            return null;
+        }
+
+        this.listener.enter(named);
+        long start = System.nanoTime();
+        long bytes = this.counter.bytes;
+        named.element().accept(this);
+        this.listener.exit(named, System.nanoTime() - start, this.counter.bytes - bytes);
+        return null;
+    }
+
+    @Override
+    public Void visit(DocType page) {
+        this.nodes++;
+        this.out.append(page.docType().value());
+        return null;
+    }
+
+    @Override
+    public Void visit(Text text) {
+        this.nodes++;
+        text(text);
+        return null;
+    }
+
+    // frozen fragments, component uses, data tables and compact documents are written
+    // whole and count as one node each, whatever their size
+    @Override
+    public Void visit(Frozen frozen) {
+        this.nodes++;
+        this.out.appendFrozen(frozen);
+        return null;
+    }
+
+    @Override
+    public Void visit(Component.Use<?> use) {
+        this.nodes++;
+        this.out.appendFrozen(use.rendered());
+        return null;
+    }
+
+    @Override
+    public Void visit(DataTable<?> table) {
+        this.nodes++;
+        table.render(this);
+        return null;
+    }
+
+    @Override
+    public Void visit(CompactDocument document) {
+        this.nodes++;
+        document.render(this.out);
+        return null;
+    }
+
+    protected void element(HTMLElement element) {
+        openingTag(element);
+        if (element.isVoidElement()) {
+            return;
+        }
+        for (Element e : element.nodes()) {
+            e.accept(this);
+        }
+        closingTag(element);
+    }
+
+    protected void openingTag(HTMLElement element) {
+        this.out.append('<').append(element.name()).append(' ');
+        attributes(element.attributes());
+        this.out.append('>');
+    }
+
+    protected void attributes(Map<String, String> attrs) {
+        if (attrs instanceof Selector) {
+            this.out.append(((Selector) attrs).rendered());
+            return;
+        }
+        boolean first = true;
+        for (Entry<String, String> kv : attrs.entrySet()) {
+            if (!first) {
+                this.out.append(' ');
+            }
+            first = false;
+            attribute(kv.getKey(), kv.getValue());
+        }
+    }
+
+    protected void attribute(String name, String value) {
+        this.out.append(name);
+        if (null != value) {
+            this.out.append("=\"").append(value).append('"');
+        }
+    }
+
+    protected void closingTag(HTMLElement element) {
+        this.out.append("</").append(element.name()).append('>');
+    }
+
+    protected void text(Text text) {
+        if (text instanceof Value) {
+            ((Value) text).writeTo(this.out);
+            return;
+        }
+        this.out.append(String.valueOf(text.content()));
+    }
+
+    static final class CountingSink implements Sink {
+
+        private final Sink delegate;
+        private long bytes;
+
+        CountingSink(Sink delegate) {
+            this.delegate = delegate;
+        }
+
+        long bytes() {
+            return this.bytes;
+        }
+
+        @Override
+        public Sink append(char c) {
+            this.bytes += utf8Length(c);
+            this.delegate.append(c);
+            return this;
+        }
+
+        @Override
+        public Sink append(CharSequence s) {
+            return append(s, 0, s.length());
+        }
+
+        @Override
+        public Sink append(CharSequence s, int start, int end) {
+            for (int i = start; i < end; i++) {
+                this.bytes += utf8Length(s.charAt(i));
+            }
+            this.delegate.append(s, start, end);
+            return this;
+        }
+
+        @Override
+        public Sink append(char[] chars, int offset, int length) {
+            for (int i = offset, end = offset + length; i < end; i++) {
+                this.bytes += utf8Length(chars[i]);
+            }
+            this.delegate.append(chars, offset, length);
+            return this;
+        }
+
+        @Override
+        public Sink appendFrozen(Frozen frozen) {
+            this.bytes += frozen.utf8().length;
+            this.delegate.appendFrozen(frozen);
+            return this;
+        }
+
+        @Override
+        public Sink appendFile(FileChannel file, long position, long size) {
+            this.bytes += size;
+            this.delegate.appendFile(file, position, size);
+            return this;
+        }
+
+        // a surrogate pair counts 2 + 2 = 4 bytes, which is its UTF-8 length
+        private static int utf8Length(char c) {
+            return c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+    }
+
+}
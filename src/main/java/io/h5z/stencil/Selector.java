@@ -0,0 +1,144 @@
+package io.h5z.stencil;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The immutable attributes of a {@code "#id.class1.class2"} shorthand, with the attribute
+ * block already rendered. Parsed selectors are cached since they are almost always string
+ * literals; once the cache is full, new selectors are parsed on every call.
+ */
+public final class Selector extends AbstractMap<String, String> {
+
+    private static final int CACHE_SIZE = 1024;
+    private static final Map<String, Selector> CACHE = new ConcurrentHashMap<>();
+
+    private final String id;
+    private final String classes;
+    private final String rendered;
+
+    private Selector(String id, String classes) {
+        this.id = id;
+        this.classes = classes;
+        StringBuilder sb = new StringBuilder();
+        if (null != id) {
+            sb.append("id=\"").append(id).append('"');
+        }
+        if (null != classes) {
+            if (null != id) {
+                sb.append(' ');
+            }
+            sb.append("class=\"").append(classes).append('"');
+        }
+        this.rendered = sb.toString();
+    }
+
+    public static Selector of(String idAndClasses) {
+        Selector selector = CACHE.get(idAndClasses);
+        if (null != selector) {
+            return selector;
+        }
+        selector = parse(idAndClasses);
+        if (CACHE.size() < CACHE_SIZE) {
+            CACHE.putIfAbsent(idAndClasses, selector);
+        }
+        return selector;
+    }
+
+    // not cached, for callers that keep their own
+    static Selector of(String id, String classes) {
+        return new Selector(id, classes);
+    }
+
+    static Selector parse(String idAndClasses) {
+        String id = null;
+        StringBuilder classes = null;
+        int start = 0;
+        int length = idAndClasses.length();
+        while (start <= length) {
+            int end = idAndClasses.indexOf('.', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                if (idAndClasses.charAt(start) == '#') {
+                    id = idAndClasses.substring(start + 1, end);
+                } else {
+                    if (null == classes) {
+                        classes = new StringBuilder(length);
+                    } else {
+                        classes.append(' ');
+                    }
+                    classes.append(idAndClasses, start, end);
+                }
+            }
+            start = end + 1;
+        }
+        return new Selector(id, null == classes ? null : classes.toString());
+    }
+
+    public String id() {
+        return this.id;
+    }
+
+    public String classes() {
+        return this.classes;
+    }
+
+    public String rendered() {
+        return this.rendered;
+    }
+
+    @Override
+    public String get(Object key) {
+        return "id".equals(key) ? this.id : "class".equals(key) ? this.classes : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return null != get(key);
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<Entry<String, String>>() {
+
+                    private int next = null != Selector.this.id ? 0 : null != Selector.this.classes ? 1 : 2;
+
+                    @Override
+                    public boolean hasNext() {
+                        return this.next < 2;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (this.next == 0) {
+                            this.next = null != Selector.this.classes ? 1 : 2;
+                            return new SimpleImmutableEntry<>("id", Selector.this.id);
+                        }
+                        if (this.next == 1) {
+                            this.next = 2;
+                            return new SimpleImmutableEntry<>("class", Selector.this.classes);
+                        }
+                        throw new NoSuchElementException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return (null != Selector.this.id ? 1 : 0) + (null != Selector.this.classes ? 1 : 0);
+            }
+        };
+    }
+
+}
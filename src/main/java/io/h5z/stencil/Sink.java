@@ -0,0 +1,127 @@
+package io.h5z.stencil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import io.h5z.stencil.DSL.Frozen;
+
+public interface Sink {
+
+    Sink append(char c);
+
+    Sink append(CharSequence s);
+
+    Sink append(CharSequence s, int start, int end);
+
+    default Sink append(char[] chars, int offset, int length) {
+        return append(CharBuffer.wrap(chars, offset, length));
+    }
+
+    default Sink appendFrozen(Frozen frozen) {
+        return append(frozen.content());
+    }
+
+    // a region of a UTF-8 file, decoded from a read-only mapping; byte sinks copy the bytes as is
+    default Sink appendFile(FileChannel file, long position, long size) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(4 * 1024);
+        try {
+            ByteBuffer bytes = file.map(FileChannel.MapMode.READ_ONLY, position, size);
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, true);
+                chars.flip();
+                append(chars.array(), 0, chars.limit());
+                chars.clear();
+            } while (result.isOverflow());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    static Sink of(StringBuilder sb) {
+        return new Sink() {
+
+            @Override
+            public Sink append(char c) {
+                sb.append(c);
+                return this;
+            }
+
+            @Override
+            public Sink append(CharSequence s) {
+                sb.append(s);
+                return this;
+            }
+
+            @Override
+            public Sink append(CharSequence s, int start, int end) {
+                sb.append(s, start, end);
+                return this;
+            }
+
+            @Override
+            public Sink append(char[] chars, int offset, int length) {
+                sb.append(chars, offset, length);
+                return this;
+            }
+        };
+    }
+
+    static Sink of(Writer writer) {
+        return new Sink() {
+
+            @Override
+            public Sink append(char c) {
+                try {
+                    writer.write(c);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return this;
+            }
+
+            @Override
+            public Sink append(CharSequence s) {
+                try {
+                    writer.append(s);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return this;
+            }
+
+            @Override
+            public Sink append(CharSequence s, int start, int end) {
+                try {
+                    writer.append(s, start, end);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return this;
+            }
+
+            @Override
+            public Sink append(char[] chars, int offset, int length) {
+                try {
+                    writer.write(chars, offset, length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return this;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,312 @@
+package io.h5z.stencil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Renders the pages of a static site in parallel and only regenerates what changed.
+ *
+ * <p>Each page gets a SHA-256 fingerprint of its path, input files, input key, the
+ * bytecode of its template classes and the library itself (its jar, or all of its class
+ * files when run from a directory). Fingerprints are kept in a manifest file in the
+ * output directory ({@code sha256 path} per line). A page whose fingerprint matches the
+ * manifest and whose output file exists is skipped. Outputs of pages that are no longer
+ * part of the site are deleted, as long as they are inside the output directory.
+ *
+ * <p>Run from Gradle with {@code ./gradlew generateSite -Psite=com.example.Blog}.
+ */
+public final class SiteGenerator {
+
+    public static final String MANIFEST = ".stencil-manifest";
+
+    private final Path output;
+    private final int threads;
+    private final Map<Class<?>, byte[]> bytecode = new ConcurrentHashMap<>();
+
+    public SiteGenerator(Path output) {
+        this(output, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SiteGenerator(Path output, int threads) {
+        this.output = output;
+        this.threads = threads;
+    }
+
+    /**
+     * A set of pages, instantiated by {@link #main} through its no-argument constructor.
+     */
+    @FunctionalInterface
+    public interface Site {
+        Collection<? extends Page> pages();
+    }
+
+    public Result generate(Collection<? extends Page> pages) {
+        try {
+            Files.createDirectories(this.output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Map<String, String> previous = readManifest();
+        Map<String, String> manifest = new ConcurrentHashMap<>();
+
+        List<Page> stale = pages.parallelStream()
+            .filter(page -> {
+                String fingerprint = fingerprint(page);
+                manifest.put(page.path(), fingerprint);
+                return !fingerprint.equals(previous.get(page.path()))
+                    || !Files.exists(file(page));
+            })
+            .collect(Collectors.toList());
+
+        Map<String, RuntimeException> failures = new ConcurrentHashMap<>();
+        BatchRenderer.Stats stats = BatchRenderer.<Page>builder(Page::render)
+            .threads(this.threads)
+            .onError((page, e) -> {
+                failures.put(page.path(), e);
+                manifest.remove(page.path());
+            })
+            .build()
+            .render(stale, (index, page, html) -> write(file(page), html));
+
+        List<String> removed = new ArrayList<>();
+        Path root = this.output.normalize();
+        for (String path : previous.keySet()) {
+            if (!manifest.containsKey(path) && !failures.containsKey(path)) {
+                // the manifest is a file anyone can edit, only delete inside the output directory
+                Path file = root.resolve(path).normalize();
+                if (!file.startsWith(root) || file.equals(root) || file.equals(root.resolve(MANIFEST))) {
+                    continue;
+                }
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                removed.add(path);
+            }
+        }
+        writeManifest(manifest);
+        return new Result(pages.size(), stale.size() - failures.size(), removed, failures, stats);
+    }
+
+    public static final class Result {
+
+        private final int pages;
+        private final int generated;
+        private final List<String> removed;
+        private final Map<String, RuntimeException> failures;
+        private final BatchRenderer.Stats stats;
+
+        private Result(int pages, int generated, List<String> removed,
+                Map<String, RuntimeException> failures, BatchRenderer.Stats stats) {
+            this.pages = pages;
+            this.generated = generated;
+            this.removed = Collections.unmodifiableList(removed);
+            this.failures = Collections.unmodifiableMap(new TreeMap<>(failures));
+            this.stats = stats;
+        }
+
+        public int pages() { return this.pages; }
+        public int generated() { return this.generated; }
+        public int skipped() { return this.pages - this.generated - this.failures.size(); }
+        public List<String> removed() { return this.removed; }
+        public Map<String, RuntimeException> failures() { return this.failures; }
+        public BatchRenderer.Stats stats() { return this.stats; }
+
+        @Override
+        public String toString() {
+            return this.pages + " pages: " + this.generated + " generated, " + skipped() + " up to date, "
+                + this.removed.size() + " removed, " + this.failures.size() + " failed";
+        }
+    }
+
+    private Path file(Page page) {
+        Path file = this.output.resolve(page.path()).normalize();
+        if (!file.startsWith(this.output.normalize()) || file.equals(this.output.normalize())) {
+            throw new IllegalArgumentException("page path outside of the output directory: " + page.path());
+        }
+        return file;
+    }
+
+    private String fingerprint(Page page) {
+        MessageDigest digest = sha256();
+        update(digest, page.path());
+        update(digest, page.inputKey());
+        for (Path input : page.inputs()) {
+            update(digest, input.toString());
+            try {
+                digest.update(Files.readAllBytes(input));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        for (Class<?> template : page.templates()) {
+            digest.update(this.bytecode.computeIfAbsent(template, SiteGenerator::bytecode));
+        }
+        digest.update(Library.FINGERPRINT);
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    // everything that decides the bytes of a page besides the page itself
+    private static final class Library {
+
+        static final byte[] FINGERPRINT = fingerprint();
+
+        private static byte[] fingerprint() {
+            MessageDigest digest = sha256();
+            try {
+                CodeSource source = SiteGenerator.class.getProtectionDomain().getCodeSource();
+                if (null == source) {
+                    // unknown library, never up to date
+                    update(digest, Long.toString(System.nanoTime()));
+                    return digest.digest();
+                }
+                Path location = Paths.get(source.getLocation().toURI());
+                List<Path> files;
+                if (Files.isDirectory(location)) {
+                    try (Stream<Path> walk = Files.walk(location.resolve("io/h5z/stencil"))) {
+                        files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                    }
+                } else {
+                    files = Collections.singletonList(location);
+                }
+                for (Path file : files) {
+                    update(digest, location.relativize(file).toString());
+                    digest.update(Files.readAllBytes(file));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException(e);
+            }
+            return digest.digest();
+        }
+    }
+
+    // classes without a readable class file (lambdas, generated classes) count by name only
+    private static byte[] bytecode(Class<?> type) {
+        String resource = "/" + type.getName().replace('.', '/') + ".class";
+        try (InputStream in = type.getResourceAsStream(resource)) {
+            if (null == in) {
+                return type.getName().getBytes(StandardCharsets.UTF_8);
+            }
+            MessageDigest digest = sha256();
+            byte[] buffer = new byte[8 * 1024];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+            return digest.digest();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void write(Path file, CharSequence html) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(html));
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, String> readManifest() {
+        Map<String, String> manifest = new TreeMap<>();
+        Path file = this.output.resolve(MANIFEST);
+        if (!Files.exists(file)) {
+            return manifest;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    manifest.put(line.substring(space + 1), line.substring(0, space));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return manifest;
+    }
+
+    private void writeManifest(Map<String, String> manifest) {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(manifest).forEach((path, hash) -> sb.append(hash).append(' ').append(path).append('\n'));
+        Path file = this.output.resolve(MANIFEST);
+        Path tmp = this.output.resolve(MANIFEST + ".tmp");
+        try {
+            Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // SiteGenerator <output-dir> <site-class>...
+    public static void main(String[] args) throws ReflectiveOperationException {
+        if (args.length < 2) {
+            System.err.println("usage: SiteGenerator <output-dir> <site-class>...");
+            System.exit(2);
+        }
+        List<Page> pages = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            Site site = (Site) Class.forName(args[i]).getDeclaredConstructor().newInstance();
+            pages.addAll(site.pages());
+        }
+        Result result = new SiteGenerator(Paths.get(args[0])).generate(pages);
+        System.out.println(result);
+        System.out.println(result.stats());
+        result.failures().forEach((path, e) -> System.err.println(path + ": " + e));
+        if (!result.failures().isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package io.h5z.stencil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+import io.h5z.stencil.DSL.Element;
+
+/**
+ * A page whose structure is fixed, compiled once into constant chunks separated by
+ * parameter slots. Rendering a template writes the chunks and the model values straight
+ * to the sink, no element tree is built per render.
+ *
+ * <pre>
+ * Template&lt;User&gt; card = Template.compile(s -&gt;
+ *     div(attrs(classes("card"), data("id", s.attr(User::id))),
+ *         h2(s.text(User::name)),
+ *         p(s.raw(User::bioHtml))));
+ *
+ * card.render(user);
+ * </pre>
+ */
+public final class Template<T> {
+
+    private static final char OPEN = '\uFDD0';
+    private static final char CLOSE = '\uFDD1';
+
+    private final String[] chunks;
+    private final Slot<T>[] slots;
+
+    private Template(String[] chunks, Slot<T>[] slots) {
+        this.chunks = chunks;
+        this.slots = slots;
+    }
+
+    public static <T> Template<T> compile(Function<Slots<T>, Element> template) {
+        return build(s -> Collections.singletonList(template.apply(s)));
+    }
+
+    public static <T> Template<T> compileDocument(Function<Slots<T>, List<Element>> template) {
+        return build(template);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <T> Template<T> build(Function<Slots<T>, List<Element>> template) {
+        Slots<T> slots = new Slots<>();
+        String html = DSL.render(template.apply(slots));
+
+        List<String> chunks = new ArrayList<>();
+        List<Slot<T>> order = new ArrayList<>();
+        boolean[] used = new boolean[slots.slots.size()];
+        int start = 0;
+        int open;
+        while ((open = html.indexOf(OPEN, start)) >= 0) {
+            int close = html.indexOf(CLOSE, open);
+            int index = Integer.parseInt(html.substring(open + 1, close));
+            chunks.add(html.substring(start, open));
+            order.add(slots.slots.get(index));
+            used[index] = true;
+            start = close + 1;
+        }
+        chunks.add(html.substring(start));
+
+        for (int i = 0; i < used.length; i++) {
+            if (!used[i]) {
+                throw new IllegalArgumentException(
+                    "slot " + i + " does not appear in the rendered template, it was probably escaped");
+            }
+        }
+        return new Template<>(chunks.toArray(new String[0]), order.toArray(new Slot[0]));
+    }
+
+    public void render(T model, Sink out) {
+        for (int i = 0; i < this.slots.length; i++) {
+            out.append(this.chunks[i]);
+            Slot<T> slot = this.slots[i];
+            String value = String.valueOf(slot.value.apply(model));
+            if (slot.escape) {
+                DSL.escapeHTML(value, out);
+            } else {
+                out.append(value);
+            }
+        }
+        out.append(this.chunks[this.slots.length]);
+    }
+
+    public String render(T model) {
+        StringBuilder sb = new StringBuilder();
+        render(model, Sink.of(sb));
+        return sb.toString();
+    }
+
+    public static final class Slots<T> {
+
+        private final List<Slot<T>> slots = new ArrayList<>();
+
+        private Slots() {
+        }
+
+        // escaped like __(String)
+        public Element text(Function<? super T, ?> value) {
+            return DSL.__u(marker(value, true));
+        }
+
+        // written as is like __u(String)
+        public Element raw(Function<? super T, ?> value) {
+            return DSL.__u(marker(value, false));
+        }
+
+        // attribute values are written as is, like any attribute rendered by DSL
+        public String attr(Function<? super T, ?> value) {
+            return marker(value, false);
+        }
+
+        private String marker(Function<? super T, ?> value, boolean escape) {
+            this.slots.add(new Slot<>(value, escape));
+            return OPEN + Integer.toString(this.slots.size() - 1) + CLOSE;
+        }
+    }
+
+    private static final class Slot<T> {
+
+        private final Function<? super T, ?> value;
+        private final boolean escape;
+
+        Slot(Function<? super T, ?> value, boolean escape) {
+            this.value = value;
+            this.escape = escape;
+        }
+    }
+
+}
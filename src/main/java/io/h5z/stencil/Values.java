@@ -0,0 +1,303 @@
+package io.h5z.stencil;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+
+import io.h5z.stencil.DSL.Value;
+
+/**
+ * The {@link Value} nodes behind {@link DSL#__(long)}, {@link DSL#__u(CharSequence)} and
+ * their overloads. Digits are formatted into a per-thread buffer and appended to the sink
+ * with one call, so rendering a number or an ISO date allocates nothing. Character
+ * sequences, {@code char[]} slices and file regions are referenced, not copied, and are
+ * read when rendered.
+ */
+final class Values {
+
+    private static final ThreadLocal<char[]> DIGITS = ThreadLocal.withInitial(() -> new char[32]);
+
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    // above this the scaled double may be off by more than the rounding margin below
+    private static final double EXACT = 1e9;
+    private static final double MARGIN = 1e-6;
+
+    private Values() {
+        throw new IllegalAccessError();
+    }
+
+    static Value of(long value) {
+        return new Value() {
+            @Override
+            public void writeTo(Sink out) {
+                write(value, out);
+            }
+        };
+    }
+
+    static Value of(double value, int decimals) {
+        checkDecimals(decimals);
+        return new Value() {
+            @Override
+            public void writeTo(Sink out) {
+                write(value, decimals, out);
+            }
+        };
+    }
+
+    static Value of(BigDecimal value) {
+        return new Value() {
+            @Override
+            public void writeTo(Sink out) {
+                out.append(value.toPlainString());
+            }
+        };
+    }
+
+    static Value of(LocalDate value) {
+        return new Value() {
+            @Override
+            public void writeTo(Sink out) {
+                char[] buf = DIGITS.get();
+                int n = date(value, buf, 0);
+                if (n < 0) {
+                    out.append(value.toString());
+                    return;
+                }
+                out.append(buf, 0, n);
+            }
+        };
+    }
+
+    static Value of(LocalTime value) {
+        return new Value() {
+            @Override
+            public void writeTo(Sink out) {
+                char[] buf = DIGITS.get();
+                out.append(buf, 0, time(value, buf, 0));
+            }
+        };
+    }
+
+    static Value of(LocalDateTime value) {
+        return new Value() {
+            @Override
+            public void writeTo(Sink out) {
+                char[] buf = DIGITS.get();
+                int n = date(value.toLocalDate(), buf, 0);
+                if (n < 0) {
+                    out.append(value.toString());
+                    return;
+                }
+                buf[n++] = 'T';
+                out.append(buf, 0, time(value.toLocalTime(), buf, n));
+            }
+        };
+    }
+
+    // formatter output is text and is escaped like any other
+    static Value of(TemporalAccessor value, DateTimeFormatter formatter) {
+        return new Value() {
+            @Override
+            public void writeTo(Sink out) {
+                DSL.escapeHTML(formatter.format(value), out);
+            }
+        };
+    }
+
+    static Value text(CharSequence text) {
+        return new Value() {
+            @Override
+            public void writeTo(Sink out) {
+                DSL.escapeHTML(text, out);
+            }
+        };
+    }
+
+    static Value text(char[] chars, int offset, int length) {
+        checkSlice(chars, offset, length);
+        return new Value() {
+            @Override
+            public void writeTo(Sink out) {
+                Escaper.escape(chars, offset, length, out);
+            }
+        };
+    }
+
+    static Value raw(CharSequence html) {
+        return new RawValue() {
+            @Override
+            public void writeTo(Sink out) {
+                out.append(html);
+            }
+        };
+    }
+
+    static Value raw(char[] chars, int offset, int length) {
+        checkSlice(chars, offset, length);
+        return new RawValue() {
+            @Override
+            public void writeTo(Sink out) {
+                out.append(chars, offset, length);
+            }
+        };
+    }
+
+    // the file is opened on each render, see Sink#appendFile
+    static Value raw(Path file, long position, long size) {
+        if (position < 0 || size < 0) {
+            throw new IllegalArgumentException("invalid region " + position + "+" + size + " of " + file);
+        }
+        return new RawValue() {
+            @Override
+            public void writeTo(Sink out) {
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    if (position + size > channel.size()) {
+                        throw new IllegalStateException(
+                            "region " + position + "+" + size + " is past the end of " + file + " (" + channel.size() + " bytes)");
+                    }
+                    out.appendFile(channel, position, size);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    // content inserted as is, like DSL.Raw
+    abstract static class RawValue extends Value {
+    }
+
+    private static void checkSlice(char[] chars, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > chars.length) {
+            throw new IndexOutOfBoundsException("slice " + offset + "+" + length + " of " + chars.length + " chars");
+        }
+    }
+
+    static void checkDecimals(int decimals) {
+        if (decimals < 0 || decimals >= POW10.length) {
+            throw new IllegalArgumentException("decimals must be between 0 and " + (POW10.length - 1) + ": " + decimals);
+        }
+    }
+
+    static void write(long value, Sink out) {
+        char[] buf = DIGITS.get();
+        int start = digits(value, buf, buf.length);
+        out.append(buf, start, buf.length - start);
+    }
+
+    // writes value right-aligned so that it ends at end, returns where it starts
+    private static int digits(long value, char[] buf, int end) {
+        int i = end;
+        long v = value;
+        // negate into the negative range so that Long.MIN_VALUE works too
+        if (v > 0) {
+            v = -v;
+        }
+        do {
+            buf[--i] = (char) ('0' - v % 10);
+            v /= 10;
+        } while (0 != v);
+        if (value < 0) {
+            buf[--i] = '-';
+        }
+        return i;
+    }
+
+    // writes value left-aligned at offset, zero padded to width
+    private static int padded(int value, int width, char[] buf, int offset) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + width;
+    }
+
+    // yyyy-MM-dd, or -1 for years that LocalDate#toString writes with a sign
+    private static int date(LocalDate date, char[] buf, int offset) {
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            return -1;
+        }
+        int i = padded(year, 4, buf, offset);
+        buf[i++] = '-';
+        i = padded(date.getMonthValue(), 2, buf, i);
+        buf[i++] = '-';
+        return padded(date.getDayOfMonth(), 2, buf, i);
+    }
+
+    // the LocalTime#toString layout: HH:mm, then :ss and a fraction in groups of three digits when set
+    private static int time(LocalTime time, char[] buf, int offset) {
+        int i = padded(time.getHour(), 2, buf, offset);
+        buf[i++] = ':';
+        i = padded(time.getMinute(), 2, buf, i);
+        int second = time.getSecond();
+        int nano = time.getNano();
+        if (0 == second && 0 == nano) {
+            return i;
+        }
+        buf[i++] = ':';
+        i = padded(second, 2, buf, i);
+        if (0 == nano) {
+            return i;
+        }
+        buf[i++] = '.';
+        if (0 == nano % 1_000_000) {
+            return padded(nano / 1_000_000, 3, buf, i);
+        }
+        if (0 == nano % 1_000) {
+            return padded(nano / 1_000, 6, buf, i);
+        }
+        return padded(nano, 9, buf, i);
+    }
+
+    // same digits as BigDecimal.valueOf(value).setScale(decimals, HALF_UP).toPlainString();
+    // values too large or too close to a tie for double arithmetic go through BigDecimal
+    static void write(double value, int decimals, Sink out) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append(Double.toString(value));
+            return;
+        }
+        double scaled = Math.abs(value) * POW10[decimals];
+        double floor = Math.floor(scaled);
+        double fraction = scaled - floor;
+        if (scaled >= EXACT || Math.abs(fraction - 0.5) <= MARGIN) {
+            out.append(BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+            return;
+        }
+        long units = (long) floor + (fraction > 0.5 ? 1 : 0);
+        char[] buf = DIGITS.get();
+        int start = buf.length;
+        if (decimals > 0) {
+            long fractional = units % POW10[decimals];
+            for (int d = 0; d < decimals; d++) {
+                buf[--start] = (char) ('0' + fractional % 10);
+                fractional /= 10;
+            }
+            buf[--start] = '.';
+        }
+        start = digits(units / POW10[decimals], buf, start);
+        if (value < 0 && 0 != units) {
+            buf[--start] = '-';
+        }
+        out.append(buf, start, buf.length - start);
+    }
+
+}
@@ -0,0 +1,25 @@
+package io.h5z.stencil;
+
+/**
+ * Little-endian word loads from byte arrays. Java 8 has no intrinsic for this outside of
+ * {@code Unsafe}, so the bytes are assembled by hand; the multi-release JAR carries a
+ * {@code VarHandle} version of this class for Java 9 and later (src/main/java9).
+ */
+final class Words {
+
+    private Words() {
+        throw new IllegalAccessError();
+    }
+
+    static long getLong(byte[] bytes, int index) {
+        return (bytes[index] & 0xffL)
+            | (bytes[index + 1] & 0xffL) << 8
+            | (bytes[index + 2] & 0xffL) << 16
+            | (bytes[index + 3] & 0xffL) << 24
+            | (bytes[index + 4] & 0xffL) << 32
+            | (bytes[index + 5] & 0xffL) << 40
+            | (bytes[index + 6] & 0xffL) << 48
+            | (bytes[index + 7] & 0xffL) << 56;
+    }
+
+}
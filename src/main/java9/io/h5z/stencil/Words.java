@@ -0,0 +1,23 @@
+package io.h5z.stencil;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Java 9+ version of {@code Words}, packaged under META-INF/versions/9: the view
+ * {@link VarHandle} compiles to a single unaligned 64-bit load.
+ */
+final class Words {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private Words() {
+        throw new IllegalAccessError();
+    }
+
+    static long getLong(byte[] bytes, int index) {
+        return (long) LONGS.get(bytes, index);
+    }
+
+}
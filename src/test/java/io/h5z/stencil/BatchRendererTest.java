@@ -0,0 +1,152 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BatchRendererTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Element> page(int i) {
+        return Collections.singletonList(div(attrs(id("d" + i)), p("n < " + i)));
+    }
+
+    @Test(timeout = 10_000)
+    public void callsOrderedOutputsInInputOrder() {
+        List<String> outputs = new ArrayList<>();
+        BatchRenderer<Integer> renderer = BatchRenderer.<Integer>builder(BatchRendererTest::page)
+            .threads(4).queueCapacity(2).bufferSize(0).ordered(true).build();
+        BatchRenderer.Stats stats = renderer.render(IntStream.range(0, 200).boxed(), (index, input, html) -> {
+            assertEquals((long) input, index);
+            outputs.add(html.toString());
+        });
+
+        assertEquals(200, outputs.size());
+        long chars = 0;
+        for (int i = 0; i < 200; i++) {
+            assertEquals(DSL.render(page(i)), outputs.get(i));
+            chars += outputs.get(i).length();
+        }
+        assertEquals(200, stats.documents());
+        assertEquals(0, stats.failures());
+        assertEquals(chars, stats.chars());
+    }
+
+    @Test(timeout = 10_000)
+    public void rendersEveryInputWithoutOrdering() {
+        Map<Long, String> outputs = new ConcurrentHashMap<>();
+        BatchRenderer<Integer> renderer = BatchRenderer.<Integer>builder(BatchRendererTest::page).threads(3).build();
+        BatchRenderer.Stats stats = renderer.render(IntStream.range(0, 500).boxed(),
+            (index, input, html) -> outputs.put(index, html.toString()));
+
+        assertEquals(500, outputs.size());
+        outputs.forEach((index, html) -> assertEquals(DSL.render(page(index.intValue())), html));
+        assertEquals(500, stats.documents());
+        assertTrue(stats.latencyNanos(50) <= stats.latencyNanos(99));
+        assertTrue(stats.latencyNanos(99) <= stats.maxLatencyNanos());
+        assertTrue(stats.elapsedNanos() > 0);
+        assertTrue(stats.documentsPerSecond() > 0);
+        assertTrue(stats.toString().startsWith("500 documents (0 failed)"));
+    }
+
+    @Test(timeout = 10_000)
+    public void stopsOnTheFirstFailureWithoutAHandler() {
+        IllegalStateException boom = new IllegalStateException("boom");
+        BatchRenderer<Integer> renderer = BatchRenderer.<Integer>builder(i -> {
+            if (13 == i) {
+                throw boom;
+            }
+            return page(i);
+        }).threads(2).ordered(true).build();
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+            () -> renderer.render(IntStream.range(0, 100).boxed(), (index, input, html) -> { }));
+        assertSame(boom, thrown);
+
+        BatchRenderer<Integer> writing = BatchRenderer.<Integer>builder(BatchRendererTest::page).threads(2).build();
+        assertThrows(IllegalArgumentException.class, () -> writing.render(IntStream.range(0, 100).boxed(), (index, input, html) -> {
+            if (50 == input) {
+                throw new IllegalArgumentException("disk full");
+            }
+        }));
+    }
+
+    @Test(timeout = 10_000)
+    public void passesFailuresToTheHandler() {
+        Map<Integer, RuntimeException> failed = new ConcurrentHashMap<>();
+        BatchRenderer<Integer> renderer = BatchRenderer.<Integer>builder(i -> {
+            if (0 == i % 10) {
+                throw new IllegalStateException("input " + i);
+            }
+            return page(i);
+        }).threads(4).ordered(true).onError(failed::put).build();
+        List<Long> indexes = new ArrayList<>();
+        BatchRenderer.Stats stats = renderer.render(IntStream.range(0, 100).boxed(), (index, input, html) -> indexes.add(index));
+
+        assertEquals(10, failed.size());
+        assertEquals("input 30", failed.get(30).getMessage());
+        assertEquals(10, stats.failures());
+        assertEquals(90, stats.documents());
+        assertEquals(90, indexes.size());
+        for (int i = 1; i < indexes.size(); i++) {
+            assertTrue(indexes.get(i - 1) < indexes.get(i));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void rethrowsFatalErrors() {
+        BatchRenderer<Integer> renderer = BatchRenderer.<Integer>builder(i -> {
+            if (7 == i) {
+                throw new OutOfMemoryError("fake");
+            }
+            return page(i);
+        }).threads(2).ordered(true).onError((input, e) -> { }).build();
+        OutOfMemoryError error = assertThrows(OutOfMemoryError.class,
+            () -> renderer.render(IntStream.range(0, 1_000).boxed(), (index, input, html) -> { }));
+        assertEquals("fake", error.getMessage());
+    }
+
+    @Test
+    public void rejectsInvalidSettings() {
+        BatchRenderer.Builder<Integer> builder = BatchRenderer.builder(BatchRendererTest::page);
+        assertThrows(IllegalArgumentException.class, () -> builder.threads(0));
+        assertThrows(IllegalArgumentException.class, () -> builder.queueCapacity(0));
+        assertThrows(IllegalArgumentException.class, () -> builder.bufferSize(-1));
+    }
+
+    @Test(timeout = 10_000)
+    public void writesFiles() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        BatchRenderer<String> renderer = BatchRenderer.<String>builder(s -> Collections.singletonList(p(s)))
+            .threads(2).bufferSize(4).build();
+        char[] big = new char[40_000];
+        Arrays.fill(big, '日');
+        List<String> inputs = Arrays.asList("café", new String(big), "");
+        renderer.render(inputs, BatchRenderer.Output.files(directory, s -> s.length() + ".html"));
+
+        for (String input : inputs) {
+            byte[] bytes = Files.readAllBytes(directory.resolve(input.length() + ".html"));
+            assertEquals(DSL.render(p(input)), new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChannelSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesWhatRenderWrites() throws IOException {
+        Path file = folder.newFile("app.js").toPath();
+        Files.write(file, "let s = '<é>';".getBytes(StandardCharsets.UTF_8));
+        char[] chars = new char[10_000];
+        Arrays.fill(chars, 'é');
+        Element page = html(
+            head(script(__u(file))),
+            body(
+                p(__(new StringBuilder("a < b"))),
+                div(__(chars, 0, chars.length)),
+                div(__u(chars, 100, 5_000)),
+                new Frozen("<i>frozen ☃</i>"),
+                p("😀 and \uD83D alone")));
+
+        assertArrayEquals(utf8(page), channel(page));
+    }
+
+    @Test
+    public void keepsTextAroundBytesInOrder() throws IOException {
+        Path file = folder.newFile("region.html").toPath();
+        Files.write(file, "<hr>".getBytes(StandardCharsets.UTF_8));
+        for (String before : Arrays.asList("", "x", "\uD83D", "x\uD83D", "😀")) {
+            Element page = div(__u(before), new Frozen("<f>"), __u(before), __u(file), __u("\uDE00"));
+            assertArrayEquals(before, utf8(page), channel(page));
+        }
+    }
+
+    @Test
+    public void transfersFileRegions() throws IOException {
+        Path file = folder.newFile("big.html").toPath();
+        byte[] content = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        Files.write(file, content);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelSink sink = new ChannelSink(Channels.newChannel(out));
+        sink.append("<pre>");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            sink.appendFile(channel, 10, content.length - 20);
+        }
+        sink.append("</pre>");
+        sink.flush();
+
+        assertEquals(5 + content.length - 20 + 6, sink.written());
+        byte[] bytes = out.toByteArray();
+        assertEquals(sink.written(), bytes.length);
+        assertArrayEquals(Arrays.copyOfRange(content, 10, content.length - 10), Arrays.copyOfRange(bytes, 5, bytes.length - 6));
+    }
+
+    @Test
+    public void failsOnAFileShorterThanTheRegion() throws IOException {
+        Path file = folder.newFile("short.html").toPath();
+        Files.write(file, "<hr>".getBytes(StandardCharsets.UTF_8));
+        ChannelSink sink = new ChannelSink(Channels.newChannel(new ByteArrayOutputStream()));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertThrows(java.io.UncheckedIOException.class, () -> sink.appendFile(channel, 2, 4));
+        }
+    }
+
+    @Test
+    public void decodesFileRegionsIntoCharSinks() throws IOException {
+        Path file = folder.newFile("utf8.html").toPath();
+        Files.write(file, "<p>日本</p>".getBytes(StandardCharsets.UTF_8));
+        assertEquals("<p>日本</p>", DSL.render(__u(file)));
+        assertEquals("日", DSL.render(__u(file, 3, 3)));
+    }
+
+    private static byte[] utf8(Element element) {
+        return DSL.render(element).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] channel(Element element) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChannelSink sink = new ChannelSink(Channels.newChannel(out));
+        new Renderer(sink, null).render(element);
+        sink.close();
+        assertEquals(out.size(), sink.written());
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,87 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ClassSetTest {
+
+    @Test
+    public void splitsAndDeduplicatesInOrder() {
+        ClassSet set = ClassSet.of("card  shadow", "\tcard", "active\n", "");
+        assertEquals(Arrays.asList("card", "shadow", "active"), set.names());
+        assertEquals("card shadow active", set.getValue());
+        assertEquals("class", set.getKey());
+        assertEquals(3, set.size());
+        assertTrue(set.contains("shadow"));
+        assertFalse(set.contains("card shadow"));
+        assertEquals(0, ClassSet.of(" ", "").size());
+        assertThrows(UnsupportedOperationException.class, () -> set.names().add("x"));
+        assertThrows(UnsupportedOperationException.class, () -> set.setValue("x"));
+    }
+
+    @Test
+    public void sharesSetsWithTheSameNames() {
+        ClassSet set = ClassSet.of("test-a", "test-b");
+        assertSame(set, ClassSet.of("test-a test-b"));
+        assertSame(set, ClassSet.of(Arrays.asList("test-a", "test-b", "test-a")));
+        assertSame(set.names().get(0), ClassSet.of(new String("test-a")).names().get(0));
+    }
+
+    @Test
+    public void addsAndRemovesNames() {
+        ClassSet set = ClassSet.of("card", "shadow");
+        assertEquals("card shadow active", set.with("active").getValue());
+        assertSame(set, set.with("card"));
+        assertEquals("shadow", set.without("card").getValue());
+        assertSame(set, set.without("missing"));
+        assertEquals("card shadow", set.getValue());
+    }
+
+    @Test
+    public void equalsAnyClassEntry() {
+        ClassSet set = ClassSet.of("a", "b");
+        assertEquals(set, classes("a", "b"));
+        assertEquals(new SimpleEntry<>("class", "a b"), set);
+        assertEquals(new SimpleEntry<>("class", "a b").hashCode(), set.hashCode());
+        assertFalse(set.equals(classes("b", "a")));
+        assertFalse(set.equals(attr("id", "a b")));
+    }
+
+    @Test
+    public void rendersLikeAClassAttribute() {
+        ClassSet set = ClassSet.of("card", "<x>");
+        assertEquals(DSL.render(div(attrs(classes("card", "<x>")), p("a"))), DSL.render(div(attrs(set), p("a"))));
+        assertEquals(DSL.render(li(attrs(classes("card", "<x>")), "b")), DSL.render(li(set.selector(), "b")));
+        assertEquals(DSL.render(div(attrs(classes("card", "<x>"), id("i")))), DSL.render(div(attrs(set, id("i")))));
+    }
+
+    @Test
+    public void aLoneSetGivesAnImmutableSelector() {
+        ClassSet set = ClassSet.of("card");
+        Map<String, String> attrs = attrs(set);
+        assertSame(set.selector(), attrs);
+        assertEquals(Collections.singletonMap("class", "card"), attrs);
+        assertThrows(UnsupportedOperationException.class, () -> attrs.put("id", "x"));
+
+        Map<String, String> copy = new HashMap<>(attrs(set));
+        copy.put("id", "x");
+        assertEquals(attrs(classes("card"), id("x")), copy);
+
+        Map<String, String> mixed = attrs(set, id("y"));
+        mixed.put("title", "t");
+        assertEquals(3, mixed.size());
+    }
+
+}
@@ -0,0 +1,70 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CompactDocumentTest {
+
+    @Test
+    public void rendersLikeTheTreeItWasBuiltFrom() {
+        List<Element> page = Arrays.asList(
+            new DocType(DocTypeValue.HTML5),
+            html(
+                head(title("Compact")),
+                body(
+                    div(attrs(classes("card", "shadow"), attr("data-id", "7")),
+                        p("a < b & c"),
+                        __u("<b>raw</b>"),
+                        __("escaped <text>")),
+                    input(attrs(id("q"), attr("type", "search"))))));
+
+        assertEquals(render(page), render(CompactDocument.of(page)));
+        assertEquals(render(page), CompactDocument.of(page).toString());
+    }
+
+    @Test
+    public void escapesTextButNotRawText() {
+        CompactDocument document = CompactDocument.builder()
+            .element("p")
+            .text("<script>alert(1)</script>")
+            .rawText("<b>bold</b>")
+            .close()
+            .build();
+
+        assertEquals(render(p(__("<script>alert(1)</script>"), __u("<b>bold</b>"))), document.toString());
+    }
+
+    @Test
+    public void writesRawAttributesAsGiven() {
+        CompactDocument document = CompactDocument.builder()
+            .element("a")
+            .rawAttr("href", "/search?q=a&amp;b")
+            .rawAttr("hidden", null)
+            .text("link")
+            .close()
+            .voidElement("br")
+            .build();
+
+        assertEquals("<a href=\"/search?q=a&amp;b\" hidden>link</a><br >", document.toString());
+    }
+
+    @Test
+    public void rejectsMisplacedNodes() {
+        assertThrows(IllegalStateException.class,
+            () -> CompactDocument.builder().rawAttr("id", "x"));
+        assertThrows(IllegalStateException.class,
+            () -> CompactDocument.builder().element("p").text("t").rawAttr("id", "x"));
+        assertThrows(IllegalStateException.class,
+            () -> CompactDocument.builder().close());
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+            () -> CompactDocument.builder().element("div").element("p").build());
+        assertEquals("2 element(s) left open", e.getMessage());
+    }
+
+}
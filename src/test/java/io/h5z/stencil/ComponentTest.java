@@ -0,0 +1,115 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ComponentTest {
+
+    @Test
+    public void usesWithEqualPropsAreEqual() {
+        Component<String> card = component("test-card", p -> div(".card", __(p)));
+        Component<String> other = component("test-other", p -> div(".card", __(p)));
+
+        assertEquals(card.with("a"), card.with(new String("a")));
+        assertEquals(card.with("a").hashCode(), card.with(new String("a")).hashCode());
+        assertEquals(card.with(null), card.with(null));
+        assertNotEquals(card.with("a"), card.with("b"));
+        assertNotEquals(card.with("a"), other.with("a"));
+    }
+
+    @Test
+    public void diffSkipsUnchangedUses() {
+        Component<String> card = component("test-diff-card", p -> div(".card", __(p)));
+
+        assertTrue(Diff.diff(div(card.with("a"), p("x")), div(card.with("a"), p("x"))).isEmpty());
+        List<Diff.Patch> patches = Diff.diff(div(card.with("a")), div(card.with("b")));
+        assertEquals(1, patches.size());
+        assertEquals(Diff.Op.REPLACE, patches.get(0).op());
+    }
+
+    @Test
+    public void registeringANameAgainReplacesTheComponent() {
+        Component.Cache cache = new Component.Cache(100, 1_000_000);
+        Component<String> first = component("test-reloaded", p -> p(p), cache);
+        DSL.render(first.with("a"));
+        assertEquals(1, cache.size());
+
+        Component<String> second = component("test-reloaded", p -> span(p), cache);
+        assertSame(second, DSL.components().get("test-reloaded"));
+        assertEquals(0, cache.size());
+        assertEquals("<span >a</span>", DSL.render(second.with("a")));
+    }
+
+    @Test
+    public void cacheStaysWithinItsBounds() {
+        Component.Cache cache = new Component.Cache(32, 1_000_000);
+        Component<Integer> item = component("test-bounded", i -> li(__(i)), cache);
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals("<li >" + i + "</li>", DSL.render(item.with(i)));
+        }
+        assertTrue(cache.size() <= 32);
+        assertTrue(cache.size() > 0);
+
+        Component.Cache small = new Component.Cache(1_000, 100);
+        Component<Integer> row = component("test-small", i -> p(__(i)), small);
+        for (int i = 0; i < 1_000; i++) {
+            DSL.render(row.with(i));
+        }
+        assertTrue(small.chars() <= 100);
+        assertEquals(0, new Component.Cache(0, 0).size());
+    }
+
+    @Test
+    public void invalidatesOneOrAllProps() {
+        Component.Cache cache = new Component.Cache(100, 1_000_000);
+        Component<String> card = component("test-invalidate", p -> p(p), cache);
+        DSL.render(div(card.with("a"), card.with("b"), card.with("a")));
+        assertEquals(2, cache.size());
+        assertEquals(1, card.hits());
+
+        card.invalidate("a");
+        assertEquals(1, cache.size());
+        card.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.chars());
+    }
+
+    @Test
+    public void rendersConcurrently() throws Exception {
+        Component.Cache cache = new Component.Cache(64, 1_000_000);
+        Component<Integer> item = component("test-concurrent", i -> li(__(i)), cache);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        int props = i % 200;
+                        assertEquals("<li >" + props + "</li>", DSL.render(item.with(props)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertTrue(cache.size() <= 64);
+        assertEquals(40_000, item.hits() + item.misses());
+    }
+
+}
@@ -0,0 +1,127 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class DataTableTest {
+
+    static final class Order {
+        final long id;
+        final String customer;
+        final double total;
+
+        Order(long id, String customer, double total) {
+            this.id = id;
+            this.customer = customer;
+            this.total = total;
+        }
+    }
+
+    private static final List<Order> ORDERS = Arrays.asList(
+        new Order(1, "Ada <Lovelace>", 12.5),
+        new Order(2, null, 0.125),
+        new Order(3, "Émile", -3));
+
+    @Test
+    public void rendersColumnByColumn() {
+        DataTable<Order> table = dataTable(attrs(classes("orders")), ORDERS)
+            .number("Id", o -> o.id)
+            .text("Customer", o -> o.customer)
+            .decimal("Total", attrs(classes("num")), o -> o.total, 2)
+            .cell("Link", o -> a(attrs(attr("href", "/orders/" + o.id)), "open"));
+
+        assertEquals("<table class=\"orders\">"
+            + "<thead ><tr ><th >Id</th><th >Customer</th><th >Total</th><th >Link</th></tr></thead>"
+            + "<tbody >"
+            + "<tr ><td >1</td><td >Ada &#60;Lovelace&#62;</td><td class=\"num\">12.50</td><td ><a href=\"/orders/1\">open</a></td></tr>"
+            + "<tr ><td >2</td><td ></td><td class=\"num\">0.13</td><td ><a href=\"/orders/2\">open</a></td></tr>"
+            + "<tr ><td >3</td><td >&#201;mile</td><td class=\"num\">-3.00</td><td ><a href=\"/orders/3\">open</a></td></tr>"
+            + "</tbody></table>", DSL.render(table));
+    }
+
+    @Test
+    public void rendersLikeItsElementTree() {
+        DataTable<Order> table = dataTable(ORDERS)
+            .number("Id", attrs(id("id")), o -> o.id)
+            .text("Customer", o -> o.customer)
+            .decimal("Total", o -> o.total, 1);
+
+        assertEquals(DSL.render(table.element()), DSL.render(table));
+        assertEquals(DSL.render(div(table.element())), DSL.render(div(table)));
+    }
+
+    @Test
+    public void readsColumnArraysAtTheRowNumber() {
+        DataTable<Void> table = dataTable(3)
+            .number("Id", new long[] { 10, 20, 30 })
+            .number("Qty", new int[] { 1, 2, 3, 4 })
+            .decimal("Price", new double[] { 1, 2.345, 3.5 }, 2)
+            .text("Name", new CharSequence[] { "a", "<b>", null });
+
+        assertEquals(DSL.render(table.element()), DSL.render(table));
+        assertTrue(DSL.render(table).contains("<tr ><td >20</td><td >2</td><td >2.35</td><td >&#60;b&#62;</td></tr>"));
+        assertThrows(IllegalArgumentException.class, () -> dataTable(3).number("Id", new long[2]));
+        assertThrows(IllegalArgumentException.class, () -> dataTable(-1));
+    }
+
+    @Test
+    public void rendersAnEmptyTable() {
+        DataTable<Order> table = dataTable(Collections.<Order>emptyList()).number("Id", o -> o.id);
+        assertEquals("<table ><thead ><tr ><th >Id</th></tr></thead><tbody ></tbody></table>", DSL.render(table));
+        assertEquals(DSL.render(table.element()), DSL.render(table));
+    }
+
+    @Test
+    public void readsAnIteratorOnce() {
+        Iterator<Order> rows = ORDERS.iterator();
+        DataTable<Order> table = dataTable(rows).number("Id", o -> o.id);
+
+        assertTrue(DSL.render(table).contains("<td >3</td>"));
+        assertThrows(IllegalStateException.class, () -> DSL.render(table));
+    }
+
+    @Test
+    public void rendersAnIterableAgain() {
+        DataTable<Order> table = dataTable(ORDERS).number("Id", o -> o.id);
+        assertEquals(DSL.render(table), DSL.render(table));
+    }
+
+    @Test
+    public void reencodesAfterAColumnIsAdded() {
+        DataTable<Order> table = dataTable(ORDERS).number("Id", o -> o.id);
+        DSL.render(table);
+        table.text("Customer", attrs(classes("c")), o -> o.customer);
+        assertTrue(DSL.render(table).contains("<th >Customer</th>"));
+        assertTrue(DSL.render(table).contains("<td class=\"c\">&#201;mile</td>"));
+    }
+
+    @Test
+    public void otherVisitorsSeeTheElementTree() {
+        DataTable<Order> table = dataTable(ORDERS)
+            .number("Id", o -> o.id)
+            .text("Customer", o -> o.customer);
+
+        assertEquals(minified(table.element()), minified(table));
+        assertTrue(Diff.diff(div(table), div(dataTable(ORDERS).number("Id", o -> o.id).text("Customer", o -> o.customer))).isEmpty());
+        List<Diff.Patch> patches = Diff.diff(div(table),
+            div(dataTable(ORDERS).number("Id", o -> o.id).text("Customer", o -> "x")));
+        assertEquals(3, patches.size());
+        assertEquals("[0, 1, 0, 1, 0]", Arrays.toString(patches.get(0).path()));
+    }
+
+    private static String minified(Element element) {
+        StringBuilder sb = new StringBuilder();
+        new MinifyingRenderer(Sink.of(sb)).render(element);
+        return sb.toString();
+    }
+
+}
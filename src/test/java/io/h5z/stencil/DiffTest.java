@@ -0,0 +1,114 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.h5z.stencil.Diff.Patch;
+
+public class DiffTest {
+
+    @Test
+    public void givesNoPatchesForEqualTrees() {
+        Element page = div(attrs(id("a")), ul(li("x"), li(__(1L))), dataTable(Arrays.asList("r")).text("Name", s -> s));
+        assertTrue(Diff.diff(page, page).isEmpty());
+        assertTrue(Diff.diff(page,
+            div(attrs(id("a")), ul(li("x"), li(__(1L))), dataTable(Arrays.asList("r")).text("Name", s -> s))).isEmpty());
+    }
+
+    @Test
+    public void replacesTheParentOfAnInsertedNode() {
+        List<Patch> patches = Diff.diff(
+            div(p("a"), ul(li("1"))),
+            div(p("a"), ul(li("1"), li("2"))));
+        assertEquals(1, patches.size());
+        assertEquals(Diff.Op.REPLACE, patches.get(0).op());
+        assertEquals("[1]", Arrays.toString(patches.get(0).path()));
+        assertEquals("<ul ><li >1</li><li >2</li></ul>", patches.get(0).html());
+    }
+
+    @Test
+    public void replacesTheParentOfARemovedNode() {
+        List<Patch> patches = Diff.diff(
+            div(p("a"), ul(li("1"), li("2"))),
+            div(p("a"), ul(li("2"))));
+        // markup in JSON strings is escaped, so that it can be inlined in a script
+        assertEquals("[{\"op\":\"replace\",\"path\":[1],\"html\":\"\\u003cul >\\u003cli >2\\u003c/li>\\u003c/ul>\"}]",
+            Diff.toJson(patches));
+        assertEquals("<template data-op=\"replace\" data-path=\"1\"><ul ><li >2</li></ul></template>", Diff.toHtml(patches));
+    }
+
+    @Test
+    public void patchesChangedAttributes() {
+        Map<String, String> before = new LinkedHashMap<>();
+        before.put("id", "x");
+        before.put("class", "a");
+        before.put("hidden", null);
+        Map<String, String> after = new LinkedHashMap<>();
+        after.put("id", "y");
+        after.put("hidden", null);
+        after.put("disabled", null);
+        List<Patch> patches = Diff.diff(div(p("t"), input(before)), div(p("t"), input(after)));
+
+        assertEquals("[{\"op\":\"attr\",\"path\":[1],\"name\":\"id\",\"value\":\"y\"},"
+            + "{\"op\":\"attr\",\"path\":[1],\"name\":\"disabled\",\"value\":null},"
+            + "{\"op\":\"removeAttr\",\"path\":[1],\"name\":\"class\"}]", Diff.toJson(patches));
+        assertEquals("<template data-op=\"attr\" data-path=\"1\" data-name=\"id\">y</template>"
+            + "<template data-op=\"attr\" data-path=\"1\" data-name=\"disabled\" data-boolean></template>"
+            + "<template data-op=\"removeAttr\" data-path=\"1\" data-name=\"class\"></template>", Diff.toHtml(patches));
+    }
+
+    @Test
+    public void replacesChangedText() {
+        List<Patch> patches = Diff.diff(div(p("a"), p("b < c")), div(p("a"), p("b > c")));
+        assertEquals(1, patches.size());
+        Patch patch = patches.get(0);
+        assertEquals(Diff.Op.REPLACE_TEXT, patch.op());
+        assertEquals("[1, 0]", Arrays.toString(patch.path()));
+        assertEquals("b &#62; c", patch.html());
+    }
+
+    @Test
+    public void comparesTextAndValuesByTheirMarkup() {
+        assertTrue(Diff.diff(p(__(42L)), p(__u("42"))).isEmpty());
+        assertTrue(Diff.diff(p(__(new StringBuilder("a < b"))), p("a < b")).isEmpty());
+        assertEquals("[{\"op\":\"text\",\"path\":[0],\"html\":\"43\"}]", Diff.toJson(Diff.diff(p(__(42L)), p(__(43L)))));
+    }
+
+    @Test
+    public void expandsLazyAndEachRoots() {
+        AtomicInteger built = new AtomicInteger();
+        List<Patch> patches = Diff.diff(
+            lazy(() -> div(attrs(id("a" + built.incrementAndGet())), p("x"))),
+            lazy(() -> div(attrs(id("a" + built.incrementAndGet())), p("x"))));
+        assertEquals("[{\"op\":\"attr\",\"path\":[],\"name\":\"id\",\"value\":\"a2\"}]", Diff.toJson(patches));
+        assertEquals(2, built.get());
+
+        List<String> items = Arrays.asList("a", "b");
+        assertTrue(Diff.diff(each(items, s -> li(s)), each(items, s -> li(s))).isEmpty());
+        List<Patch> changed = Diff.diff(each(items, s -> li(s)), each(Arrays.asList("a", "c"), s -> li(s)));
+        assertEquals(1, changed.size());
+        assertEquals("replace [] <li >a</li><li >c</li>", changed.get(0).toString());
+        assertEquals("[{\"op\":\"replace\",\"path\":[],\"html\":\"\"}]",
+            Diff.toJson(Diff.diff(each(items, s -> li(s)), each(Collections.<String>emptyList(), s -> li(s)))));
+    }
+
+    @Test
+    public void diffsDocumentsRootByRoot() {
+        List<Patch> patches = Diff.diff(html5(body(p("a"))), html5(body(p("b"))));
+        assertEquals("[{\"op\":\"text\",\"path\":[1,0,0,0],\"html\":\"b\"}]", Diff.toJson(patches));
+        assertThrows(IllegalArgumentException.class,
+            () -> Diff.diff(Arrays.asList(p("a")), Arrays.asList(p("a"), p("b"))));
+    }
+
+}
@@ -0,0 +1,187 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ElementCodecTest {
+
+    @Test
+    public void roundTripsEveryNodeKind() {
+        List<Element> page = Arrays.asList(
+            new DocType(DocTypeValue.HTML5),
+            html(
+                head(title("Codec")),
+                body(
+                    named("card", div(attrs(classes("card", "shadow")), p("text"))),
+                    input(attrs(id("q"), attr("type", "search"))),
+                    __u("<b>raw</b>"),
+                    new Frozen("<i>frozen</i>"),
+                    __("escaped <text> & more"))));
+
+        assertRoundTrip(page);
+    }
+
+    @Test
+    public void roundTripsAttributes() {
+        Map<String, String> attrs = new LinkedHashMap<>();
+        attrs.put("id", "main");
+        attrs.put("disabled", null);
+        attrs.put("data-empty", "");
+        attrs.put("title", "café 日本");
+        List<Element> page = Collections.singletonList(
+            div(attrs, Arrays.asList(span(Selector.of("#x.a.b"), Collections.emptyList()))));
+
+        List<Element> decoded = assertRoundTrip(page);
+        HTMLElement div = (HTMLElement) decoded.get(0);
+        assertEquals(Arrays.asList("id", "disabled", "data-empty", "title"), Arrays.asList(div.attributes().keySet().toArray()));
+        assertTrue(div.attributes().containsKey("disabled"));
+        assertEquals(null, div.attributes().get("disabled"));
+    }
+
+    @Test
+    public void roundTripsNonAsciiText() {
+        String text = "été — 日本語 😀 \u0000";
+        assertRoundTrip(Arrays.asList(p(__u(text)), p(text), __u(text)));
+    }
+
+    @Test
+    public void roundTripsLongAndRepeatedStrings() {
+        char[] chars = new char[70_000];
+        Arrays.fill(chars, 'x');
+        String big = new String(chars);
+        assertRoundTrip(Arrays.asList(div(__u(big)), div(__u(big)), div(attrs(attr("data-big", big)))));
+    }
+
+    @Test
+    public void rendersValuesAndTablesAsTheirMarkup() {
+        List<Element> page = Arrays.asList(
+            td(42L),
+            __u(new StringBuilder("<hr>")),
+            dataTable(Arrays.asList(1, 2)).number("n", i -> i));
+
+        ByteBuffer encoded = ElementCodec.encode(page);
+        assertEquals(DSL.render(page), DSL.render(ElementCodec.decode(encoded)));
+    }
+
+    @Test
+    public void decodesIntoADirectBuffer() {
+        List<Element> page = Arrays.asList(div(attrs(id("a")), p("café")), div(attrs(id("a")), p("café")));
+        ByteBuffer heap = ElementCodec.encode(page);
+        ByteBuffer direct = ByteBuffer.allocateDirect(heap.remaining());
+        direct.put(heap).flip();
+        assertEquals(page, ElementCodec.decode(direct));
+    }
+
+    @Test
+    public void encodesIntoAGivenBuffer() {
+        List<Element> page = Collections.singletonList(div(p("a")));
+        ByteBuffer out = ByteBuffer.allocate(256);
+        ElementCodec.encode(page, out);
+        out.flip();
+        byte[] bytes = new byte[out.remaining()];
+        out.get(bytes);
+
+        ByteBuffer encoded = ElementCodec.encode(page);
+        byte[] expected = new byte[encoded.remaining()];
+        encoded.get(expected);
+        assertArrayEquals(expected, bytes);
+    }
+
+    @Test
+    public void rejectsOtherInput() {
+        assertThrows(IllegalArgumentException.class,
+            () -> ElementCodec.decode(ByteBuffer.wrap("<html>".getBytes())));
+        ByteBuffer encoded = ElementCodec.encode(div());
+        encoded.put(4, (byte) (ElementCodec.VERSION + 1));
+        assertThrows(IllegalArgumentException.class, () -> ElementCodec.decode(encoded));
+    }
+
+    @Test
+    public void rejectsTruncatedInput() {
+        ByteBuffer encoded = ElementCodec.encode(div(attrs(id("main")), p("some text")));
+        for (int length = 0; length < encoded.remaining(); length++) {
+            ByteBuffer truncated = encoded.duplicate();
+            truncated.limit(length);
+            assertThrows("length " + length, IllegalArgumentException.class, () -> ElementCodec.decode(truncated));
+        }
+    }
+
+    // any corruption is an IllegalArgumentException or decodes to some tree, never anything else
+    @Test
+    public void rejectsCorruptInputWithOneException() {
+        ByteBuffer encoded = ElementCodec.encode(
+            new DocType(DocTypeValue.HTML5),
+            named("n", div(attrs(id("a"), attr("b", null)), p("café"), __u("<br>"), new Frozen("f"))));
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        Random random = new Random(34);
+        for (int i = 0; i < 20_000; i++) {
+            byte[] corrupt = bytes.clone();
+            for (int j = random.nextInt(3); j >= 0; j--) {
+                corrupt[5 + random.nextInt(corrupt.length - 5)] = (byte) random.nextInt(256);
+            }
+            try {
+                ElementCodec.decode(ByteBuffer.wrap(corrupt));
+            } catch (IllegalArgumentException expected) {
+                // documented failure
+            }
+        }
+    }
+
+    @Test
+    public void rejectsNestingDeeperThanTheLimit() {
+        Element deep = p("leaf");
+        // the text in p is the deepest node
+        for (int i = 2; i < ElementCodec.MAX_DEPTH; i++) {
+            deep = i % 2 == 0 ? div(deep) : named("n" + i, deep);
+        }
+        assertRoundTrip(Collections.singletonList(deep));
+        ByteBuffer tooDeep = ElementCodec.encode(div(deep));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> ElementCodec.decode(tooDeep));
+        assertTrue(e.getMessage().endsWith("nesting too deep"));
+
+        // a million open elements: an IllegalArgumentException, not a StackOverflowError
+        byte[] bytes = new byte[5 + 3 * 1_000_000];
+        System.arraycopy(new byte[] { 'S', 'T', 'N', 'C', (byte) ElementCodec.VERSION }, 0, bytes, 0, 5);
+        int div = (ElementCodec.DICTIONARY.indexOf("div") + 1) << 1;
+        for (int i = 5; i < bytes.length; i += 3) {
+            bytes[i] = 1;
+            bytes[i + 1] = (byte) div;
+        }
+        assertThrows(IllegalArgumentException.class, () -> ElementCodec.decode(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    public void readsDocumentsBackToBack() {
+        ByteBuffer first = ElementCodec.encode(p("one"));
+        ByteBuffer second = ElementCodec.encode(p("two"));
+        ByteBuffer both = ByteBuffer.allocate(first.remaining() + second.remaining());
+        both.put(first).put(second).flip();
+
+        assertEquals(Collections.singletonList(p("one")), ElementCodec.decode(both));
+        assertEquals(Collections.singletonList(p("two")), ElementCodec.decode(both));
+        assertFalse(both.hasRemaining());
+    }
+
+    private static List<Element> assertRoundTrip(List<Element> page) {
+        List<Element> decoded = ElementCodec.decode(ElementCodec.encode(page));
+        assertEquals(page, decoded);
+        assertEquals(DSL.render(page), DSL.render(decoded));
+        return decoded;
+    }
+
+}
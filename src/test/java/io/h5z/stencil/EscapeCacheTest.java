@@ -0,0 +1,132 @@
+package io.h5z.stencil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class EscapeCacheTest {
+
+    @Test
+    public void escapesLikeTheEscaper() {
+        EscapeCache cache = new EscapeCache(100, 64);
+        for (String s : new String[] { "", "plain", "<a & 'b'>", "café 😀", "\uD83D" }) {
+            StringBuilder sb = new StringBuilder();
+            Escaper.escape(s, Sink.of(sb));
+            assertEquals(sb.toString(), cache.get(s));
+            assertEquals(sb.toString(), cache.get(new String(s)));
+        }
+    }
+
+    @Test
+    public void skipsLongStrings() {
+        EscapeCache cache = new EscapeCache(100, 4);
+        assertEquals("&#60;b&#62;", cache.get("<b>"));
+        assertNull(cache.get("<b>x</b>"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void findsRepeatedStringsInTheThreadTable() {
+        EscapeCache cache = new EscapeCache(100, 64);
+        String first = cache.get("<td>");
+        assertEquals(1, cache.misses());
+        assertSame(first, cache.get("<td>"));
+        assertSame(first, cache.get(new String("<td>")));
+        assertEquals(2, cache.frontHits());
+        assertEquals(2, cache.hits());
+        assertEquals(2 / 3.0, cache.hitRate(), 1e-9);
+
+        cache.resetStats();
+        assertEquals(0, cache.hits() + cache.misses());
+        assertEquals(0, cache.hitRate(), 0);
+    }
+
+    @Test
+    public void sharesEntriesBetweenThreads() throws Exception {
+        EscapeCache cache = new EscapeCache(100, 64);
+        String escaped = cache.get("<shared>");
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            assertSame(escaped, other.submit(() -> cache.get("<shared>")).get());
+        } finally {
+            other.shutdown();
+        }
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+        assertEquals(0, cache.frontHits());
+    }
+
+    @Test
+    public void staysWithinItsEntryBound() {
+        EscapeCache cache = new EscapeCache(64, 64);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals("&#60;" + i + "&#62;", cache.get("<" + i + ">"));
+            assertTrue(cache.size() <= 64);
+        }
+        cache.clear();
+        assertEquals(0, cache.size());
+        // the thread table still answers, and correctly
+        assertEquals("&#60;9999&#62;", cache.get("<9999>"));
+    }
+
+    @Test
+    public void staysCorrectUnderConcurrentMisses() throws Exception {
+        EscapeCache cache = new EscapeCache(128, 64);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        int n = (i * 31 + seed) % 1_000;
+                        assertEquals("a&#38;" + n, cache.get("a&" + n));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        // loosely bounded: each concurrent miss may add one entry past the bound
+        assertTrue(cache.size() <= 128 + 4);
+        assertEquals(80_000, cache.hits() + cache.misses());
+    }
+
+    @Test
+    public void backsEscapeHTMLOnceInstalled() {
+        EscapeCache cache = new EscapeCache(100, 64);
+        EscapeCache previous = DSL.escapeCache();
+        DSL.setEscapeCache(cache);
+        try {
+            assertEquals("&#60;p&#62;", DSL.escapeHTML("<p>"));
+            assertEquals("&#60;p&#62;", DSL.escapeHTML("<p>"));
+            assertEquals(1, cache.misses());
+            assertEquals(1, cache.hits());
+            assertEquals("<p >&#60;p&#62;</p>", DSL.render(DSL.p("<p>")));
+        } finally {
+            DSL.setEscapeCache(previous);
+        }
+    }
+
+    @Test
+    public void rejectsInvalidLimits() {
+        assertThrows(IllegalArgumentException.class, () -> new EscapeCache(0, 10));
+        assertThrows(IllegalArgumentException.class, () -> new EscapeCache(10, -1));
+    }
+
+}
@@ -0,0 +1,91 @@
+package io.h5z.stencil;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EscaperTest {
+
+    @Test
+    public void escapesCharsAndBytesLikeEscapeHTML() {
+        for (String s : Arrays.asList("", "plain", "<a href=\"x\">'&'</a>", "café 日本 😀",
+                "a long run of clean ascii text before the <special> one", "\uD83D", "x\uDE00y")) {
+            String expected = DSL.escapeHTML(s);
+            StringBuilder sb = new StringBuilder();
+            Escaper.escape(s, Sink.of(sb));
+            assertEquals(expected, sb.toString());
+            if (!s.contains("\uD83D") && !s.contains("\uDE00")) {
+                assertEquals(expected, bytes(s.getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    @Test
+    public void replacesASequenceCutOffByTheEndOfTheRange() {
+        byte[] emoji = "😀".getBytes(StandardCharsets.UTF_8);
+        assertEquals("&#128512;", bytes(emoji));
+        for (int length = 1; length < emoji.length; length++) {
+            assertEquals("a&#65533;", bytes(concat(new byte[] { 'a' }, Arrays.copyOf(emoji, length))));
+        }
+        byte[] cjk = "日".getBytes(StandardCharsets.UTF_8);
+        assertEquals("&#65533;", bytes(Arrays.copyOf(cjk, 2)));
+        assertEquals("&#65533;", bytes(Arrays.copyOf("é".getBytes(StandardCharsets.UTF_8), 1)));
+    }
+
+    @Test
+    public void replacesMalformedSequences() {
+        // a cut off sequence followed by more text, an overlong form, a surrogate, and past U+10FFFF
+        assertEquals("&#65533;a", bytes(new byte[] { (byte) 0xf0, (byte) 0x9f, (byte) 0x98, 'a' }));
+        assertEquals("&#65533;&#65533;", bytes(new byte[] { (byte) 0xc0, (byte) 0x80 }));
+        assertEquals("&#65533;&#65533;&#65533;", bytes(new byte[] { (byte) 0xed, (byte) 0xa0, (byte) 0x80 }));
+        assertEquals("&#65533;&#65533;&#65533;&#65533;",
+            bytes(new byte[] { (byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80 }));
+        assertEquals("&#65533;", bytes(new byte[] { (byte) 0x80 }));
+    }
+
+    // the JDK decoder splits some invalid runs differently (a cut off surrogate), so runs of
+    // replacements are compared as one
+    @Test
+    public void agreesWithTheJdkDecoderOnRandomBytes() {
+        Random random = new Random(42);
+        byte[] alphabet = "<&é日😀abc".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 10_000; i++) {
+            byte[] utf8 = new byte[random.nextInt(40)];
+            for (int j = 0; j < utf8.length; j++) {
+                utf8[j] = random.nextInt(4) == 0 ? (byte) random.nextInt(256) : alphabet[random.nextInt(alphabet.length)];
+            }
+            assertEquals(Arrays.toString(utf8),
+                collapse(DSL.escapeHTML(new String(utf8, StandardCharsets.UTF_8))), collapse(bytes(utf8)));
+        }
+    }
+
+    @Test
+    public void escapesOnlyTheGivenRange() {
+        byte[] utf8 = "<<é>>".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Escaper.escape(utf8, 1, 3, out);
+        assertEquals("&#60;&#233;", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    private static String bytes(byte[] utf8) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Escaper.escape(utf8, 0, utf8.length, out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String collapse(String escaped) {
+        return escaped.replaceAll("(&#65533;)+", "&#65533;");
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+}
@@ -0,0 +1,194 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FragmentStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopensWithTheLatestValues() throws IOException {
+        Path log = folder.getRoot().toPath().resolve("fragments.log");
+        try (FragmentStore store = FragmentStore.open(log)) {
+            store.put("nav", ul(li("a")));
+            store.put("footer", "<footer>1</footer>".getBytes(StandardCharsets.UTF_8));
+            store.put("footer", new Frozen("<footer>é</footer>"));
+            store.put("gone", "x".getBytes(StandardCharsets.UTF_8));
+            store.remove("gone");
+            store.remove("missing");
+            assertEquals(2, store.size());
+        }
+        try (FragmentStore store = FragmentStore.open(log)) {
+            assertEquals(2, store.size());
+            assertEquals("<ul ><li >a</li></ul>", store.frozen("nav").content());
+            assertEquals("<footer>é</footer>", store.frozen("footer").content());
+            assertFalse(store.contains("gone"));
+            assertNull(store.get("gone"));
+            assertEquals(Files.size(log), store.fileSize());
+            assertTrue(store.deadBytes() > 0);
+        }
+    }
+
+    @Test
+    public void truncatesATornRecordAtTheEnd() throws IOException {
+        Path log = folder.getRoot().toPath().resolve("torn.log");
+        long size;
+        try (FragmentStore store = FragmentStore.open(log)) {
+            store.put("a", "<p>a</p>".getBytes(StandardCharsets.UTF_8));
+            size = store.fileSize();
+        }
+        // a header announcing more bytes than were written
+        Files.write(log, new byte[] { 0, 0, 0, 1, 0, 0, 0, 50, 1, 2, 3, 4, 'b', '<' }, StandardOpenOption.APPEND);
+
+        try (FragmentStore store = FragmentStore.open(log)) {
+            assertEquals(1, store.size());
+            assertEquals("<p>a</p>", store.frozen("a").content());
+            assertEquals(size, store.fileSize());
+            assertEquals(size, Files.size(log));
+            store.put("b", "<p>b</p>".getBytes(StandardCharsets.UTF_8));
+        }
+        try (FragmentStore store = FragmentStore.open(log)) {
+            assertEquals("<p>b</p>", store.frozen("b").content());
+        }
+    }
+
+    @Test
+    public void dropsRecordsFromTheFirstBadChecksum() throws IOException {
+        Path log = folder.getRoot().toPath().resolve("corrupt.log");
+        long good;
+        try (FragmentStore store = FragmentStore.open(log)) {
+            store.put("a", "<p>a</p>".getBytes(StandardCharsets.UTF_8));
+            good = store.fileSize();
+            store.put("b", "<p>b</p>".getBytes(StandardCharsets.UTF_8));
+            store.put("c", "<p>c</p>".getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] bytes = Files.readAllBytes(log);
+        // the last byte of b's value
+        bytes[(int) good + 12 + 1 + 7] ^= 1;
+        Files.write(log, bytes);
+
+        try (FragmentStore store = FragmentStore.open(log)) {
+            assertTrue(store.contains("a"));
+            assertFalse(store.contains("b"));
+            assertFalse(store.contains("c"));
+            assertEquals(good, Files.size(log));
+        }
+    }
+
+    @Test
+    public void compactsToTheLiveRecords() throws IOException {
+        Path log = folder.getRoot().toPath().resolve("compact.log");
+        try (FragmentStore store = FragmentStore.open(log)) {
+            for (int i = 0; i < 100; i++) {
+                store.put("row-" + (i % 10), tr(td(Integer.toString(i))));
+            }
+            store.remove("row-0");
+            ByteBuffer before = store.get("row-5");
+            long size = store.fileSize();
+
+            store.compact();
+            assertEquals(0, store.deadBytes());
+            assertTrue(store.fileSize() < size);
+            assertEquals(Files.size(log), store.fileSize());
+            assertFalse(Files.exists(log.resolveSibling("compact.log.compact")));
+            assertEquals(9, store.size());
+            assertEquals(StandardCharsets.UTF_8.decode(before).toString(), store.frozen("row-5").content());
+            assertEquals("<tr ><td >99</td></tr>", store.frozen("row-9").content());
+
+            store.put("row-0", new Frozen("<tr></tr>"));
+            assertEquals("<tr></tr>", store.frozen("row-0").content());
+        }
+        try (FragmentStore store = FragmentStore.open(log)) {
+            assertEquals(10, store.size());
+            assertEquals("<tr ><td >91</td></tr>", store.frozen("row-1").content());
+        }
+    }
+
+    @Test
+    public void keepsWorkingWhenCompactionFails() throws IOException {
+        Path log = folder.getRoot().toPath().resolve("failing.log");
+        try (FragmentStore store = FragmentStore.open(log)) {
+            store.put("a", "<p>a</p>".getBytes(StandardCharsets.UTF_8));
+            store.put("a", "<p>b</p>".getBytes(StandardCharsets.UTF_8));
+            // the log can no longer be replaced: its name now belongs to a non-empty directory
+            Files.delete(log);
+            Files.createDirectories(log.resolve("blocked"));
+
+            assertThrows(UncheckedIOException.class, store::compact);
+            assertFalse(Files.exists(log.resolveSibling("failing.log.compact")));
+            assertEquals("<p>b</p>", store.frozen("a").content());
+            store.put("c", "<p>c</p>".getBytes(StandardCharsets.UTF_8));
+            assertEquals("<p>c</p>", store.frozen("c").content());
+            assertEquals(2, store.size());
+            assertTrue(store.deadBytes() > 0);
+
+            Files.delete(log.resolve("blocked"));
+            Files.delete(log);
+            store.compact();
+            assertEquals(0, store.deadBytes());
+            assertEquals("<p>c</p>", store.frozen("c").content());
+        }
+    }
+
+    @Test
+    public void transfersValuesToChannels() {
+        Path log = folder.getRoot().toPath().resolve("transfer.log");
+        try (FragmentStore store = FragmentStore.open(log)) {
+            store.put("page", html(body(p("café"))));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long n = store.transferTo("page", Channels.newChannel(out));
+            assertEquals(out.size(), n);
+            assertEquals("<html ><body ><p >caf&#233;</p></body></html>", new String(out.toByteArray(), StandardCharsets.UTF_8));
+            assertEquals(-1, store.transferTo("missing", Channels.newChannel(out)));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failsToTransferFromATruncatedLog() throws IOException {
+        Path log = folder.getRoot().toPath().resolve("truncated.log");
+        try (FragmentStore store = FragmentStore.open(log)) {
+            store.put("page", "<p>page</p>".getBytes(StandardCharsets.UTF_8));
+            try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+                channel.truncate(15);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertThrows(UncheckedIOException.class, () -> store.transferTo("page", Channels.newChannel(out)));
+        }
+    }
+
+    @Test
+    public void buildsAbsentFragmentsOnce() {
+        Path log = folder.getRoot().toPath().resolve("lazy.log");
+        AtomicInteger built = new AtomicInteger();
+        try (FragmentStore store = FragmentStore.open(log)) {
+            for (int i = 0; i < 3; i++) {
+                Frozen frozen = store.computeIfAbsent("nav", () -> nav(__(built.incrementAndGet())));
+                assertEquals("<nav >1</nav>", frozen.content());
+            }
+        }
+        assertEquals(1, built.get());
+    }
+
+}
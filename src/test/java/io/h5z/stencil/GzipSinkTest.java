@@ -0,0 +1,124 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public class GzipSinkTest {
+
+    private static final int[] LEVELS = {
+        Deflater.DEFAULT_COMPRESSION, Deflater.NO_COMPRESSION, Deflater.BEST_SPEED, 6, Deflater.BEST_COMPRESSION
+    };
+
+    @Test
+    public void inflatesToTheRenderedPageAtEveryLevel() {
+        Frozen chrome = freeze(nav(ul(each(range(40), i -> li(a(attrs(href("/p/" + i)), __("page " + i)))))));
+        Frozen footer = freeze(footer(p("café 日本 😀 " + repeat("footer ", 60))));
+        Frozen small = new Frozen("<hr>");
+        List<Element> page = html5(
+            head(title("Gzip")),
+            body(chrome, main(p("content"), __u("\uD83D"), footer), small, chrome, footer, p("end")));
+
+        byte[] expected = render(page).getBytes(StandardCharsets.UTF_8);
+        for (int level : LEVELS) {
+            assertArrayEquals("level " + level, expected, inflate(gzip(page, level)));
+        }
+    }
+
+    @Test
+    public void copiesBlocksDeflatedAtTheSinkLevel() {
+        Frozen chrome = freeze(div(each(range(200), i -> p("row " + (i % 7)))));
+        Element page = body(p("before"), chrome, p("after"));
+
+        byte[] fast = chrome.deflated(Deflater.BEST_SPEED);
+        byte[] best = chrome.deflated(Deflater.BEST_COMPRESSION);
+        assertNotEquals(fast.length, best.length);
+        assertSame(best, chrome.deflated(Deflater.BEST_COMPRESSION));
+        assertSame(chrome.deflated(6), chrome.deflated());
+
+        assertTrue(contains(gzip(page, Deflater.BEST_SPEED), fast));
+        assertTrue(contains(gzip(page, Deflater.BEST_COMPRESSION), best));
+        assertArrayEquals(render(page).getBytes(StandardCharsets.UTF_8),
+            inflate(gzip(page, Deflater.BEST_COMPRESSION)));
+    }
+
+    @Test
+    public void rejectsInvalidLevels() {
+        Frozen frozen = new Frozen("<p >frozen</p>");
+        assertThrows(IllegalArgumentException.class, () -> frozen.deflated(10));
+        assertThrows(IllegalArgumentException.class, () -> frozen.deflated(-2));
+    }
+
+    private static byte[] gzip(Element page, int level) {
+        return gzip(Arrays.asList(page), level);
+    }
+
+    private static byte[] gzip(List<Element> page, int level) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GzipSink sink = new GzipSink(out, level);
+        new Renderer(sink, null).render(page);
+        sink.finish();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] gzip) {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean contains(byte[] bytes, byte[] part) {
+        outer:
+        for (int i = 0; i + part.length <= bytes.length; i++) {
+            for (int j = 0; j < part.length; j++) {
+                if (bytes[i + j] != part[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static List<Integer> range(int n) {
+        List<Integer> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(i);
+        }
+        return result;
+    }
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+}
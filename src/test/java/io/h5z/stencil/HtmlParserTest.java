@@ -0,0 +1,80 @@
+package io.h5z.stencil;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HtmlParserTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBytesEndingOnTheBufferBoundary() throws IOException {
+        // the reader decodes into an 8192-char window
+        for (int length : new int[] { 8191, 8192, 8193, 16384 }) {
+            for (char filler : new char[] { 'a', 'é' }) {
+                String html = page(length, filler);
+                ByteBuffer utf8 = ByteBuffer.wrap(html.getBytes(StandardCharsets.UTF_8));
+                Path file = folder.newFile("page-" + length + "-" + (int) filler + ".html").toPath();
+                Files.write(file, html.getBytes(StandardCharsets.UTF_8));
+
+                String message = length + " chars of " + filler;
+                assertEquals(message, html, DSL.render(HtmlParser.parse(utf8)));
+                assertEquals(message, html, HtmlParser.freeze(utf8).content());
+                assertEquals(message, html, DSL.render(HtmlParser.parse(file)));
+                assertEquals(message, html, HtmlParser.freeze(file).content());
+                assertEquals(message, html, DSL.render(HtmlParser.parse(html)));
+            }
+        }
+    }
+
+    @Test
+    public void insertsImpliedEndTags() {
+        assertEquals("<ul ><li >a</li><li >b</li></ul>", parse("<ul><li>a<li>b</ul>"));
+        assertEquals("<p >a</p><div >b</div>", parse("<p>a<div>b</div>"));
+        assertEquals("<table ><tr ><td >1</td><td >2</td></tr><tr ><td >3</td></tr></table>",
+            parse("<table><tr><td>1<td>2<tr><td>3</table>"));
+    }
+
+    @Test
+    public void dropsUnmatchedEndTagsAndClosesOpenElements() {
+        assertEquals("<div >ab<br >c<input type=\"text\" disabled></div>",
+            parse("<div>a</span>b</i><br>c<input type=text disabled>"));
+        assertEquals("<!DOCTYPE html><html ><body ><p >x</p></body></html>", parse("<!DOCTYPE html><html><body><p>x"));
+    }
+
+    @Test
+    public void keepsTextAndValuesAsWritten() {
+        assertEquals("<script >if (a < b) {}</script>", parse("<script>if (a < b) {}</script>"));
+        assertEquals("<!-- c --><b >&amp;x</b>", parse("<!-- c --><B>&amp;x</b>"));
+        assertEquals("<p class=\"a\" id=\"b\" title=\"c&quot;\">x</p>", parse("<p class=a id=\"b\" title='c\"'>x</p>"));
+    }
+
+    @Test
+    public void freezesWhatParsingRenders() {
+        for (String html : Arrays.asList("<ul><li>a<li>b</ul>", "<p>a<div>b</div>", "<textarea><b></textarea>x")) {
+            assertEquals(parse(html), HtmlParser.freeze(html).content());
+        }
+    }
+
+    private static String parse(String html) {
+        return DSL.render(HtmlParser.parse(html));
+    }
+
+    private static String page(int length, char filler) {
+        char[] text = new char[length - "<p ></p>".length()];
+        Arrays.fill(text, filler);
+        return "<p >" + new String(text) + "</p>";
+    }
+
+}
@@ -0,0 +1,102 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HtmlWriterTest {
+
+    @Test
+    public void writesWhatTheDslRenders() {
+        List<String> rows = Arrays.asList("Ada <Lovelace>", "Émile & co");
+        List<Element> page = html5(
+            head(title("Export")),
+            body(attrs(classes("report")),
+                div("#main.wide",
+                    p(attrs(attr("data-x", "1"), attr("hidden", null)), __("a < b")),
+                    input(attrs(id("q"))),
+                    table(attrs(id("log")),
+                        tbody(each(rows, r -> tr(td(r), td(__u("<b>raw</b>")))))),
+                    span(new Frozen("<i>frozen</i>")))));
+
+        StringBuilder sb = new StringBuilder();
+        HtmlWriter w = HtmlWriter.to(sb);
+        w.docType();
+        w.html(() -> {
+            w.head(() -> w.title("Export"));
+            w.body(attrs(classes("report")), () -> w.div(Selector.of("#main.wide"), () -> {
+                w.open("p").attr("data-x", "1").attr("hidden").text("a < b").close();
+                w.open("input").attrs(attrs(id("q")));
+                w.table(attrs(id("log")), () -> w.tbody(() -> {
+                    for (String r : rows) {
+                        w.tr(() -> w.td(r).td(() -> w.raw("<b>raw</b>")));
+                    }
+                }));
+                w.element(span(new Frozen("<i>frozen</i>")));
+            }));
+        });
+        w.finish();
+
+        assertEquals(render(page), sb.toString());
+        assertEquals(0, w.depth());
+    }
+
+    @Test
+    public void closesVoidElementsByThemselves() {
+        StringBuilder sb = new StringBuilder();
+        HtmlWriter w = HtmlWriter.to(sb);
+        w.p(() -> w.text("a").br().text("b"));
+        w.finish();
+
+        assertEquals("<p >a<br >b</p>", sb.toString());
+    }
+
+    @Test
+    public void rejectsAMismatchedClose() {
+        HtmlWriter w = HtmlWriter.to(new StringBuilder());
+        w.open("div").open("p");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> w.close("div"));
+        assertEquals("cannot close div, open elements are [div, p]", e.getMessage());
+        assertEquals(2, w.depth());
+        w.close("p").close("div").finish();
+    }
+
+    @Test
+    public void rejectsACloseWithoutOpenElements() {
+        HtmlWriter w = HtmlWriter.to(new StringBuilder());
+        assertThrows(IllegalStateException.class, w::close);
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> w.close("p"));
+        assertEquals("cannot close p, open elements are []", e.getMessage());
+    }
+
+    @Test
+    public void namesTheElementsLeftOpenOnFinish() {
+        HtmlWriter w = HtmlWriter.to(new StringBuilder());
+        w.open("section").open("my-widget").open("br");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, w::finish);
+        assertEquals("unclosed elements [section, my-widget]", e.getMessage());
+    }
+
+    @Test
+    public void rejectsAttributesAfterContent() {
+        HtmlWriter w = HtmlWriter.to(new StringBuilder());
+        w.open("p").text("content");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> w.attr("id", "late"));
+        assertEquals("attribute id must directly follow open()", e.getMessage());
+        assertThrows(IllegalStateException.class, () -> w.attrs(attrs(id("late"))));
+        assertThrows(IllegalStateException.class, () -> w.attrs(Selector.of("#late")));
+
+        // a selector must come before any other attribute
+        w.open("a").attr("href", "/");
+        assertThrows(IllegalStateException.class, () -> w.attrs(Selector.of(".link")));
+    }
+
+}
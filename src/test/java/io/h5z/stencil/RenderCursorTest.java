@@ -0,0 +1,119 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RenderCursorTest {
+
+    @Test(timeout = 10_000)
+    public void encodesALoneHighSurrogateIntoAOneByteBuffer() {
+        RenderCursor cursor = new RenderCursor(div(__u("\uD83C"), __u("cd")));
+        assertEquals("<div >?cd</div>", read(cursor, 1));
+    }
+
+    @Test(timeout = 10_000)
+    public void keepsSurrogatePairsSplitAcrossNodes() {
+        Element page = div(__u("a\uD83D"), __u("\uDE00b"), p("\uD83D"), __u("\uD83D"));
+        for (int size = 4; size <= 16; size++) {
+            assertArrayEquals("buffer of " + size, utf8(page), bytes(new RenderCursor(page), size));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void matchesRenderForEveryBufferSize() {
+        Element page = html(
+            head(title("Cursor & co")),
+            body(
+                div(attrs(classes("a", "b"), attr("data-x", "<\"'>")), p("café 日本"), input(attrs(id("q")))),
+                named("n", ul(each(Arrays.asList(1, 2, 3), i -> li(__(i))))),
+                lazy(() -> span("lazy")),
+                lazy(() -> null),
+                dataTable(Arrays.asList("x", "y")).text("Name", s -> s).number("Length", String::length),
+                __u("<!-- raw -->"),
+                new Frozen("<i>frozen</i>"),
+                __(12.345, 2)));
+        byte[] expected = utf8(page);
+        for (int size = 4; size <= 64; size++) {
+            assertArrayEquals("buffer of " + size, expected, bytes(new RenderCursor(page), size));
+        }
+        assertArrayEquals(expected, bytes(new RenderCursor(page), 64 * 1024));
+    }
+
+    @Test(timeout = 10_000)
+    public void buildsLazyNodesAsItReachesThem() {
+        AtomicInteger built = new AtomicInteger();
+        List<Element> rows = Arrays.asList(
+            lazy(() -> p(Integer.toString(built.incrementAndGet()))),
+            lazy(() -> p(Integer.toString(built.incrementAndGet()))));
+        RenderCursor cursor = new RenderCursor(div(rows));
+
+        ByteBuffer dst = ByteBuffer.allocate(8);
+        assertEquals(8, cursor.read(dst));
+        assertEquals(1, built.get());
+        assertEquals("<div ><p", new String(dst.array(), StandardCharsets.UTF_8));
+        assertEquals(" >1</p><p >2</p></div>", read(cursor, 8));
+        assertEquals(2, built.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void encodesAsciiIntoTinyBuffers() {
+        Element page = ul(attrs(id("x")), li("a & b"), li(__(42L)));
+        for (int size = 1; size < 4; size++) {
+            assertArrayEquals("buffer of " + size, utf8(page), bytes(new RenderCursor(page), size));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void streamsTheRowsOfAnIteratorTable() {
+        Iterator<String> names = Arrays.asList("a", "b").iterator();
+        DataTable<String> table = dataTable(names).text("Name", s -> s);
+        assertEquals("<table ><thead ><tr ><th >Name</th></tr></thead><tbody >"
+            + "<tr ><td >a</td></tr><tr ><td >b</td></tr></tbody></table>", read(new RenderCursor(table), 5));
+    }
+
+    @Test
+    public void returnsMinusOneOnceDone() {
+        RenderCursor cursor = new RenderCursor(input(attrs(id("q"))));
+        ByteBuffer dst = ByteBuffer.allocate(64);
+        assertEquals(DSL.render(input(attrs(id("q")))).length(), cursor.read(dst));
+        assertTrue(cursor.isDone());
+        assertEquals(-1, cursor.read(dst));
+        assertEquals(-1, new RenderCursor(Arrays.asList()).read(ByteBuffer.allocate(4)));
+    }
+
+    private static byte[] utf8(Element element) {
+        return DSL.render(element).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(RenderCursor cursor, int size) {
+        return new String(bytes(cursor, size), StandardCharsets.UTF_8);
+    }
+
+    // bounded, so that a cursor that stops making progress fails instead of hanging
+    private static byte[] bytes(RenderCursor cursor, int size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer dst = ByteBuffer.allocate(size);
+        for (int reads = 0; reads < 1_000_000; reads++) {
+            dst.clear();
+            int n = cursor.read(dst);
+            if (n < 0) {
+                return out.toByteArray();
+            }
+            out.write(dst.array(), 0, n);
+        }
+        throw new AssertionError("no end after a million reads of " + size + " bytes");
+    }
+
+}
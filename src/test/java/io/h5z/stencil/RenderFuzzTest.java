@@ -0,0 +1,36 @@
+package io.h5z.stencil;
+
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class RenderFuzzTest {
+
+    private static final int ITERATIONS = 500;
+
+    @Test(timeout = 60_000)
+    public void seed1() {
+        fuzz(1);
+    }
+
+    // hung the render cursor on a lone high surrogate
+    @Test(timeout = 60_000)
+    public void seed2() {
+        fuzz(2);
+    }
+
+    @Test(timeout = 60_000)
+    public void seed3() {
+        fuzz(3);
+    }
+
+    @Test(timeout = 60_000)
+    public void seed42() {
+        fuzz(42);
+    }
+
+    private static void fuzz(long seed) {
+        assertNull("seed " + seed, RenderFuzzer.run(seed, ITERATIONS));
+    }
+
+}
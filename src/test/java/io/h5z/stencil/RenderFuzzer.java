@@ -0,0 +1,968 @@
+package io.h5z.stencil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import io.h5z.stencil.DSL.DocType;
+import io.h5z.stencil.DSL.DocTypeValue;
+import io.h5z.stencil.DSL.Element;
+import io.h5z.stencil.DSL.ElementVisitor;
+import io.h5z.stencil.DSL.HTMLElement;
+import io.h5z.stencil.DSL.Text;
+
+/**
+ * Differential fuzzer: renders random element trees through every render path and sink
+ * and compares the output with {@link Reference}, the string-concatenating renderer and
+ * per code point escaper the library started with. Trees use every element factory of
+ * {@link DSL} taking {@code (Map, List)} or {@code (Map)}, selectors, class sets, null
+ * (boolean) attributes, lazy/each/when, fragments, components, data tables, numbers and
+ * dates, and text with non-ASCII characters, surrogate pairs and lone surrogates. Each
+ * tree is also compiled into a {@link Template}, its rendering parsed back with
+ * {@link HtmlParser} into trees and fragments, and two builds of it diffed with
+ * {@link Diff}. A mismatch is shrunk to a minimal tree before it is reported.
+ *
+ * <p>Output must be identical except for two documented normalizations: attribute names
+ * are never empty or padded with whitespace (the reference trims the attribute block),
+ * and paths that produce UTF-8 (the cursor, byte sinks and the codec) write a lone
+ * surrogate in raw content as {@code ?}, like {@code String.getBytes}.
+ * {@link MinifyingRenderer} is not compared, its output differs by design.
+ *
+ * <p>{@link RenderFuzzTest} runs a few fixed seeds with the tests, longer runs take any seed:
+ *
+ * <pre>
+ * ./gradlew fuzz [-Piterations=10000] [-Pseed=42]
+ * </pre>
+ */
+public final class RenderFuzzer {
+
+    private static final List<Method> CONTAINERS = new ArrayList<>();
+    private static final List<Method> LEAVES = new ArrayList<>();
+
+    static {
+        for (Method m : DSL.class.getMethods()) {
+            if (!Modifier.isStatic(m.getModifiers()) || !Element.class.isAssignableFrom(m.getReturnType())) {
+                continue;
+            }
+            Class<?>[] types = m.getParameterTypes();
+            if (2 == types.length && types[0] == Map.class && types[1] == List.class) {
+                CONTAINERS.add(m);
+            } else if (1 == types.length && types[0] == Map.class) {
+                LEAVES.add(m);
+            }
+        }
+        // name order, so that a seed always produces the same trees
+        CONTAINERS.sort(Comparator.comparing(Method::getName));
+        LEAVES.sort(Comparator.comparing(Method::getName));
+    }
+
+    private static final String[] ATTRIBUTES = { "id", "class", "href", "title", "data-x", "aria-label", "hidden", "disabled" };
+    private static final String[] CLASSES = { "card", "p-4", "active", "btn", "é", "x-y" };
+
+    private static final Component<String> CARD = DSL.component("fuzz-card", p -> DSL.div(DSL.__(p)));
+
+    private final Random random;
+    private final int maxDepth;
+
+    RenderFuzzer(long seed, int maxDepth) {
+        this.random = new Random(seed);
+        this.maxDepth = maxDepth;
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        System.out.println("seed " + seed + ", " + iterations + " iterations, "
+            + CONTAINERS.size() + " container and " + LEAVES.size() + " leaf factories");
+        String failure = run(seed, iterations);
+        if (null != failure) {
+            System.out.println(failure);
+            System.exit(1);
+        }
+        System.out.println("ok");
+    }
+
+    // the report of the first mismatch, with its tree shrunk, or null
+    static String run(long seed, int iterations) {
+        RenderFuzzer fuzzer = new RenderFuzzer(seed, 5);
+        for (int i = 0; i < iterations; i++) {
+            String s = fuzzer.string(40);
+            Mismatch mismatch = checkEscape(s);
+            if (null != mismatch) {
+                return "escaper mismatch on " + describe(s) + "\n" + mismatch;
+            }
+            Node tree = fuzzer.node(0);
+            mismatch = check(tree);
+            if (null != mismatch) {
+                Node minimal = shrink(tree, mismatch.path);
+                return "mismatch after " + i + " trees, minimized to\n  " + minimal + "\n" + check(minimal);
+            }
+        }
+        return null;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Reference implementation
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * The rendering and escaping code of the original {@code DSL}, kept as the oracle. It
+     * only knows elements, doctypes and text.
+     */
+    static final class Reference {
+
+        static String render(List<Element> elements) {
+            return elements.stream()
+                .map(Reference::renderElement)
+                .reduce("", (a, b) -> a + b);
+        }
+
+        static String renderElement(Element element) {
+            return element.accept(new ElementVisitor<String>() {
+
+                @Override
+                public String visit(HTMLElement element) {
+                    return renderHTMLElement(element);
+                }
+
+                @Override
+                public String visit(DocType page) {
+                    return page.docType().value();
+                }
+
+                @Override
+                public String visit(Text text) {
+                    return text.content();
+                }
+            });
+        }
+
+        static String renderHTMLElement(HTMLElement element) {
+            StringBuilder sb = new StringBuilder()
+                .append("<").append(element.name()).append(" ")
+                .append(renderTagAttrs(element.attributes())).append(">");
+            if (element.isVoidElement()) {
+                return sb.toString();
+            }
+            return sb.append(element.nodes().stream()
+                    .map(Reference::renderElement)
+                    .reduce("", (a, b) -> a + b))
+                .append("</").append(element.name()).append(">")
+                .toString();
+        }
+
+        static String renderTagAttrs(Map<String, String> attrs) {
+            return attrs.entrySet()
+                .stream()
+                .map(kv ->
+                    null == kv.getValue()
+                        ? kv.getKey()
+                        : String.format("%s=\"%s\"", kv.getKey(), kv.getValue()))
+                .reduce("", (a, b) -> String.format("%s %s", a, b))
+                .trim();
+        }
+
+        static String escapeHTML(String str) {
+            return str.codePoints().mapToObj(c -> c > 127 || "\"'<>&".indexOf(c) != -1 ?
+                    "&#" + c + ";" : new String(Character.toChars(c)))
+               .collect(Collectors.joining());
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Checks
+    // ----------------------------------------------------------------------------------
+
+    static final class Mismatch {
+
+        final String path;
+        final String expected;
+        final String actual;
+
+        Mismatch(String path, String expected, String actual) {
+            this.path = path;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        @Override
+        public String toString() {
+            int i = 0;
+            int n = Math.min(this.expected.length(), this.actual.length());
+            while (i < n && this.expected.charAt(i) == this.actual.charAt(i)) {
+                i++;
+            }
+            return this.path + " differs at " + i + "\n  expected: " + describe(this.expected) + "\n  actual:   " + describe(this.actual);
+        }
+    }
+
+    private static final Map<String, Function<Node, String>> PATHS = new LinkedHashMap<>();
+    // paths that encode to UTF-8, compared after the same encoding of the reference
+    private static final List<String> BYTE_PATHS = Arrays.asList("render cursor", "channel sink", "gzip sink", "codec round trip");
+
+    static {
+        PATHS.put("render", n -> DSL.render(n.fast()));
+        PATHS.put("renderer with metrics", n -> {
+            StringBuilder sb = new StringBuilder();
+            new Renderer(Sink.of(sb), new RenderMetrics(true)).render(n.fast());
+            return sb.toString();
+        });
+        PATHS.put("writer sink", n -> {
+            StringWriter writer = new StringWriter();
+            new Renderer(Sink.of(writer), null).render(n.fast());
+            return writer.toString();
+        });
+        PATHS.put("html writer", n -> {
+            StringBuilder sb = new StringBuilder();
+            HtmlWriter.to(sb).element(n.fast()).finish();
+            return sb.toString();
+        });
+        PATHS.put("render cursor", n -> {
+            RenderCursor cursor = new RenderCursor(n.fast());
+            ByteBuffer buffer = ByteBuffer.allocate(4 + (n.hashCode() & 63));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            while (cursor.read(buffer) >= 0) {
+                out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            return utf8(out.toByteArray());
+        });
+        PATHS.put("channel sink", n -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (ChannelSink sink = new ChannelSink(Channels.newChannel(out))) {
+                new Renderer(sink, null).render(n.fast());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return utf8(out.toByteArray());
+        });
+        PATHS.put("gzip sink", n -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (GzipSink sink = new GzipSink(out)) {
+                new Renderer(sink, null).render(n.fast());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+                ByteArrayOutputStream plain = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    plain.write(buffer, 0, read);
+                }
+                return utf8(plain.toByteArray());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        PATHS.put("compact document", n -> {
+            StringBuilder sb = new StringBuilder();
+            CompactDocument.of(n.fast()).render(Sink.of(sb));
+            return sb.toString();
+        });
+        PATHS.put("codec round trip", n -> DSL.render(ElementCodec.decode(ElementCodec.encode(n.fast()))));
+        PATHS.put("escape cache", n -> {
+            DSL.setEscapeCache(new EscapeCache(64, 32));
+            try {
+                return DSL.render(n.fast());
+            } finally {
+                DSL.setEscapeCache(null);
+            }
+        });
+    }
+
+    // the first path whose output differs from the reference
+    static Mismatch check(Node tree) {
+        String expected = Reference.renderElement(tree.reference());
+        for (Map.Entry<String, Function<Node, String>> path : PATHS.entrySet()) {
+            String actual;
+            try {
+                actual = path.getValue().apply(tree);
+            } catch (RuntimeException e) {
+                actual = e.toString();
+            }
+            String normalized = BYTE_PATHS.contains(path.getKey())
+                ? utf8(expected.getBytes(StandardCharsets.UTF_8))
+                : expected;
+            if (!normalized.equals(actual)) {
+                return new Mismatch(path.getKey(), normalized, actual);
+            }
+        }
+        return checkDerived(tree, expected);
+    }
+
+    // template, parser and diff, checked against the reference rendering or against themselves
+    static Mismatch checkDerived(Node tree, String expected) {
+        List<Supplier<Mismatch>> checks = Arrays.asList(
+            // a text and a raw slot after the tree, both filled with its rendering
+            () -> compare("template",
+                () -> Reference.renderElement(new HTMLElement("div", Collections.emptyMap(), Arrays.asList(
+                    tree.reference(), new Text(Reference.escapeHTML(expected)), new Text(expected)))),
+                () -> Template.<String>compile(s -> DSL.div(tree.fast(), s.text(m -> m), s.raw(m -> m))).render(expected)),
+            () -> compare("html parser freeze",
+                () -> DSL.render(HtmlParser.parse(expected)),
+                () -> HtmlParser.freeze(expected).content()),
+            () -> compare("html parser bytes",
+                () -> utf8(DSL.render(HtmlParser.parse(expected)).getBytes(StandardCharsets.UTF_8)),
+                () -> DSL.render(HtmlParser.parse(ByteBuffer.wrap(expected.getBytes(StandardCharsets.UTF_8))))),
+            // what the parser made of a document, it reads back the same
+            () -> compare("html parser reparse",
+                () -> DSL.render(HtmlParser.parse(expected)),
+                () -> DSL.render(HtmlParser.parse(DSL.render(HtmlParser.parse(expected))))),
+            // two builds of the same tree are equal
+            () -> compare("diff",
+                () -> "[]",
+                () -> Diff.toJson(Diff.diff(tree.fast(), tree.fast()))));
+        for (Supplier<Mismatch> check : checks) {
+            Mismatch mismatch = check.get();
+            if (null != mismatch) {
+                return mismatch;
+            }
+        }
+        return null;
+    }
+
+    private static Mismatch compare(String path, Supplier<String> expected, Supplier<String> actual) {
+        String e;
+        String a;
+        try {
+            e = expected.get();
+            a = actual.get();
+        } catch (RuntimeException ex) {
+            return new Mismatch(path, "", ex.toString());
+        }
+        return e.equals(a) ? null : new Mismatch(path, e, a);
+    }
+
+    static Mismatch checkEscape(String s) {
+        String expected = Reference.escapeHTML(s);
+        StringBuilder sb = new StringBuilder();
+        Escaper.escape(s, Sink.of(sb));
+        if (!expected.equals(sb.toString())) {
+            return new Mismatch("Escaper.escape(CharSequence)", expected, sb.toString());
+        }
+        char[] chars = ("<<" + s + ">>").toCharArray();
+        sb.setLength(0);
+        Escaper.escape(chars, 2, s.length(), Sink.of(sb));
+        if (!expected.equals(sb.toString())) {
+            return new Mismatch("Escaper.escape(char[])", expected, sb.toString());
+        }
+        if (!DSL.escapeHTML(s).equals(expected)) {
+            return new Mismatch("DSL.escapeHTML", expected, DSL.escapeHTML(s));
+        }
+        // the byte path sees what String.getBytes makes of lone surrogates
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Escaper.escape(utf8, 0, utf8.length, out);
+        String bytesExpected = Reference.escapeHTML(utf8(utf8));
+        if (!bytesExpected.equals(utf8(out.toByteArray()))) {
+            return new Mismatch("Escaper.escape(byte[])", bytesExpected, utf8(out.toByteArray()));
+        }
+        return null;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Shrinking
+    // ----------------------------------------------------------------------------------
+
+    // greedily replaces subtrees by simpler ones while the same path still fails
+    static Node shrink(Node tree, String path) {
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (Node candidate : candidates(tree)) {
+                Mismatch mismatch = check(candidate);
+                if (null != mismatch && mismatch.path.equals(path)) {
+                    tree = candidate;
+                    progress = true;
+                    break;
+                }
+            }
+        }
+        return tree;
+    }
+
+    private static List<Node> candidates(Node node) {
+        List<Node> candidates = new ArrayList<>();
+        List<Node> children = node.children();
+        candidates.addAll(children);
+        candidates.addAll(node.simpler());
+        for (int i = 0; i < children.size(); i++) {
+            List<Node> without = new ArrayList<>(children);
+            without.remove(i);
+            candidates.add(node.with(without));
+        }
+        for (int i = 0; i < children.size(); i++) {
+            for (Node child : candidates(children.get(i))) {
+                List<Node> replaced = new ArrayList<>(children);
+                replaced.set(i, child);
+                candidates.add(node.with(replaced));
+            }
+        }
+        return candidates;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Generators
+    // ----------------------------------------------------------------------------------
+
+    Node node(int depth) {
+        int kind = this.random.nextInt(depth >= this.maxDepth ? 8 : 16);
+        switch (kind) {
+            case 0: return new TextNode(string(20), TextNode.ESCAPED);
+            case 1: return new TextNode(string(20), TextNode.RAW);
+            case 2: return new TextNode(string(20), TextNode.SEQUENCE);
+            case 3: return new TextNode(string(20), TextNode.SLICE);
+            case 4: return new NumberNode(this.random);
+            case 5: return new LeafNode(LEAVES.get(this.random.nextInt(LEAVES.size())), attributes());
+            case 6: return new ComponentNode(string(10));
+            case 7: return new DocTypeNode();
+            case 8: return new TableNode(this.random, attributes(), string(6), this);
+            case 9: return new WrapperNode(this.random.nextInt(WrapperNode.KINDS), children(depth));
+            default: return new ElementNode(
+                CONTAINERS.get(this.random.nextInt(CONTAINERS.size())), attributes(), children(depth));
+        }
+    }
+
+    private List<Node> children(int depth) {
+        int n = this.random.nextInt(4);
+        List<Node> children = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            children.add(node(depth + 1));
+        }
+        return children;
+    }
+
+    Map<String, String> attributes() {
+        switch (this.random.nextInt(6)) {
+            case 0:
+                return Collections.emptyMap();
+            case 1: {
+                StringBuilder selector = new StringBuilder();
+                if (this.random.nextBoolean()) {
+                    selector.append("#i").append(this.random.nextInt(100));
+                }
+                for (int i = this.random.nextInt(3); i > 0; i--) {
+                    selector.append('.').append(CLASSES[this.random.nextInt(CLASSES.length)]);
+                }
+                return Selector.of(selector.toString());
+            }
+            case 2: {
+                String[] names = new String[this.random.nextInt(4)];
+                for (int i = 0; i < names.length; i++) {
+                    names[i] = CLASSES[this.random.nextInt(CLASSES.length)];
+                }
+                return DSL.attrs(ClassSet.of(names));
+            }
+            default: {
+                Map<String, String> attrs = new LinkedHashMap<>();
+                for (int i = this.random.nextInt(4); i > 0; i--) {
+                    String name = ATTRIBUTES[this.random.nextInt(ATTRIBUTES.length)];
+                    attrs.put(name, this.random.nextInt(4) == 0 ? null : string(8));
+                }
+                return attrs;
+            }
+        }
+    }
+
+    // ASCII, markup specials, Latin-1, CJK, surrogate pairs and, rarely, lone surrogates
+    String string(int maxLength) {
+        int length = this.random.nextInt(maxLength + 1);
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            int r = this.random.nextInt(100);
+            if (r < 50) {
+                sb.append((char) (' ' + this.random.nextInt(95)));
+            } else if (r < 65) {
+                sb.append("\"'<>&".charAt(this.random.nextInt(5)));
+            } else if (r < 75) {
+                sb.append((char) (0xa0 + this.random.nextInt(0x60)));
+            } else if (r < 85) {
+                sb.append((char) (0x4e00 + this.random.nextInt(0x5000)));
+            } else if (r < 95) {
+                sb.appendCodePoint(0x1f300 + this.random.nextInt(0x300));
+            } else if (r < 98) {
+                sb.append((char) ('\t' + this.random.nextInt(5)));
+            } else {
+                sb.append((char) (0xd800 + this.random.nextInt(0x800)));
+            }
+        }
+        return sb.toString();
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Tree specs: each node builds the element under test and an equivalent tree of
+    // plain elements and text for the reference renderer
+    // ----------------------------------------------------------------------------------
+
+    abstract static class Node {
+
+        abstract Element fast();
+
+        abstract Element reference();
+
+        List<Node> children() {
+            return Collections.emptyList();
+        }
+
+        Node with(List<Node> children) {
+            return this;
+        }
+
+        List<Node> simpler() {
+            return Collections.emptyList();
+        }
+
+        static List<Element> fast(List<Node> nodes) {
+            return nodes.stream().map(Node::fast).collect(Collectors.toList());
+        }
+
+        static List<Element> reference(List<Node> nodes) {
+            return nodes.stream().map(Node::reference).collect(Collectors.toList());
+        }
+    }
+
+    static final class ElementNode extends Node {
+
+        private final Method factory;
+        private final Map<String, String> attrs;
+        private final List<Node> children;
+
+        ElementNode(Method factory, Map<String, String> attrs, List<Node> children) {
+            this.factory = factory;
+            this.attrs = attrs;
+            this.children = children;
+        }
+
+        @Override
+        Element fast() {
+            return invoke(this.factory, this.attrs, fast(this.children));
+        }
+
+        @Override
+        Element reference() {
+            HTMLElement e = (HTMLElement) fast();
+            return new HTMLElement(e.name(), e.attributes(), reference(this.children), e.isVoidElement());
+        }
+
+        @Override
+        List<Node> children() {
+            return this.children;
+        }
+
+        @Override
+        Node with(List<Node> children) {
+            return new ElementNode(this.factory, this.attrs, children);
+        }
+
+        @Override
+        List<Node> simpler() {
+            return this.attrs.isEmpty()
+                ? Collections.emptyList()
+                : Collections.singletonList(new ElementNode(this.factory, Collections.emptyMap(), this.children));
+        }
+
+        @Override
+        public String toString() {
+            return this.factory.getName() + this.attrs + this.children;
+        }
+    }
+
+    static final class LeafNode extends Node {
+
+        private final Method factory;
+        private final Map<String, String> attrs;
+
+        LeafNode(Method factory, Map<String, String> attrs) {
+            this.factory = factory;
+            this.attrs = attrs;
+        }
+
+        @Override
+        Element fast() {
+            return invoke(this.factory, this.attrs);
+        }
+
+        // the factory's own nodes are plain text
+        @Override
+        Element reference() {
+            HTMLElement e = (HTMLElement) fast();
+            return new HTMLElement(e.name(), e.attributes(), e.nodes(), e.isVoidElement());
+        }
+
+        @Override
+        List<Node> simpler() {
+            return this.attrs.isEmpty()
+                ? Collections.emptyList()
+                : Collections.singletonList(new LeafNode(this.factory, Collections.emptyMap()));
+        }
+
+        @Override
+        public String toString() {
+            return this.factory.getName() + this.attrs;
+        }
+    }
+
+    static final class TextNode extends Node {
+
+        static final int ESCAPED = 0;
+        static final int RAW = 1;
+        static final int SEQUENCE = 2;
+        static final int SLICE = 3;
+
+        private final String text;
+        private final int kind;
+
+        TextNode(String text, int kind) {
+            this.text = text;
+            this.kind = kind;
+        }
+
+        @Override
+        Element fast() {
+            switch (this.kind) {
+                case ESCAPED:
+                    return DSL.__(this.text);
+                case RAW:
+                    return DSL.__u(this.text);
+                case SEQUENCE:
+                    return DSL.__(new StringBuilder(this.text));
+                default:
+                    char[] chars = ("ab" + this.text + "c").toCharArray();
+                    return DSL.__(chars, 2, this.text.length());
+            }
+        }
+
+        @Override
+        Element reference() {
+            return new Text(RAW == this.kind ? this.text : Reference.escapeHTML(this.text));
+        }
+
+        @Override
+        List<Node> simpler() {
+            List<Node> simpler = new ArrayList<>();
+            if (this.text.length() > 0) {
+                simpler.add(new TextNode(this.text.substring(0, this.text.length() / 2), this.kind));
+                simpler.add(new TextNode(this.text.substring(1), this.kind));
+                simpler.add(new TextNode(this.text.substring(0, this.text.length() - 1), this.kind));
+            }
+            if (SEQUENCE == this.kind || SLICE == this.kind) {
+                simpler.add(new TextNode(this.text, ESCAPED));
+            }
+            return simpler;
+        }
+
+        @Override
+        public String toString() {
+            return new String[] { "__", "__u", "__(CharSequence)", "__(char[])" }[this.kind] + "(" + describe(this.text) + ")";
+        }
+    }
+
+    static final class NumberNode extends Node {
+
+        private final int kind;
+        private final long value;
+        private final double decimal;
+        private final int decimals;
+
+        NumberNode(Random random) {
+            this.kind = random.nextInt(4);
+            this.value = random.nextBoolean() ? random.nextLong() : random.nextInt(2001) - 1000;
+            double magnitude = Math.pow(10, random.nextInt(14) - 4);
+            double d = (random.nextDouble() - 0.5) * magnitude;
+            // ties and short decimals are where rounding goes wrong
+            this.decimal = random.nextBoolean() ? d : Math.round(d * 1000) / 1000.0;
+            this.decimals = random.nextInt(6);
+        }
+
+        @Override
+        Element fast() {
+            switch (this.kind) {
+                case 0:
+                    return DSL.__(this.value);
+                case 1:
+                    return DSL.__(this.decimal, this.decimals);
+                case 2:
+                    return DSL.__(date());
+                default:
+                    return DSL.__(dateTime());
+            }
+        }
+
+        @Override
+        Element reference() {
+            switch (this.kind) {
+                case 0:
+                    return new Text(Long.toString(this.value));
+                case 1:
+                    return new Text(BigDecimal.valueOf(this.decimal).setScale(this.decimals, RoundingMode.HALF_UP).toPlainString());
+                case 2:
+                    return new Text(date().toString());
+                default:
+                    return new Text(dateTime().toString());
+            }
+        }
+
+        private LocalDate date() {
+            return LocalDate.ofEpochDay(Math.floorMod(this.value, 4_000_000L) - 1_000_000L);
+        }
+
+        private LocalDateTime dateTime() {
+            long nanos = Math.floorMod(this.value, 86_400_000_000_000L);
+            // whole seconds and milliseconds take the shorter ISO forms
+            if (0 == (this.value & 1)) {
+                nanos -= nanos % 1_000_000_000L;
+            } else if (0 == (this.value & 2)) {
+                nanos -= nanos % 1_000_000L;
+            }
+            return date().atStartOfDay().plusNanos(nanos);
+        }
+
+        @Override
+        public String toString() {
+            return new String[] { "long", "decimal", "date", "dateTime" }[this.kind]
+                + "(" + (1 == this.kind ? this.decimal + ", " + this.decimals : String.valueOf(this.value)) + ")";
+        }
+    }
+
+    static final class WrapperNode extends Node {
+
+        static final int KINDS = 5;
+
+        private final int kind;
+        private final List<Node> children;
+
+        WrapperNode(int kind, List<Node> children) {
+            this.kind = kind;
+            this.children = children;
+        }
+
+        @Override
+        Element fast() {
+            List<Element> children = fast(this.children);
+            switch (this.kind) {
+                case 0:
+                    return DSL.freeze(children);
+                case 1:
+                    return DSL.lazy(() -> DSL.named("fuzz", DSL.span(Collections.emptyMap(), fast(this.children))));
+                case 2:
+                    return DSL.each(this.children, Node::fast);
+                case 3:
+                    return DSL.when(false, () -> DSL.div(children));
+                default:
+                    return DSL.named(DSL.div(children));
+            }
+        }
+
+        @Override
+        Element reference() {
+            List<Element> children = reference(this.children);
+            switch (this.kind) {
+                case 1:
+                    return new HTMLElement("span", Collections.emptyMap(), children);
+                case 3:
+                    return new Text("");
+                case 4:
+                    return new HTMLElement("div", Collections.emptyMap(), children);
+                default:
+                    return new Text(Reference.render(children));
+            }
+        }
+
+        @Override
+        List<Node> children() {
+            return this.children;
+        }
+
+        @Override
+        Node with(List<Node> children) {
+            return new WrapperNode(this.kind, children);
+        }
+
+        @Override
+        public String toString() {
+            return new String[] { "freeze", "lazy", "each", "when(false)", "named" }[this.kind] + this.children;
+        }
+    }
+
+    static final class ComponentNode extends Node {
+
+        private final String props;
+
+        ComponentNode(String props) {
+            this.props = props;
+        }
+
+        @Override
+        Element fast() {
+            return CARD.with(this.props);
+        }
+
+        @Override
+        Element reference() {
+            return new HTMLElement("div", Collections.emptyMap(),
+                Collections.singletonList(new Text(Reference.escapeHTML(this.props))));
+        }
+
+        @Override
+        public String toString() {
+            return "component(" + describe(this.props) + ")";
+        }
+    }
+
+    static final class DocTypeNode extends Node {
+
+        @Override
+        Element fast() {
+            return new DocType(DocTypeValue.HTML5);
+        }
+
+        @Override
+        Element reference() {
+            return new DocType(DocTypeValue.HTML5);
+        }
+
+        @Override
+        public String toString() {
+            return "doctype";
+        }
+    }
+
+    static final class TableNode extends Node {
+
+        private final Map<String, String> attrs;
+        private final String header;
+        private final List<Object[]> rows;
+
+        TableNode(Random random, Map<String, String> attrs, String header, RenderFuzzer fuzzer) {
+            this.attrs = attrs;
+            this.header = header;
+            this.rows = new ArrayList<>();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                this.rows.add(new Object[] {
+                    random.nextLong() >> random.nextInt(64),
+                    random.nextInt(5) == 0 ? null : fuzzer.string(10),
+                    (random.nextDouble() - 0.5) * 1000 });
+            }
+        }
+
+        private TableNode(Map<String, String> attrs, String header, List<Object[]> rows) {
+            this.attrs = attrs;
+            this.header = header;
+            this.rows = rows;
+        }
+
+        @Override
+        Element fast() {
+            return DSL.dataTable(this.attrs, this.rows)
+                .number("#", row -> (Long) row[0])
+                .text(this.header, row -> (String) row[1])
+                .decimal("total", Selector.of(".num"), row -> (Double) row[2], 2);
+        }
+
+        @Override
+        Element reference() {
+            List<Element> trs = new ArrayList<>();
+            for (Object[] row : this.rows) {
+                trs.add(new HTMLElement("tr", Collections.emptyMap(), Arrays.asList(
+                    cell(Collections.emptyMap(), Long.toString((Long) row[0])),
+                    cell(Collections.emptyMap(), null == row[1] ? "" : Reference.escapeHTML((String) row[1])),
+                    cell(Selector.of(".num"), BigDecimal.valueOf((Double) row[2]).setScale(2, RoundingMode.HALF_UP).toPlainString()))));
+            }
+            Element head = new HTMLElement("thead", Collections.emptyMap(), Collections.singletonList(
+                new HTMLElement("tr", Collections.emptyMap(), Arrays.asList(
+                    header("#"), header(this.header), header("total")))));
+            return new HTMLElement("table", this.attrs, Arrays.asList(
+                head, new HTMLElement("tbody", Collections.emptyMap(), trs)));
+        }
+
+        private static Element header(String text) {
+            return new HTMLElement("th", Collections.emptyMap(),
+                Collections.singletonList(new Text(Reference.escapeHTML(text))));
+        }
+
+        private static Element cell(Map<String, String> attrs, String html) {
+            return new HTMLElement("td", attrs, Collections.singletonList(new Text(html)));
+        }
+
+        @Override
+        List<Node> simpler() {
+            List<Node> simpler = new ArrayList<>();
+            for (int i = 0; i < this.rows.size(); i++) {
+                List<Object[]> rows = new ArrayList<>(this.rows);
+                rows.remove(i);
+                simpler.add(new TableNode(this.attrs, this.header, rows));
+            }
+            if (!this.attrs.isEmpty()) {
+                simpler.add(new TableNode(Collections.emptyMap(), this.header, this.rows));
+            }
+            return simpler;
+        }
+
+        @Override
+        public String toString() {
+            return "dataTable" + this.attrs + "(" + describe(this.header) + ", "
+                + this.rows.stream()
+                    .map(row -> "[" + row[0] + ", " + (null == row[1] ? "null" : describe((String) row[1])) + ", " + row[2] + "]")
+                    .collect(Collectors.joining(", "))
+                + ")";
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // Helpers
+    // ----------------------------------------------------------------------------------
+
+    private static Element invoke(Method factory, Object... args) {
+        try {
+            return (Element) factory.invoke(null, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(factory.getName(), e.getCause());
+        }
+    }
+
+    private static String utf8(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // quoted, with non-ASCII characters as \\uXXXX so that reports survive any console
+    static String describe(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < ' ' || c > '~') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+}
@@ -0,0 +1,195 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RenderListenerTest {
+
+    private static final Element PAGE = html(
+        head(title("Listener")),
+        body(
+            named("nav", ul(each(Arrays.asList(1, 2, 3), i -> li(__(i))))),
+            div(attrs(classes("card")), p("café 日本"), input(attrs(id("q")))),
+            lazy(() -> span("lazy")),
+            dataTable(Arrays.asList("x", "y")).text("Name", s -> s),
+            new Frozen("<i>frozen</i>")));
+
+    @Test
+    public void reportsStartedThenRendered() {
+        Recorder recorder = new Recorder();
+        StringBuilder sb = new StringBuilder();
+        new Renderer(Sink.of(sb), recorder).render(PAGE);
+
+        assertEquals(Arrays.asList("started", "enter nav", "exit nav", "rendered"), recorder.events);
+        assertEquals(render(PAGE).getBytes(StandardCharsets.UTF_8).length, recorder.bytes);
+        // html, head, title, its text, body, ul, 3 li and their values, div, p, its text,
+        // input, span, its text, the data table and the frozen fragment
+        assertEquals(20, recorder.nodes);
+        assertEquals(4, recorder.maxDepth);
+    }
+
+    @Test
+    public void reportsFailedRendersAndRethrows() {
+        Recorder recorder = new Recorder();
+        Element page = div(named("broken", p(lazy(() -> {
+            throw new IllegalStateException("boom");
+        }))));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+            () -> new Renderer(Sink.of(new StringBuilder()), recorder).render(page));
+        assertEquals("boom", e.getMessage());
+        assertEquals(Arrays.asList("started", "enter broken", "failed boom"), recorder.events);
+
+        // the renderer is still usable afterwards
+        recorder.events.clear();
+        new Renderer(Sink.of(new StringBuilder()), recorder).render(div());
+        assertEquals(Arrays.asList("started", "rendered"), recorder.events);
+    }
+
+    @Test
+    public void reportsACursorAsOneRender() {
+        Recorder expected = new Recorder();
+        new Renderer(Sink.of(new StringBuilder()), expected).render(PAGE);
+
+        Recorder recorder = new Recorder();
+        RenderCursor cursor = new RenderCursor(Arrays.asList(PAGE), recorder);
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        while (cursor.read(buffer) >= 0) {
+            buffer.clear();
+        }
+
+        assertEquals(Arrays.asList("started", "rendered"), recorder.events);
+        assertEquals(expected.bytes, recorder.bytes);
+        assertEquals(expected.nodes, recorder.nodes);
+        assertEquals(expected.maxDepth, recorder.maxDepth);
+    }
+
+    @Test
+    public void reportsCursorFailures() {
+        Recorder recorder = new Recorder();
+        RenderCursor cursor = new RenderCursor(Arrays.asList(div(lazy(() -> {
+            throw new IllegalStateException("boom");
+        }))), recorder);
+
+        assertThrows(IllegalStateException.class, () -> cursor.read(ByteBuffer.allocate(64)));
+        assertEquals(Arrays.asList("started", "failed boom"), recorder.events);
+    }
+
+    @Test
+    public void reportsAWriterAsOneRender() {
+        Recorder recorder = new Recorder();
+        StringBuilder sb = new StringBuilder();
+        HtmlWriter w = new HtmlWriter(Sink.of(sb), recorder);
+        w.open("div").attr("class", "card");
+        w.p("café").element(named("embedded", span("in")));
+        w.br();
+        w.close().finish();
+
+        assertEquals(Arrays.asList("started", "enter embedded", "exit embedded", "rendered"), recorder.events);
+        assertEquals(sb.toString().getBytes(StandardCharsets.UTF_8).length, recorder.bytes);
+        // div, p, its text, the embedded element and br
+        assertEquals(5, recorder.nodes);
+        assertEquals(2, recorder.maxDepth);
+    }
+
+    @Test
+    public void reportsWriterFailuresOnce() {
+        Recorder recorder = new Recorder();
+        HtmlWriter w = new HtmlWriter(Sink.of(new StringBuilder()), recorder);
+        w.open("div").open("p");
+
+        assertThrows(IllegalStateException.class, () -> w.close("div"));
+        assertThrows(IllegalStateException.class, w::finish);
+        assertEquals(Arrays.asList("started", "failed cannot close div, open elements are [div, p]"),
+            recorder.events);
+    }
+
+    @Test
+    public void usesTheInstalledListener() {
+        Recorder recorder = new Recorder();
+        DSL.setRenderListener(recorder);
+        try {
+            render(p("installed"));
+            new RenderCursor(p("cursor")).read(ByteBuffer.allocate(64));
+            HtmlWriter.to(new StringBuilder()).p("writer").finish();
+        } finally {
+            DSL.setRenderListener(null);
+        }
+        assertEquals(Arrays.asList("started", "rendered", "started", "rendered", "started", "rendered"),
+            recorder.events);
+    }
+
+    @Test
+    public void countsFailuresInMetrics() {
+        RenderMetrics metrics = new RenderMetrics();
+        Renderer renderer = new Renderer(Sink.of(new StringBuilder()), metrics);
+        renderer.render(p("ok"));
+        assertThrows(IllegalStateException.class, () -> renderer.render(p(lazy(() -> {
+            throw new IllegalStateException("boom");
+        }))));
+
+        assertEquals(1, metrics.getRenders());
+        assertEquals(1, metrics.getFailures());
+        assertEquals("<p >ok</p>".length(), metrics.getBytes());
+        metrics.reset();
+        assertEquals(0, metrics.getFailures());
+    }
+
+    @Test
+    public void dropsFailedSamplesFromTheProfile() {
+        RenderProfiler profiler = new RenderProfiler();
+        Renderer renderer = new Renderer(Sink.of(new StringBuilder()), profiler);
+        assertThrows(IllegalStateException.class, () -> renderer.render(named("broken", p(lazy(() -> {
+            throw new IllegalStateException("boom");
+        })))));
+        renderer.render(named("ok", p("fine")));
+
+        assertEquals("render 0\nrender;ok " + "<p >fine</p>".length() + "\n", profiler.collapsedBytes());
+    }
+
+    private static final class Recorder implements RenderListener {
+
+        private final List<String> events = new ArrayList<>();
+        private long nodes;
+        private long bytes;
+        private int maxDepth;
+
+        @Override
+        public void started() {
+            this.events.add("started");
+        }
+
+        @Override
+        public void enter(Named named) {
+            this.events.add("enter " + named.name());
+        }
+
+        @Override
+        public void exit(Named named, long nanos, long bytes) {
+            this.events.add("exit " + named.name());
+        }
+
+        @Override
+        public void rendered(long nodes, long bytes, int maxDepth, long nanos) {
+            this.events.add("rendered");
+            this.nodes = nodes;
+            this.bytes = bytes;
+            this.maxDepth = maxDepth;
+        }
+
+        @Override
+        public void failed(Throwable failure, long nanos) {
+            this.events.add("failed " + failure.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package io.h5z.stencil;
+
+import static io.h5z.stencil.DSL.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ValuesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesLongs() {
+        for (long value : new long[] { 0, 7, -7, 10, 1_234_567_890_123L, Long.MAX_VALUE, Long.MIN_VALUE }) {
+            assertEquals(Long.toString(value), DSL.render(__(value)));
+        }
+        assertEquals("<td >42</td>", DSL.render(td(42L)));
+        assertEquals("<li class=\"n\">-1</li>", DSL.render(li(attrs(classes("n")), -1L)));
+    }
+
+    @Test
+    public void roundsDoublesLikeBigDecimalHalfUp() {
+        double[] values = { 0, -0.0, 0.5, 1.005, 2.675, -2.5, 0.125, 1e-7, -0.001, 999_999.995, 1e12 + 0.5, 123.456 };
+        for (double value : values) {
+            for (int decimals = 0; decimals <= 4; decimals++) {
+                assertEquals(value + " to " + decimals, halfUp(value, decimals), DSL.render(__(value, decimals)));
+            }
+        }
+        Random random = new Random(43);
+        for (int i = 0; i < 100_000; i++) {
+            int decimals = random.nextInt(6);
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12));
+            if (random.nextBoolean()) {
+                // ties and values just around them
+                value = Math.round(value * Math.pow(10, decimals + 1)) / Math.pow(10, decimals + 1);
+            }
+            assertEquals(value + " to " + decimals, halfUp(value, decimals), DSL.render(__(value, decimals)));
+        }
+    }
+
+    @Test
+    public void writesNonFiniteDoublesAsJavaDoes() {
+        assertEquals("NaN", DSL.render(__(Double.NaN, 2)));
+        assertEquals("-Infinity", DSL.render(__(Double.NEGATIVE_INFINITY, 2)));
+    }
+
+    @Test
+    public void rejectsInvalidDecimals() {
+        assertThrows(IllegalArgumentException.class, () -> __(1.0, -1));
+        assertThrows(IllegalArgumentException.class, () -> __(1.0, 19));
+    }
+
+    @Test
+    public void writesBigDecimalsInPlainNotation() {
+        assertEquals("0.00000012", DSL.render(__(new BigDecimal("1.2E-7"))));
+        assertEquals("<span >1200</span>", DSL.render(span(new BigDecimal("1.2E+3"))));
+    }
+
+    @Test
+    public void writesDatesAndTimesLikeToString() {
+        LocalDate[] dates = { LocalDate.of(2024, 2, 29), LocalDate.of(1, 1, 1), LocalDate.of(-44, 3, 15),
+            LocalDate.of(10_000, 1, 1), LocalDate.MAX };
+        for (LocalDate date : dates) {
+            assertEquals(date.toString(), DSL.render(__(date)));
+        }
+        LocalTime[] times = { LocalTime.MIDNIGHT, LocalTime.of(9, 5), LocalTime.of(9, 5, 7),
+            LocalTime.of(9, 5, 7, 120_000_000), LocalTime.of(9, 5, 7, 120_300_000), LocalTime.of(9, 5, 0, 1), LocalTime.MAX };
+        for (LocalTime time : times) {
+            assertEquals(time.toString(), DSL.render(__(time)));
+        }
+        LocalDateTime dateTime = LocalDateTime.of(2024, 12, 31, 23, 59, 59, 1_000);
+        assertEquals(dateTime.toString(), DSL.render(__(dateTime)));
+        LocalDateTime farAway = LocalDateTime.of(LocalDate.of(12_345, 6, 7), LocalTime.NOON);
+        assertEquals(farAway.toString(), DSL.render(__(farAway)));
+    }
+
+    @Test
+    public void escapesFormattedTemporals() {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("d MMM '<'uuuu'>'", Locale.ROOT);
+        assertEquals("1 Jan &#60;2024&#62;", DSL.render(__(LocalDate.of(2024, 1, 1), formatter)));
+    }
+
+    @Test
+    public void readsSequencesWhenRendered() {
+        StringBuilder sb = new StringBuilder("a<b");
+        Element escaped = __(sb);
+        Element raw = __u(sb);
+        sb.append(">");
+        assertEquals("a&#60;b&#62;", DSL.render(escaped));
+        assertEquals("a<b>", DSL.render(raw));
+        assertEquals("a&#60;b&#62;", ((Text) escaped).content());
+    }
+
+    @Test
+    public void rendersCharSlices() {
+        char[] chars = "xx<é>yy".toCharArray();
+        assertEquals("&#60;&#233;&#62;", DSL.render(__(chars, 2, 3)));
+        assertEquals("<é>", DSL.render(__u(chars, 2, 3)));
+        assertThrows(IndexOutOfBoundsException.class, () -> __(chars, 5, 3));
+        assertThrows(IndexOutOfBoundsException.class, () -> __u(chars, -1, 1));
+    }
+
+    @Test
+    public void includesFileRegions() throws IOException {
+        Path file = folder.newFile("fragment.html").toPath();
+        Files.write(file, "<p>café</p><hr>".getBytes(StandardCharsets.UTF_8));
+        assertEquals("<div ><p>café</p><hr></div>", DSL.render(div(__u(file))));
+        assertEquals("<hr>", DSL.render(__u(file, 12, 4)));
+        assertThrows(IllegalArgumentException.class, () -> __u(file, -1, 4));
+        assertThrows(IllegalStateException.class, () -> DSL.render(__u(file, 12, 5)));
+    }
+
+    @Test
+    public void comparesByContent() {
+        assertEquals(__(42L), __(new StringBuilder("42")));
+        assertEquals(__(42L).hashCode(), __(new StringBuilder("42")).hashCode());
+        assertEquals("42", ((Text) __(42L)).content());
+    }
+
+    private static String halfUp(double value, int decimals) {
+        return BigDecimal.valueOf(value).setScale(decimals, RoundingMode.HALF_UP).toPlainString();
+    }
+
+}